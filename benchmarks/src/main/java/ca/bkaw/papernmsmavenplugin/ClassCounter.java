@@ -0,0 +1,22 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the classes that a benchmark processed, so that the throughput is also
+ * reported in classes per time unit.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ClassCounter {
+    public long classes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        this.classes = 0;
+    }
+}
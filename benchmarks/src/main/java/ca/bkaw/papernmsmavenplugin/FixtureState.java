@@ -0,0 +1,58 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The fixtures of a benchmark run, generated once per size.
+ */
+@State(Scope.Benchmark)
+public class FixtureState {
+    /**
+     * The amount of server classes.
+     */
+    @Param({"1000", "10000"})
+    public int classes;
+
+    /**
+     * The amount of plugin classes.
+     */
+    @Param({"200"})
+    public int pluginClasses;
+
+    public Path directory;
+    public Fixtures fixtures;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.directory = Files.createTempDirectory("paper-nms-benchmark");
+        this.fixtures = Fixtures.create(this.directory.resolve("fixtures"), this.classes, this.pluginClasses);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixtures.deleteDirectory(this.directory);
+    }
+
+    /**
+     * Get a new empty folder for a benchmark invocation.
+     *
+     * @param name The name of the folder.
+     * @return The folder.
+     * @throws IOException If something goes wrong.
+     */
+    public Path cleanDirectory(String name) throws IOException {
+        Path path = this.directory.resolve(name);
+        Fixtures.deleteDirectory(path);
+        Files.createDirectories(path);
+        return path;
+    }
+}
@@ -0,0 +1,408 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Synthetic inputs for the benchmarks: a generated server with its mappings in
+ * every format that the plugin reads, and a plugin that uses the server.
+ * <p>
+ * The server has a class tree where every tenth class starts a new chain of
+ * subclasses. Each class has fields and methods whose descriptors refer to other
+ * classes, and method bodies that access members of other classes, so that the
+ * remapper has to look up classes, members and the hierarchy like it does for a
+ * real server. The classes exist with obfuscated, Mojang and Spigot names, where
+ * Spigot maps every class and every other method, like the real mappings.
+ */
+public class Fixtures {
+    static final int FIELDS = 4;
+    static final int METHODS = 6;
+
+    public final Path directory;
+    public final int classCount;
+    public final int pluginClassCount;
+
+    /** The server with obfuscated names. */
+    public final Path obfuscatedJar;
+    /** The server with Mojang names, used as a dependency of the plugin. */
+    public final Path mojangJar;
+    /** The compiled classes of the plugin, with Mojang names. */
+    public final Path pluginClasses;
+
+    /** Tiny mappings with the namespaces mojang and obfuscated. */
+    public final Path mappingsMojang;
+    /** Tiny mappings with the namespaces obfuscated and spigot. */
+    public final Path mappingsSpigot;
+    /** Tiny mappings with the namespaces mojang and spigot. */
+    public final Path mappingsComposed;
+
+    /** Spigot class mappings (csrg). */
+    public final Path spigotClassMappings;
+    /** Spigot member mappings (csrg). */
+    public final Path spigotMemberMappings;
+    /** Mojang mappings (proguard). */
+    public final Path mojangMappings;
+
+    private Fixtures(Path directory, int classCount, int pluginClassCount) {
+        this.directory = directory;
+        this.classCount = classCount;
+        this.pluginClassCount = pluginClassCount;
+        this.obfuscatedJar = directory.resolve("server-obfuscated.jar");
+        this.mojangJar = directory.resolve("server-mojang.jar");
+        this.pluginClasses = directory.resolve("plugin-classes");
+        this.mappingsMojang = directory.resolve("mappings_mojang.tiny");
+        this.mappingsSpigot = directory.resolve("mappings_spigot.tiny");
+        this.mappingsComposed = directory.resolve("mappings_mojang_spigot.tiny");
+        this.spigotClassMappings = directory.resolve("spigot_class_mappings.csrg");
+        this.spigotMemberMappings = directory.resolve("spigot_member_mappings.csrg");
+        this.mojangMappings = directory.resolve("mojang_mappings.txt");
+    }
+
+    /**
+     * Generate the fixtures.
+     *
+     * @param directory The folder to put the fixtures in.
+     * @param classCount The amount of server classes.
+     * @param pluginClassCount The amount of plugin classes.
+     * @return The fixtures.
+     * @throws IOException If a file could not be written.
+     */
+    public static Fixtures create(Path directory, int classCount, int pluginClassCount) throws IOException {
+        Fixtures fixtures = new Fixtures(directory, classCount, pluginClassCount);
+        Files.createDirectories(directory);
+        fixtures.writeServerJar(fixtures.obfuscatedJar, Namespace.OBFUSCATED);
+        fixtures.writeServerJar(fixtures.mojangJar, Namespace.MOJANG);
+        fixtures.writePluginClasses();
+        fixtures.writeTinyMappings();
+        fixtures.writeLegacyMappings();
+
+        // Init compiles the mappings, so remapping never reads the tiny files
+        for (Path mappings : new Path[] {fixtures.mappingsMojang, fixtures.mappingsSpigot, fixtures.mappingsComposed}) {
+            MappingStore.compile(mappings, MappingStore.getStorePath(mappings));
+        }
+        return fixtures;
+    }
+
+    /**
+     * Create a mojo for a project folder, that only logs warnings and errors.
+     *
+     * @param projectDirectory The folder of the project.
+     * @return The mojo.
+     */
+    public static RemapMojo createMojo(Path projectDirectory) {
+        MavenProject project = new MavenProject();
+        project.setFile(projectDirectory.resolve("pom.xml").toFile());
+        project.getBuild().setDirectory(projectDirectory.resolve("target").toString());
+
+        RemapMojo mojo = new RemapMojo();
+        mojo.project = project;
+        mojo.setLog(new DefaultLog(new ConsoleLogger(Logger.LEVEL_WARN, "benchmark")));
+        return mojo;
+    }
+
+    /**
+     * Copy a folder with all its content.
+     *
+     * @param source The folder to copy.
+     * @param target The folder to copy to.
+     * @throws IOException If something goes wrong.
+     */
+    public static void copyDirectory(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file).toString()), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Delete a folder with all its content, if it exists.
+     *
+     * @param directory The folder to delete.
+     * @throws IOException If something goes wrong.
+     */
+    public static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Names
+
+    private enum Namespace {
+        OBFUSCATED, MOJANG, SPIGOT
+    }
+
+    private static String obfuscatedName(int index) {
+        StringBuilder name = new StringBuilder();
+        int value = index + 1;
+        while (value > 0) {
+            value--;
+            name.insert(0, (char) ('a' + value % 26));
+            value /= 26;
+        }
+        return name.toString();
+    }
+
+    private String className(int index, Namespace namespace) {
+        index = Math.floorMod(index, this.classCount);
+        switch (namespace) {
+            case OBFUSCATED: return obfuscatedName(index);
+            case MOJANG: return "net/minecraft/server/p" + index / 100 + "/MojangClass" + index;
+            default: return "net/minecraft/server/p" + index / 100 + "/SpigotClass" + index;
+        }
+    }
+
+    private static String fieldName(int field, Namespace namespace) {
+        // Spigot does not map fields
+        return namespace == Namespace.MOJANG ? "field" + field : obfuscatedName(field);
+    }
+
+    private static String methodName(int method, Namespace namespace) {
+        switch (namespace) {
+            case MOJANG: return "method" + method;
+            case SPIGOT: return method % 2 == 0 ? "spigotMethod" + method : obfuscatedName(method);
+            default: return obfuscatedName(method);
+        }
+    }
+
+    private static boolean isMappedBySpigot(int method) {
+        return method % 2 == 0;
+    }
+
+    private int superClass(int index) {
+        return index % 10 == 0 ? -1 : index - 1;
+    }
+
+    private int fieldType(int index, int field) {
+        return index + field + 1;
+    }
+
+    private int parameterType(int index, int method) {
+        return index + method;
+    }
+
+    private int returnType(int index, int method) {
+        return index + 2 * method + 1;
+    }
+
+    private String fieldDescriptor(int index, int field, Namespace namespace) {
+        return "L" + this.className(this.fieldType(index, field), namespace) + ";";
+    }
+
+    private String methodDescriptor(int index, int method, Namespace namespace) {
+        return "(L" + this.className(this.parameterType(index, method), namespace) + ";I)L"
+            + this.className(this.returnType(index, method), namespace) + ";";
+    }
+
+    private String javaName(int index) {
+        return this.className(index, Namespace.MOJANG).replace('/', '.');
+    }
+
+    // Classes
+
+    private void writeServerJar(Path path, Namespace namespace) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(path))) {
+            out.putNextEntry(new JarEntry("version.json"));
+            out.write("{\"id\": \"benchmark\"}".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+            for (int i = 0; i < this.classCount; i++) {
+                out.putNextEntry(new JarEntry(this.className(i, namespace) + ".class"));
+                out.write(this.serverClass(i, namespace));
+                out.closeEntry();
+            }
+        }
+    }
+
+    private byte[] serverClass(int index, Namespace namespace) {
+        String name = this.className(index, namespace);
+        int superIndex = this.superClass(index);
+        String superName = superIndex == -1 ? "java/lang/Object" : this.className(superIndex, namespace);
+
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+        for (int field = 0; field < FIELDS; field++) {
+            writer.visitField(Opcodes.ACC_PUBLIC, fieldName(field, namespace), this.fieldDescriptor(index, field, namespace), null, null).visitEnd();
+        }
+
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(1, 1);
+        constructor.visitEnd();
+
+        for (int method = 0; method < METHODS; method++) {
+            MethodVisitor visitor = writer.visitMethod(Opcodes.ACC_PUBLIC, methodName(method, namespace), this.methodDescriptor(index, method, namespace), null, null);
+            visitor.visitCode();
+            // Call a method on the type of a field, to reference members of another class
+            int field = method % FIELDS;
+            int fieldType = this.fieldType(index, field);
+            visitor.visitVarInsn(Opcodes.ALOAD, 0);
+            visitor.visitFieldInsn(Opcodes.GETFIELD, name, fieldName(field, namespace), this.fieldDescriptor(index, field, namespace));
+            visitor.visitInsn(Opcodes.ACONST_NULL);
+            visitor.visitVarInsn(Opcodes.ILOAD, 2);
+            visitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL, this.className(fieldType, namespace), methodName(0, namespace), this.methodDescriptor(fieldType, 0, namespace), false);
+            visitor.visitInsn(Opcodes.POP);
+            visitor.visitInsn(Opcodes.ACONST_NULL);
+            visitor.visitInsn(Opcodes.ARETURN);
+            visitor.visitMaxs(3, 3);
+            visitor.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private void writePluginClasses() throws IOException {
+        for (int i = 0; i < this.pluginClassCount; i++) {
+            String name = "com/example/plugin/p" + i / 100 + "/PluginClass" + i;
+            int superIndex = Math.floorMod(i * 7, this.classCount);
+            String superName = this.className(superIndex, Namespace.MOJANG);
+            int usedIndex = Math.floorMod(i * 13 + 5, this.classCount);
+            String usedName = this.className(usedIndex, Namespace.MOJANG);
+
+            ClassWriter writer = new ClassWriter(0);
+            writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+
+            MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+            constructor.visitCode();
+            constructor.visitVarInsn(Opcodes.ALOAD, 0);
+            constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+            constructor.visitInsn(Opcodes.RETURN);
+            constructor.visitMaxs(1, 1);
+            constructor.visitEnd();
+
+            // Use inherited members and members of another class
+            MethodVisitor visitor = writer.visitMethod(Opcodes.ACC_PUBLIC, "run", "(L" + usedName + ";)V", null, null);
+            visitor.visitCode();
+            visitor.visitVarInsn(Opcodes.ALOAD, 0);
+            visitor.visitFieldInsn(Opcodes.GETFIELD, name, fieldName(1, Namespace.MOJANG), this.fieldDescriptor(superIndex, 1, Namespace.MOJANG));
+            visitor.visitInsn(Opcodes.POP);
+            for (int method = 0; method < METHODS; method += 2) {
+                visitor.visitVarInsn(Opcodes.ALOAD, 1);
+                visitor.visitInsn(Opcodes.ACONST_NULL);
+                visitor.visitInsn(Opcodes.ICONST_0);
+                visitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL, usedName, methodName(method, Namespace.MOJANG), this.methodDescriptor(usedIndex, method, Namespace.MOJANG), false);
+                visitor.visitInsn(Opcodes.POP);
+            }
+            visitor.visitInsn(Opcodes.RETURN);
+            visitor.visitMaxs(3, 2);
+            visitor.visitEnd();
+            writer.visitEnd();
+
+            Path path = this.pluginClasses.resolve(name + ".class");
+            Files.createDirectories(path.getParent());
+            Files.write(path, writer.toByteArray());
+        }
+    }
+
+    // Mappings
+
+    private void writeTinyMappings() throws IOException {
+        try (BufferedWriter mojang = Files.newBufferedWriter(this.mappingsMojang);
+             BufferedWriter spigot = Files.newBufferedWriter(this.mappingsSpigot);
+             BufferedWriter composed = Files.newBufferedWriter(this.mappingsComposed)) {
+            mojang.write("tiny\t2\t0\tmojang\tobfuscated\n");
+            spigot.write("tiny\t2\t0\tobfuscated\tspigot\n");
+            composed.write("tiny\t2\t0\tmojang\tspigot\n");
+            for (int i = 0; i < this.classCount; i++) {
+                String mojangName = this.className(i, Namespace.MOJANG);
+                String obfuscatedName = this.className(i, Namespace.OBFUSCATED);
+                String spigotName = this.className(i, Namespace.SPIGOT);
+                mojang.write("c\t" + mojangName + "\t" + obfuscatedName + "\n");
+                spigot.write("c\t" + obfuscatedName + "\t" + spigotName + "\n");
+                composed.write("c\t" + mojangName + "\t" + spigotName + "\n");
+                for (int field = 0; field < FIELDS; field++) {
+                    String descriptor = this.fieldDescriptor(i, field, Namespace.MOJANG);
+                    mojang.write("\tf\t" + descriptor + "\t" + fieldName(field, Namespace.MOJANG) + "\t" + fieldName(field, Namespace.OBFUSCATED) + "\n");
+                    composed.write("\tf\t" + descriptor + "\t" + fieldName(field, Namespace.MOJANG) + "\t" + fieldName(field, Namespace.SPIGOT) + "\n");
+                }
+                for (int method = 0; method < METHODS; method++) {
+                    String descriptor = this.methodDescriptor(i, method, Namespace.MOJANG);
+                    mojang.write("\tm\t" + descriptor + "\t" + methodName(method, Namespace.MOJANG) + "\t" + methodName(method, Namespace.OBFUSCATED) + "\n");
+                    composed.write("\tm\t" + descriptor + "\t" + methodName(method, Namespace.MOJANG) + "\t" + methodName(method, Namespace.SPIGOT) + "\n");
+                    if (isMappedBySpigot(method)) {
+                        spigot.write("\tm\t" + this.methodDescriptor(i, method, Namespace.OBFUSCATED) + "\t" + methodName(method, Namespace.OBFUSCATED) + "\t" + methodName(method, Namespace.SPIGOT) + "\n");
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeLegacyMappings() throws IOException {
+        try (BufferedWriter classes = Files.newBufferedWriter(this.spigotClassMappings);
+             BufferedWriter members = Files.newBufferedWriter(this.spigotMemberMappings);
+             BufferedWriter mojang = Files.newBufferedWriter(this.mojangMappings)) {
+            mojang.write("# generated for benchmarks\n");
+            for (int i = 0; i < this.classCount; i++) {
+                String obfuscatedName = this.className(i, Namespace.OBFUSCATED);
+                String spigotName = this.className(i, Namespace.SPIGOT);
+                classes.write(obfuscatedName + " " + spigotName + "\n");
+
+                mojang.write(this.javaName(i) + " -> " + obfuscatedName + ":\n");
+                for (int field = 0; field < FIELDS; field++) {
+                    mojang.write("    " + this.javaName(this.fieldType(i, field)) + " " + fieldName(field, Namespace.MOJANG) + " -> " + fieldName(field, Namespace.OBFUSCATED) + "\n");
+                }
+                for (int method = 0; method < METHODS; method++) {
+                    mojang.write("    " + (method + 1) + ":" + (method + 1) + ":" + this.javaName(this.returnType(i, method)) + " " + methodName(method, Namespace.MOJANG)
+                        + "(" + this.javaName(this.parameterType(i, method)) + ",int) -> " + methodName(method, Namespace.OBFUSCATED) + "\n");
+                    if (isMappedBySpigot(method)) {
+                        members.write(spigotName + " " + methodName(method, Namespace.OBFUSCATED) + " " + this.methodDescriptor(i, method, Namespace.SPIGOT) + " " + methodName(method, Namespace.SPIGOT) + "\n");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the legacy mappings to a folder, as merging them deletes the inputs.
+     *
+     * @param target The folder to copy to.
+     * @throws IOException If something goes wrong.
+     */
+    public void copyLegacyMappings(Path target) throws IOException {
+        Files.createDirectories(target);
+        for (Path path : new Path[] {this.spigotClassMappings, this.spigotMemberMappings, this.mojangMappings}) {
+            Files.copy(path, target.resolve(path.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps the obfuscated server jar to Mojang names, like init maps the server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MapJarBenchmark {
+    private Path projectDirectory;
+
+    @Setup(Level.Invocation)
+    public void setup(FixtureState state) throws IOException {
+        this.projectDirectory = state.cleanDirectory("project");
+    }
+
+    @Benchmark
+    public void mapJar(FixtureState state, ClassCounter counter) throws IOException {
+        RemapMojo mojo = Fixtures.createMojo(this.projectDirectory);
+        mojo.mapJar(state.fixtures.obfuscatedJar, this.projectDirectory.resolve("server.jar"), state.fixtures.mappingsMojang, "obfuscated", "mojang");
+        counter.classes += state.classes;
+    }
+}
@@ -0,0 +1,53 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the Spigot and Mojang mappings of a version without a dev bundle, like
+ * init does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MergeMappingsBenchmark {
+    private Path directory;
+
+    @Setup(Level.Invocation)
+    public void setup(FixtureState state) throws IOException {
+        // Merging deletes the inputs
+        this.directory = state.cleanDirectory("mappings");
+        state.fixtures.copyLegacyMappings(this.directory);
+    }
+
+    @Benchmark
+    public void mergeMappings(FixtureState state, ClassCounter counter) throws MojoExecutionException {
+        RemapMojo mojo = Fixtures.createMojo(this.directory);
+        mojo.mergeMappings(
+            this.directory.resolve(state.fixtures.spigotClassMappings.getFileName().toString()),
+            this.directory.resolve(state.fixtures.spigotMemberMappings.getFileName().toString()),
+            this.directory.resolve(state.fixtures.mojangMappings.getFileName().toString()),
+            this.directory.resolve("mappings.tiny"),
+            this.directory.resolve("mappings_mojang.tiny"),
+            this.directory.resolve("mappings_spigot.tiny")
+        );
+        counter.classes += state.classes;
+    }
+}
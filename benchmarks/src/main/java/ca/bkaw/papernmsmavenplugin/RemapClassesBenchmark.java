@@ -0,0 +1,60 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remaps the classes of a plugin from Mojang to Spigot names in a single pass, like
+ * the remap goal does before the package phase.
+ * <p>
+ * Every invocation starts from a clean project, so all classes are remapped. The
+ * index of the server jar on the class path is created once, like in a build
+ * where it is already cached.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RemapClassesBenchmark {
+    private List<Path> classPath;
+    private Path projectDirectory;
+    private Path classesDirectory;
+
+    @Setup(Level.Trial)
+    public void index(FixtureState state) throws IOException, MojoExecutionException {
+        Path indexDirectory = state.cleanDirectory("index");
+        this.classPath = Fixtures.createMojo(indexDirectory).indexClassPath(Collections.singletonList(state.fixtures.mojangJar));
+    }
+
+    @Setup(Level.Invocation)
+    public void setup(FixtureState state) throws IOException {
+        this.projectDirectory = state.cleanDirectory("project");
+        this.classesDirectory = this.projectDirectory.resolve("target").resolve("classes");
+        Fixtures.copyDirectory(state.fixtures.pluginClasses, this.classesDirectory);
+    }
+
+    @Benchmark
+    public void remapClasses(FixtureState state, ClassCounter counter) throws MojoExecutionException {
+        RemapMojo mojo = Fixtures.createMojo(this.projectDirectory);
+        mojo.remapClasses(this.classesDirectory, state.fixtures.mappingsComposed, "mojang", "spigot", this.classPath, true);
+        counter.classes += state.pluginClasses;
+    }
+}
@@ -0,0 +1,51 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remaps the classes of a plugin via the obfuscated names, like the remap goal
+ * does for versions that were initialized before composed mappings existed.
+ * <p>
+ * Every invocation starts from a clean project, so the server jar on the class
+ * path is also remapped to obfuscated names each time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RemapDoubleBenchmark {
+    private Path projectDirectory;
+    private Path classesDirectory;
+
+    @Setup(Level.Invocation)
+    public void setup(FixtureState state) throws IOException {
+        this.projectDirectory = state.cleanDirectory("project");
+        this.classesDirectory = this.projectDirectory.resolve("target").resolve("classes");
+        Fixtures.copyDirectory(state.fixtures.pluginClasses, this.classesDirectory);
+    }
+
+    @Benchmark
+    public void remapDouble(FixtureState state, ClassCounter counter) throws MojoExecutionException {
+        RemapMojo mojo = Fixtures.createMojo(this.projectDirectory);
+        mojo.remapDouble(this.classesDirectory, state.fixtures.mappingsMojang, state.fixtures.mappingsSpigot, Collections.singletonList(state.fixtures.mojangJar));
+        counter.classes += state.classes + state.pluginClasses;
+    }
+}
@@ -0,0 +1,76 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads and saves the record of remapped classes for the classes of the server,
+ * like the remap goal does once per build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RemappedClassesBenchmark {
+    private Path classesDirectory;
+    private Path jsonFile;
+    private RemappedClasses loaded;
+
+    @Setup(Level.Trial)
+    public void setup(FixtureState state) throws IOException {
+        Path directory = state.cleanDirectory("remapped-classes");
+        this.classesDirectory = directory.resolve("classes");
+        this.jsonFile = directory.resolve(RemappedClasses.FILE_NAME);
+
+        // Use the server classes, so that the size follows the class count
+        try (FileSystem jar = FileSystems.newFileSystem(state.fixtures.mojangJar, (ClassLoader) null)) {
+            Fixtures.copyDirectory(jar.getPath("/"), this.classesDirectory);
+        }
+
+        RemappedClasses remappedClasses = new RemappedClasses(this.jsonFile, this.classesDirectory);
+        List<Path> classFiles;
+        try (Stream<Path> stream = Files.walk(this.classesDirectory)) {
+            classFiles = stream.filter(path -> path.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+        for (Path path : classFiles) {
+            byte[] bytes = Files.readAllBytes(path);
+            remappedClasses.markAsRemapped(path, bytes, bytes);
+        }
+        remappedClasses.save();
+        this.loaded = new RemappedClasses(this.jsonFile, this.classesDirectory);
+    }
+
+    @Benchmark
+    public RemappedClasses load(FixtureState state, ClassCounter counter) throws IOException {
+        RemappedClasses remappedClasses = new RemappedClasses(this.jsonFile, this.classesDirectory);
+        counter.classes += state.classes;
+        return remappedClasses;
+    }
+
+    @Benchmark
+    public void save(FixtureState state, ClassCounter counter) throws IOException {
+        this.loaded.save();
+        counter.classes += state.classes;
+    }
+}
@@ -0,0 +1,76 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Writes files through a temporary file next to them that is moved into place,
+ * so that other threads and builds never see a partially written file.
+ */
+public final class AtomicFiles {
+    private AtomicFiles() {}
+
+    /**
+     * Writes the content of a file.
+     */
+    @FunctionalInterface
+    public interface Writer {
+        /**
+         * Write the content.
+         *
+         * @param tempPath The temporary file to write to.
+         * @throws IOException If the content could not be written.
+         */
+        void write(Path tempPath) throws IOException;
+    }
+
+    /**
+     * Write a file atomically. The file is only replaced if the writer completes.
+     *
+     * @param path The path to write to.
+     * @param writer The writer that writes the content to a temporary file.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(Path path, Writer writer) throws IOException {
+        Path tempPath = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            writer.write(tempPath);
+            move(tempPath, path);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Write the bytes of a file atomically.
+     *
+     * @param path The path to write to.
+     * @param bytes The content of the file.
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(Path path, byte[] bytes) throws IOException {
+        write(path, tempPath -> Files.write(tempPath, bytes));
+    }
+
+    /**
+     * Move a file or folder into place, replacing the target if it exists.
+     * <p>
+     * The move is atomic if the file system supports it. Otherwise the target is
+     * replaced by a plain move, which other readers may see halfway.
+     *
+     * @param source The file to move.
+     * @param target The path to move it to.
+     * @throws IOException If the file could not be moved.
+     */
+    public static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Applies patches in the bsdiff 4 format, which paperclip uses to ship the server
+ * jar as a patch of the vanilla jar.
+ * <p>
+ * A patch starts with the magic {@code BSDIFF40} and the lengths of the control
+ * and diff blocks and of the output, followed by the bzip2 compressed control,
+ * diff and extra blocks.
+ */
+public class BsdiffPatch {
+    private static final byte[] MAGIC = "BSDIFF40".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 32;
+    private static final int BUFFER_SIZE = 65536;
+
+    private BsdiffPatch() {}
+
+    /**
+     * Apply a patch, writing the output as it is created.
+     *
+     * @param original The content to patch.
+     * @param patch The patch.
+     * @param out The stream to write the patched content to.
+     * @throws IOException If the patch is invalid or the output could not be written.
+     */
+    public static void patch(byte[] original, byte[] patch, OutputStream out) throws IOException {
+        if (patch.length < HEADER_SIZE) {
+            throw new IOException("Invalid bsdiff patch, too short");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (patch[i] != MAGIC[i]) {
+                throw new IOException("Invalid bsdiff patch, wrong magic");
+            }
+        }
+        long controlLength = readOffset(patch, 8);
+        long diffLength = readOffset(patch, 16);
+        long outputLength = readOffset(patch, 24);
+        if (controlLength < 0 || diffLength < 0 || outputLength < 0
+            || HEADER_SIZE + controlLength + diffLength > patch.length) {
+            throw new IOException("Invalid bsdiff patch, corrupt header");
+        }
+
+        try (DataInputStream control = new DataInputStream(block(patch, HEADER_SIZE, controlLength));
+             InputStream diff = block(patch, HEADER_SIZE + controlLength, diffLength);
+             InputStream extra = block(patch, HEADER_SIZE + controlLength + diffLength, patch.length - HEADER_SIZE - controlLength - diffLength)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] offset = new byte[8];
+            long originalPosition = 0;
+            long outputPosition = 0;
+            while (outputPosition < outputLength) {
+                long addLength = readOffset(control, offset);
+                long copyLength = readOffset(control, offset);
+                long seek = readOffset(control, offset);
+                if (addLength < 0 || copyLength < 0 || outputPosition + addLength + copyLength > outputLength) {
+                    throw new IOException("Invalid bsdiff patch, corrupt control block");
+                }
+
+                // Add the diff block to the original content
+                long remaining = addLength;
+                while (remaining > 0) {
+                    int length = (int) Math.min(remaining, buffer.length);
+                    readFully(diff, buffer, length);
+                    for (int i = 0; i < length; i++) {
+                        long position = originalPosition + i;
+                        if (position >= 0 && position < original.length) {
+                            buffer[i] += original[(int) position];
+                        }
+                    }
+                    out.write(buffer, 0, length);
+                    originalPosition += length;
+                    remaining -= length;
+                }
+
+                // Copy the extra block as-is
+                remaining = copyLength;
+                while (remaining > 0) {
+                    int length = (int) Math.min(remaining, buffer.length);
+                    readFully(extra, buffer, length);
+                    out.write(buffer, 0, length);
+                    remaining -= length;
+                }
+
+                outputPosition += addLength + copyLength;
+                originalPosition += seek;
+            }
+        }
+    }
+
+    private static InputStream block(byte[] patch, long offset, long length) throws IOException {
+        return new BZip2CompressorInputStream(new ByteArrayInputStream(patch, (int) offset, (int) length));
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = in.read(buffer, read, length - read);
+            if (count < 0) {
+                throw new IOException("Invalid bsdiff patch, block ended early");
+            }
+            read += count;
+        }
+    }
+
+    private static long readOffset(DataInputStream in, byte[] buffer) throws IOException {
+        in.readFully(buffer);
+        return readOffset(buffer, 0);
+    }
+
+    /**
+     * Read an offset, stored as a little endian sign and magnitude number.
+     */
+    private static long readOffset(byte[] bytes, int index) {
+        long value = bytes[index + 7] & 0x7F;
+        for (int i = 6; i >= 0; i--) {
+            value = (value << 8) | (bytes[index + i] & 0xFF);
+        }
+        return (bytes[index + 7] & 0x80) != 0 ? -value : value;
+    }
+}
@@ -0,0 +1,63 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Removes the entries of caches keyed by content hash, like the class path
+ * indexes, that no build has used for a while.
+ * <p>
+ * Using an entry updates its modification time, as the access time is often not
+ * recorded by the file system.
+ */
+public final class CacheCleaner {
+    private CacheCleaner() {}
+
+    /**
+     * Record that a cache entry was used, so that it is kept.
+     *
+     * @param path The path to the entry.
+     */
+    public static void markUsed(Path path) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // Removed by another build, or read-only. It is created again when needed
+        }
+    }
+
+    /**
+     * Delete the files in a cache folder that have not been used for some time.
+     * Files that can not be deleted, for example because they are open on
+     * Windows, are skipped.
+     *
+     * @param directory The cache folder.
+     * @param maxAgeMillis The amount of milliseconds since the last use after
+     *                     which a file is deleted.
+     * @return The amount of files that were deleted.
+     * @throws IOException If the folder could not be listed.
+     */
+    public static int deleteUnused(Path directory, long maxAgeMillis) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - maxAgeMillis;
+        int deleted = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                try {
+                    if (Files.isRegularFile(path) && Files.getLastModifiedTime(path).toMillis() < cutoff) {
+                        Files.delete(path);
+                        deleted++;
+                    }
+                } catch (IOException ignored) {
+                    // In use or already deleted by another build
+                }
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,163 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Indexes of class path jars containing only the class hierarchy and members.
+ * <p>
+ * Tiny-remapper only needs to know the hierarchy and the members of the classes
+ * on the class path, but reading a jar makes it parse every class in full. An
+ * index is a jar of the same classes with all code, debug information and
+ * annotations removed, stored without compression. Indexes are keyed by the
+ * SHA-1 hash of the original jar so that they are only built once per jar, and
+ * are removed by the {@link CacheCleaner} when no build has used them for a while.
+ */
+public class ClassPathIndex {
+    private final Path directory;
+
+    /**
+     * Create a class path index.
+     *
+     * @param directory The directory where the indexes are stored.
+     */
+    public ClassPathIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the index for a jar, building it if it does not exist.
+     *
+     * @param jarPath The path to the jar.
+     * @param sha1 The SHA-1 hash of the jar.
+     * @return The path to the index.
+     * @throws IOException If the index could not be built.
+     */
+    public Path getIndex(Path jarPath, String sha1) throws IOException {
+        Path indexPath = this.directory.resolve(sha1 + ".jar");
+        if (Files.exists(indexPath)) {
+            CacheCleaner.markUsed(indexPath);
+            return indexPath;
+        }
+        Files.createDirectories(this.directory);
+        AtomicFiles.write(indexPath, tempPath -> build(jarPath, tempPath));
+        return indexPath;
+    }
+
+    /**
+     * Build an index of a jar.
+     *
+     * @param jarPath The path to the jar.
+     * @param indexPath The path to write the index to.
+     * @throws IOException If something goes wrong.
+     */
+    public static void build(Path jarPath, Path indexPath) throws IOException {
+        try (JarFile jarFile = new JarFile(jarPath.toFile());
+             ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(indexPath))) {
+            out.setMethod(ZipOutputStream.STORED);
+            CRC32 crc = new CRC32();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry jarEntry = entries.nextElement();
+                if (jarEntry.isDirectory() || !jarEntry.getName().endsWith(".class")) {
+                    continue;
+                }
+                byte[] bytes;
+                try (InputStream stream = jarFile.getInputStream(jarEntry)) {
+                    bytes = strip(Streams.readAllBytes(stream));
+                }
+                crc.reset();
+                crc.update(bytes);
+                ZipEntry entry = new ZipEntry(jarEntry.getName());
+                entry.setSize(bytes.length);
+                entry.setCompressedSize(bytes.length);
+                entry.setCrc(crc.getValue());
+                out.putNextEntry(entry);
+                out.write(bytes);
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Remove everything from a class file except the hierarchy and the members.
+     *
+     * @param classBytes The class file.
+     * @return The stripped class file.
+     */
+    public static byte[] strip(byte[] classBytes) {
+        ClassReader reader = new ClassReader(classBytes);
+        ClassWriter writer = new ClassWriter(0);
+        reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                return null;
+            }
+
+            @Override
+            public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+                return null;
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                FieldVisitor visitor = super.visitField(access, name, descriptor, signature, value);
+                return new FieldVisitor(Opcodes.ASM9, visitor) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                        return null;
+                    }
+
+                    @Override
+                    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+                        return null;
+                    }
+                };
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                MethodVisitor visitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+                return new MethodVisitor(Opcodes.ASM9, visitor) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                        return null;
+                    }
+
+                    @Override
+                    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+                        return null;
+                    }
+
+                    @Override
+                    public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+                        return null;
+                    }
+
+                    @Override
+                    public AnnotationVisitor visitAnnotationDefault() {
+                        return null;
+                    }
+                };
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return writer.toByteArray();
+    }
+}
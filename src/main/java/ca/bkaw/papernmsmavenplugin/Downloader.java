@@ -0,0 +1,372 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.apache.maven.plugin.logging.Log;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Downloads files over HTTP.
+ * <p>
+ * Files are hashed while they are downloaded and written to a {@code .part} file
+ * that is moved into place once complete. If the expected hash is known, an
+ * existing {@code .part} file is resumed with a range request. Failed requests
+ * are retried a limited amount of times with an increasing delay.
+ * <p>
+ * Responses are always read to the end and closed without disconnecting, so that
+ * the JDK keeps the connection alive and reuses it for the next request to the
+ * same host.
+ * <p>
+ * In offline mode, every request fails right away instead of waiting for a
+ * network timeout.
+ */
+public class Downloader {
+    private static final String USER_AGENT = "paper-nms-maven-plugin";
+    private static final int BUFFER_SIZE = 65536;
+
+    private final Log log;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final int maxAttempts;
+    private final long retryDelay;
+    private final boolean offline;
+
+    /**
+     * Create a downloader with the default timeouts and retries.
+     *
+     * @param log The log to report retries to.
+     */
+    public Downloader(Log log) {
+        this(log, false);
+    }
+
+    /**
+     * Create a downloader with the default timeouts and retries.
+     *
+     * @param log The log to report retries to.
+     * @param offline Whether to fail all requests instead of accessing the network.
+     */
+    public Downloader(Log log, boolean offline) {
+        this(log, 15000, 60000, 4, 1000, offline);
+    }
+
+    /**
+     * Create a downloader.
+     *
+     * @param log The log to report retries to.
+     * @param connectTimeout The connect timeout in milliseconds.
+     * @param readTimeout The read timeout in milliseconds.
+     * @param maxAttempts The maximum amount of attempts for each request.
+     * @param retryDelay The delay before the first retry in milliseconds, doubled for each retry.
+     * @param offline Whether to fail all requests instead of accessing the network.
+     */
+    public Downloader(Log log, int connectTimeout, int readTimeout, int maxAttempts, long retryDelay, boolean offline) {
+        this.log = log;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelay = retryDelay;
+        this.offline = offline;
+    }
+
+    /**
+     * Get whether all requests fail instead of accessing the network.
+     *
+     * @return Whether the downloader is offline.
+     */
+    public boolean isOffline() {
+        return this.offline;
+    }
+
+    /**
+     * Download a file.
+     *
+     * @param url The url to download.
+     * @param path The path to place the downloaded file.
+     * @param sha1 The expected SHA-1 hash of the file, or null to not check it.
+     * @return The SHA-1 hash of the downloaded file.
+     * @throws IOException If the download failed or the hash did not match.
+     */
+    public String download(String url, Path path, @Nullable String sha1) throws IOException {
+        Path partPath = Paths.get(path + ".part");
+        if (sha1 == null) {
+            // Without a hash there is no way to know if a part from an earlier run
+            // belongs to the same file, so only resume within this download
+            Files.deleteIfExists(partPath);
+        }
+
+        IOException failure = null;
+        for (int attempt = 1; attempt <= this.maxAttempts; attempt++) {
+            if (attempt > 1) {
+                this.waitBeforeRetry(attempt, url, failure);
+            }
+            try {
+                String fileSha1 = this.downloadPart(url, partPath);
+                if (sha1 != null && !sha1.equalsIgnoreCase(fileSha1)) {
+                    Files.deleteIfExists(partPath);
+                    failure = new IOException("Download failed, sha1 hash of downloaded file did not match. Expected: " + sha1 + " Found: " + fileSha1 + " for file " + path.getFileName());
+                    continue;
+                }
+                AtomicFiles.move(partPath, path);
+                return fileSha1;
+            } catch (IOException e) {
+                if (!isRetryable(e)) {
+                    Files.deleteIfExists(partPath);
+                    throw e;
+                }
+                failure = e;
+            }
+        }
+        Files.deleteIfExists(partPath);
+        throw failure;
+    }
+
+    /**
+     * Download the rest of a {@code .part} file.
+     *
+     * @return The SHA-1 hash of the complete file.
+     */
+    private String downloadPart(String url, Path partPath) throws IOException {
+        MessageDigest messageDigest = Hashes.sha1Digest();
+        long existing = Files.exists(partPath) ? Files.size(partPath) : 0;
+
+        HttpURLConnection connection = this.open(url);
+        if (existing > 0) {
+            connection.setRequestProperty("Range", "bytes=" + existing + "-");
+        }
+        int status = connection.getResponseCode();
+        if (status == 416) {
+            // The part does not match the file anymore, start over
+            discard(connection);
+            Files.deleteIfExists(partPath);
+            throw new IOException("Range not satisfiable for " + url);
+        }
+        checkStatus(connection, status, url);
+
+        boolean append = existing > 0 && status == HttpURLConnection.HTTP_PARTIAL;
+        if (append) {
+            // Hash the part that was already downloaded
+            try (InputStream in = Files.newInputStream(partPath)) {
+                update(messageDigest, in, null);
+            }
+        }
+
+        long expectedLength = connection.getContentLengthLong();
+        long length;
+        try (InputStream in = connection.getInputStream();
+             OutputStream out = append
+                 ? Files.newOutputStream(partPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                 : Files.newOutputStream(partPath)) {
+            length = update(messageDigest, in, out);
+        }
+        if (expectedLength >= 0 && length != expectedLength) {
+            // Keep the part so that the next attempt resumes it
+            throw new IOException("Incomplete download of " + url + ", got " + length + " of " + expectedLength + " bytes");
+        }
+        return Hashes.toHex(messageDigest.digest());
+    }
+
+    /**
+     * Download a small resource into memory.
+     *
+     * @param url The url to download.
+     * @return The content.
+     * @throws IOException If the download failed.
+     */
+    public byte[] fetch(String url) throws IOException {
+        IOException failure = null;
+        for (int attempt = 1; attempt <= this.maxAttempts; attempt++) {
+            if (attempt > 1) {
+                this.waitBeforeRetry(attempt, url, failure);
+            }
+            try {
+                HttpURLConnection connection = this.open(url);
+                checkStatus(connection, connection.getResponseCode(), url);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (InputStream in = connection.getInputStream()) {
+                    update(null, in, out);
+                }
+                return out.toByteArray();
+            } catch (IOException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Download a small resource into memory, unless it has not changed since it
+     * was last downloaded.
+     *
+     * @param url The url to download.
+     * @param etag The ETag of the last download, or null.
+     * @param lastModified The Last-Modified header of the last download, or null.
+     * @return The response. The status is 304 if the resource has not changed and
+     * 404 if it does not exist, in which case there is no content.
+     * @throws IOException If the download failed.
+     */
+    public Response fetchIfChanged(String url, @Nullable String etag, @Nullable String lastModified) throws IOException {
+        IOException failure = null;
+        for (int attempt = 1; attempt <= this.maxAttempts; attempt++) {
+            if (attempt > 1) {
+                this.waitBeforeRetry(attempt, url, failure);
+            }
+            try {
+                HttpURLConnection connection = this.open(url);
+                if (etag != null) {
+                    connection.setRequestProperty("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    connection.setRequestProperty("If-Modified-Since", lastModified);
+                }
+                int status = connection.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED || status == HttpURLConnection.HTTP_NOT_FOUND) {
+                    discard(connection);
+                    return new Response(status, null, etag, lastModified);
+                }
+                checkStatus(connection, status, url);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (InputStream in = connection.getInputStream()) {
+                    update(null, in, out);
+                }
+                return new Response(status, out.toByteArray(), connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+            } catch (IOException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Download and parse a JSON object.
+     *
+     * @param url The url to download.
+     * @return The parsed object.
+     * @throws IOException If the download failed.
+     */
+    public JSONObject fetchJson(String url) throws IOException {
+        return new JSONObject(new JSONTokener(new ByteArrayInputStream(this.fetch(url))));
+    }
+
+    private HttpURLConnection open(String url) throws IOException {
+        if (this.offline) {
+            throw new PermanentException("Can not download " + url + " in offline mode");
+        }
+        URLConnection connection = new URL(url).openConnection();
+        if (!(connection instanceof HttpURLConnection)) {
+            throw new PermanentException("Not an HTTP url: " + url);
+        }
+        HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        httpConnection.setConnectTimeout(this.connectTimeout);
+        httpConnection.setReadTimeout(this.readTimeout);
+        httpConnection.setInstanceFollowRedirects(true);
+        httpConnection.setRequestProperty("User-Agent", USER_AGENT);
+        return httpConnection;
+    }
+
+    private static void checkStatus(HttpURLConnection connection, int status, String url) throws IOException {
+        if (status >= 200 && status < 300) {
+            return;
+        }
+        discard(connection);
+        String message = "HTTP " + status + " for " + url;
+        if (status >= 500 || status == 408 || status == 429) {
+            throw new IOException(message);
+        }
+        throw new PermanentException(message);
+    }
+
+    /**
+     * Read the error body to the end so that the connection can be reused.
+     */
+    private static void discard(HttpURLConnection connection) {
+        try (InputStream in = connection.getErrorStream()) {
+            if (in != null) {
+                update(null, in, null);
+            }
+        } catch (IOException ignored) {
+            // The connection will not be reused
+        }
+    }
+
+    private static boolean isRetryable(IOException e) {
+        return !(e instanceof PermanentException);
+    }
+
+    private void waitBeforeRetry(int attempt, String url, IOException failure) throws IOException {
+        long delay = this.retryDelay << Math.min(attempt - 2, 10);
+        this.log.warn("Download of " + url + " failed (" + failure.getMessage() + "), retrying in " + delay + " ms");
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + url);
+        }
+    }
+
+    private static long update(@Nullable MessageDigest messageDigest, InputStream in, @Nullable OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long length = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            length += read;
+            if (messageDigest != null) {
+                messageDigest.update(buffer, 0, read);
+            }
+            if (out != null) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The response of a conditional request.
+     */
+    public static class Response {
+        public final int status;
+        @Nullable
+        public final byte[] content;
+        @Nullable
+        public final String etag;
+        @Nullable
+        public final String lastModified;
+
+        private Response(int status, @Nullable byte[] content, @Nullable String etag, @Nullable String lastModified) {
+            this.status = status;
+            this.content = content;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * A failure that will not go away by trying again, like a missing file.
+     */
+    private static class PermanentException extends IOException {
+        private PermanentException(String message) {
+            super(message);
+        }
+    }
+}
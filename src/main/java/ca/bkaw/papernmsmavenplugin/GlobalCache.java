@@ -0,0 +1,186 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The folder of a version in the cache that is shared by all projects of the
+ * user, see {@link MojoBase#globalCache}.
+ * <p>
+ * A version is initialized in a staging folder next to the version folder and
+ * then published by moving each file into place atomically, so that a build
+ * reading the folder never sees a partially written file. A manifest is written
+ * last and records which dev bundle the files were created from, so that other
+ * projects only reuse the files when they use the same dev bundle.
+ * <p>
+ * Publishing must happen while holding the {@link VersionLock} of the folder.
+ */
+public class GlobalCache {
+    public static final String MANIFEST_FILE_NAME = "install.json";
+
+    private final Path directory;
+
+    /**
+     * Create a global cache folder of a version.
+     *
+     * @param directory The folder of the version.
+     */
+    public GlobalCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the published manifest, if the files were created from the specified source.
+     *
+     * @param source The key of the dev bundle, see {@link #sourceOf(String, String)}.
+     * @return The manifest, or null if nothing was published from the source.
+     */
+    @Nullable
+    public Manifest getManifest(String source) {
+        Path manifestPath = this.directory.resolve(MANIFEST_FILE_NAME);
+        if (!Files.exists(manifestPath)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(manifestPath)) {
+            JSONObject json = new JSONObject(new JSONTokener(in));
+            if (!source.equals(json.optString("source"))) {
+                return null;
+            }
+            return new Manifest(
+                json.getString("source"),
+                toList(json.getJSONArray("dependencies")),
+                toList(json.getJSONArray("dependencyManagement"))
+            );
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create an empty staging folder to initialize the version in.
+     *
+     * @return The path to the staging folder.
+     * @throws IOException If the folder could not be created.
+     */
+    public Path createStagingDirectory() throws IOException {
+        Path parent = this.directory.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        return Files.createDirectory(parent.resolve("." + this.directory.getFileName() + "-" + UUID.randomUUID() + ".tmp"));
+    }
+
+    /**
+     * Publish the files of a staging folder and delete the staging folder.
+     * <p>
+     * Files of an earlier publication that the staging folder does not contain are
+     * deleted, except the files of the {@link VersionLock}.
+     *
+     * @param stagingDirectory The staging folder.
+     * @param manifest The manifest describing the files.
+     * @throws IOException If the files could not be moved.
+     */
+    public void publish(Path stagingDirectory, Manifest manifest) throws IOException {
+        Files.createDirectories(this.directory);
+        Files.deleteIfExists(this.directory.resolve(MANIFEST_FILE_NAME));
+
+        Set<String> published = new HashSet<>();
+        for (Path path : list(stagingDirectory)) {
+            String name = path.getFileName().toString();
+            Path target = this.directory.resolve(name);
+            if (Files.isDirectory(target)) {
+                deleteRecursively(target);
+            }
+            AtomicFiles.move(path, target);
+            published.add(name);
+        }
+        for (Path path : list(this.directory)) {
+            String name = path.getFileName().toString();
+            if (!published.contains(name) && !name.startsWith("init.")) {
+                deleteRecursively(path);
+            }
+        }
+        Files.delete(stagingDirectory);
+
+        JSONObject json = new JSONObject();
+        json.put("source", manifest.source);
+        json.put("dependencies", new JSONArray(manifest.dependencies));
+        json.put("dependencyManagement", new JSONArray(manifest.dependencyManagement));
+        AtomicFiles.write(this.directory.resolve(MANIFEST_FILE_NAME), json.toString(2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the key identifying the files that a dev bundle produces.
+     *
+     * @param coordinates The coordinates of the dev bundle.
+     * @param sha1 The SHA-1 hash of the dev bundle, or null for versions without a
+     * dev bundle.
+     * @return The key.
+     */
+    public static String sourceOf(String coordinates, @Nullable String sha1) {
+        return sha1 != null ? coordinates + "@" + sha1 : coordinates;
+    }
+
+    /**
+     * Delete a file or a folder with all of its content, if it exists.
+     *
+     * @param path The path.
+     * @throws IOException If something could not be deleted.
+     */
+    public static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        List<Path> paths;
+        try (Stream<Path> stream = Files.walk(path)) {
+            paths = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path file : paths) {
+            Files.delete(file);
+        }
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> toList(JSONArray array) {
+        List<String> list = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            list.add(array.getString(i));
+        }
+        return list;
+    }
+
+    /**
+     * What a published version was created from and what is needed to install it.
+     */
+    public static class Manifest {
+        public final String source;
+        public final List<String> dependencies;
+        public final List<String> dependencyManagement;
+
+        public Manifest(String source, List<String> dependencies, List<String> dependencyManagement) {
+            this.source = source;
+            this.dependencies = dependencies;
+            this.dependencyManagement = dependencyManagement;
+        }
+    }
+}
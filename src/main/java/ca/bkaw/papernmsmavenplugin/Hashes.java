@@ -0,0 +1,85 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashing of files and bytes as hex strings.
+ */
+public final class Hashes {
+    private Hashes() {}
+
+    /**
+     * Create a SHA-1 {@link MessageDigest}.
+     *
+     * @return The digest.
+     */
+    public static MessageDigest sha1Digest() {
+        return digest("SHA-1");
+    }
+
+    /**
+     * Create a SHA-256 {@link MessageDigest}.
+     *
+     * @return The digest.
+     */
+    public static MessageDigest sha256Digest() {
+        return digest("SHA-256");
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // All Java platforms are required to implement SHA-1 and SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Calculate the SHA-1 hash of bytes.
+     *
+     * @param bytes The bytes.
+     * @return The hash as a hex string.
+     */
+    public static String sha1(byte[] bytes) {
+        return toHex(sha1Digest().digest(bytes));
+    }
+
+    /**
+     * Calculate the SHA-1 hash of a file.
+     *
+     * @param path The path to the file.
+     * @return The hash as a hex string.
+     * @throws IOException If the file could not be read.
+     */
+    public static String sha1(Path path) throws IOException {
+        MessageDigest messageDigest = sha1Digest();
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    /**
+     * Convert a byte array to a hexadecimal string.
+     *
+     * @param bytes The byte array.
+     * @return The hex string.
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte value : bytes) {
+            result.append(Integer.toString((value & 0xff) + 0x100, 16).substring(1));
+        }
+        return result.toString();
+    }
+}
@@ -4,11 +4,35 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 
 @Mojo(name = "init", defaultPhase = LifecyclePhase.INITIALIZE)
 public class InitMojo extends MojoBase {
+    /**
+     * Initialize even if the installed nms dependency is up to date, for example to
+     * pick up a newer build within a version range.
+     */
+    @Parameter( property = "paperNms.forceInit", defaultValue = "false" )
+    boolean forceInit;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
-        this.init();
+        this.createDevBundleConfiguration();
+        String userVersion = this.getUserVersion();
+        if (!this.forceInit && this.isInstalled(userVersion)) {
+            getLog().info("paper-nms is up to date");
+            return;
+        }
+        try {
+            // A version range is resolved again after versionCacheTtl, in case a
+            // newer build was published
+            if (!this.forceInit && this.renewInstalled(userVersion)) {
+                getLog().info("paper-nms is up to date");
+                return;
+            }
+            this.init();
+        } finally {
+            this.reportPhases("init");
+        }
     }
 }
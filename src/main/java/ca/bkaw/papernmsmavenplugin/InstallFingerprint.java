@@ -0,0 +1,182 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+
+/**
+ * A record of what an installed nms artifact was created from, stored next to the
+ * artifact in the local repository.
+ * <p>
+ * When the fingerprint of the installed artifact matches, init has nothing to do
+ * and returns without resolving the dev bundle. The fingerprint can be checked
+ * without network access and without loading the remapping libraries.
+ * <p>
+ * For version ranges, the fingerprint also records when the range was resolved,
+ * so that the range is resolved again once the list of versions may be outdated.
+ */
+public class InstallFingerprint {
+    /**
+     * The version of the files created by init. Increase this when a change to the
+     * plugin requires existing installations to be created again.
+     */
+    public static final int DATA_VERSION = 1;
+
+    private static final String FILE_SUFFIX = ".fingerprint";
+
+    public final String userVersion;
+    @Nullable
+    public final String devBundleVersion;
+    @Nullable
+    public final String devBundlePath;
+    @Nullable
+    public final String devBundleSha1;
+    public final long devBundleSize;
+    public final long devBundleModified;
+    public final long artifactSize;
+    public final long resolvedAt;
+    public final String pluginVersion;
+    public final int dataVersion;
+
+    public InstallFingerprint(String userVersion, @Nullable String devBundleVersion, @Nullable String devBundlePath, @Nullable String devBundleSha1,
+                              long devBundleSize, long devBundleModified, long artifactSize, long resolvedAt, String pluginVersion, int dataVersion) {
+        this.userVersion = userVersion;
+        this.devBundleVersion = devBundleVersion;
+        this.devBundlePath = devBundlePath;
+        this.devBundleSha1 = devBundleSha1;
+        this.devBundleSize = devBundleSize;
+        this.devBundleModified = devBundleModified;
+        this.artifactSize = artifactSize;
+        this.resolvedAt = resolvedAt;
+        this.pluginVersion = pluginVersion;
+        this.dataVersion = dataVersion;
+    }
+
+    /**
+     * Get the path of the fingerprint of an installed artifact.
+     *
+     * @param artifactPath The path to the installed jar.
+     * @return The path to the fingerprint.
+     */
+    public static Path pathFor(Path artifactPath) {
+        return artifactPath.resolveSibling(artifactPath.getFileName() + FILE_SUFFIX);
+    }
+
+    /**
+     * Read a fingerprint.
+     *
+     * @param path The path to the fingerprint.
+     * @return The fingerprint, or null if it does not exist or is invalid.
+     */
+    @Nullable
+    public static InstallFingerprint read(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+            String userVersion = properties.getProperty("userVersion");
+            String pluginVersion = properties.getProperty("pluginVersion");
+            if (userVersion == null || pluginVersion == null) {
+                return null;
+            }
+            return new InstallFingerprint(
+                userVersion,
+                properties.getProperty("devBundleVersion"),
+                properties.getProperty("devBundlePath"),
+                properties.getProperty("devBundleSha1"),
+                Long.parseLong(properties.getProperty("devBundleSize", "-1")),
+                Long.parseLong(properties.getProperty("devBundleModified", "-1")),
+                Long.parseLong(properties.getProperty("artifactSize", "-1")),
+                Long.parseLong(properties.getProperty("resolvedAt", "-1")),
+                pluginVersion,
+                Integer.parseInt(properties.getProperty("dataVersion", "0"))
+            );
+        } catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the fingerprint atomically.
+     *
+     * @param path The path to write to.
+     * @throws IOException If the fingerprint could not be written.
+     */
+    public void write(Path path) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("userVersion", this.userVersion);
+        if (this.devBundleVersion != null) {
+            properties.setProperty("devBundleVersion", this.devBundleVersion);
+        }
+        if (this.devBundlePath != null) {
+            properties.setProperty("devBundlePath", this.devBundlePath);
+        }
+        if (this.devBundleSha1 != null) {
+            properties.setProperty("devBundleSha1", this.devBundleSha1);
+        }
+        properties.setProperty("devBundleSize", String.valueOf(this.devBundleSize));
+        properties.setProperty("devBundleModified", String.valueOf(this.devBundleModified));
+        properties.setProperty("artifactSize", String.valueOf(this.artifactSize));
+        properties.setProperty("resolvedAt", String.valueOf(this.resolvedAt));
+        properties.setProperty("pluginVersion", this.pluginVersion);
+        properties.setProperty("dataVersion", String.valueOf(this.dataVersion));
+
+        AtomicFiles.write(path, tempPath -> {
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                properties.store(out, "paper-nms-maven-plugin install fingerprint");
+            }
+        });
+    }
+
+    /**
+     * Check whether the version was resolved less than the specified time ago.
+     *
+     * @param maxAgeMillis The time in milliseconds.
+     * @return Whether the resolved version is recent.
+     */
+    public boolean isResolvedWithin(long maxAgeMillis) {
+        return this.resolvedAt >= 0 && System.currentTimeMillis() - this.resolvedAt < maxAgeMillis;
+    }
+
+    /**
+     * Check whether the installed artifact is still what this fingerprint describes.
+     * <p>
+     * The dev bundle is only hashed if its size or modification time changed.
+     *
+     * @param artifactPath The path to the installed jar.
+     * @param userVersion The version the user specified for the nms dependency.
+     * @param pluginVersion The version of the running plugin.
+     * @return Whether the artifact is up to date.
+     */
+    public boolean matches(Path artifactPath, String userVersion, String pluginVersion) {
+        if (!this.userVersion.equals(userVersion) || !this.pluginVersion.equals(pluginVersion) || this.dataVersion != DATA_VERSION) {
+            return false;
+        }
+        try {
+            if (Files.size(artifactPath) != this.artifactSize) {
+                return false;
+            }
+            if (this.devBundlePath == null) {
+                // A version without a dev bundle
+                return true;
+            }
+            Path devBundle = Paths.get(this.devBundlePath);
+            BasicFileAttributes attributes = Files.readAttributes(devBundle, BasicFileAttributes.class);
+            if (attributes.size() == this.devBundleSize && attributes.lastModifiedTime().toMillis() == this.devBundleModified) {
+                return true;
+            }
+            return this.devBundleSha1 != null && this.devBundleSha1.equals(Hashes.sha1(devBundle));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
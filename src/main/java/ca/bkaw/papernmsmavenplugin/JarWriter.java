@@ -0,0 +1,279 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a jar file in one streaming pass.
+ * <p>
+ * Entries from another zip file can be copied with their compressed data as-is,
+ * so they are never inflated and deflated again. The central directory is
+ * written when the writer is closed. Zip64 is not supported.
+ */
+public class JarWriter implements Closeable {
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(65536).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private long position;
+    private int entryCount;
+
+    /**
+     * Create a jar writer. An existing file is replaced.
+     *
+     * @param path The path to write the jar to.
+     * @throws IOException If the file could not be opened.
+     */
+    public JarWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Copy an entry from a zip file without inflating it.
+     *
+     * @param zipFile The zip file to copy from.
+     * @param entry The entry to copy.
+     * @throws IOException If something goes wrong.
+     */
+    public void copy(RawZipFile zipFile, RawZipFile.Entry entry) throws IOException {
+        long dataPosition = zipFile.getDataPosition(entry);
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        this.writeLocalHeader(name, entry.method, entry.dosTime, entry.crc, entry.compressedSize, entry.uncompressedSize);
+
+        this.flushBuffer();
+        FileChannel source = zipFile.getChannel();
+        long copied = 0;
+        while (copied < entry.compressedSize) {
+            long transferred = source.transferTo(dataPosition + copied, entry.compressedSize - copied, this.channel);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of zip file when copying " + entry.name);
+            }
+            copied += transferred;
+        }
+        this.position += entry.compressedSize;
+    }
+
+    /**
+     * Write an entry, deflating the content.
+     *
+     * @param name The name of the entry.
+     * @param content The uncompressed content.
+     * @param dosTime The modification time in the MS-DOS format, see {@link #toDosTime(long)}.
+     * @throws IOException If something goes wrong.
+     */
+    public void write(String name, byte[] content, int dosTime) throws IOException {
+        this.write(compress(name, content, dosTime));
+    }
+
+    /**
+     * Write an entry that has already been compressed with {@link #compress(String, byte[], int)}.
+     *
+     * @param entry The compressed entry.
+     * @throws IOException If something goes wrong.
+     */
+    public void write(CompressedEntry entry) throws IOException {
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        this.writeLocalHeader(name, entry.method, entry.dosTime, entry.crc, entry.data.length, entry.uncompressedSize);
+        this.writeBytes(entry.data, 0, entry.data.length);
+    }
+
+    /**
+     * Compress the content of an entry. This is independent of any writer and
+     * may be called from any thread.
+     *
+     * @param name The name of the entry.
+     * @param content The uncompressed content.
+     * @param dosTime The modification time in the MS-DOS format.
+     * @return The compressed entry.
+     */
+    public static CompressedEntry compress(String name, byte[] content, int dosTime) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            byte[] data = out.toByteArray();
+            if (data.length >= content.length) {
+                // Not worth compressing
+                return new CompressedEntry(name, METHOD_STORED, dosTime, (int) crc.getValue(), content.length, content);
+            }
+            return new CompressedEntry(name, METHOD_DEFLATED, dosTime, (int) crc.getValue(), content.length, data);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Convert a time in milliseconds to the MS-DOS format used by zip files.
+     *
+     * @param millis The time in milliseconds since the epoch.
+     * @return The time in the MS-DOS format.
+     */
+    public static int toDosTime(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+            | (calendar.get(Calendar.MONTH) + 1) << 21
+            | calendar.get(Calendar.DAY_OF_MONTH) << 16
+            | calendar.get(Calendar.HOUR_OF_DAY) << 11
+            | calendar.get(Calendar.MINUTE) << 5
+            | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private void writeLocalHeader(byte[] name, int method, int dosTime, int crc, long compressedSize, long uncompressedSize) throws IOException {
+        if (this.position > 0xffffffffL || compressedSize >= 0xffffffffL || uncompressedSize >= 0xffffffffL || this.entryCount >= 0xffff) {
+            throw new IOException("The jar is too large, zip64 is not supported");
+        }
+        int flags = isAscii(name) ? 0 : FLAG_UTF8;
+        long localHeaderOffset = this.position;
+
+        this.ensureCapacity(30 + name.length);
+        this.buffer.putInt(0x04034b50);
+        this.buffer.putShort((short) (method == METHOD_STORED ? 10 : 20));
+        this.buffer.putShort((short) flags);
+        this.buffer.putShort((short) method);
+        this.buffer.putInt(dosTime);
+        this.buffer.putInt(crc);
+        this.buffer.putInt((int) compressedSize);
+        this.buffer.putInt((int) uncompressedSize);
+        this.buffer.putShort((short) name.length);
+        this.buffer.putShort((short) 0);
+        this.buffer.put(name);
+        this.position += 30 + name.length;
+
+        ByteBuffer header = ByteBuffer.allocate(46 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x02014b50);
+        header.putShort((short) 20);
+        header.putShort((short) (method == METHOD_STORED ? 10 : 20));
+        header.putShort((short) flags);
+        header.putShort((short) method);
+        header.putInt(dosTime);
+        header.putInt(crc);
+        header.putInt((int) compressedSize);
+        header.putInt((int) uncompressedSize);
+        header.putShort((short) name.length);
+        header.putShort((short) 0); // extra length
+        header.putShort((short) 0); // comment length
+        header.putShort((short) 0); // disk number
+        header.putShort((short) 0); // internal attributes
+        header.putInt(0); // external attributes
+        header.putInt((int) localHeaderOffset);
+        header.put(name);
+        this.centralDirectory.write(header.array(), 0, header.position());
+        this.entryCount++;
+    }
+
+    private static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!this.buffer.hasRemaining()) {
+                this.flushBuffer();
+            }
+            int count = Math.min(length, this.buffer.remaining());
+            this.buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+            this.position += count;
+        }
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (this.buffer.remaining() < length) {
+            this.flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        // Through Buffer so that a build on a newer JDK still runs on Java 8
+        ((Buffer) this.buffer).flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        ((Buffer) this.buffer).clear();
+    }
+
+    /**
+     * Write the central directory and close the file.
+     *
+     * @throws IOException If something goes wrong.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long centralDirectoryOffset = this.position;
+            byte[] centralDirectory = this.centralDirectory.toByteArray();
+            this.writeBytes(centralDirectory, 0, centralDirectory.length);
+            if (centralDirectoryOffset > 0xffffffffL) {
+                throw new IOException("The jar is too large, zip64 is not supported");
+            }
+
+            this.ensureCapacity(22);
+            this.buffer.putInt(0x06054b50);
+            this.buffer.putShort((short) 0); // disk number
+            this.buffer.putShort((short) 0); // disk with central directory
+            this.buffer.putShort((short) this.entryCount);
+            this.buffer.putShort((short) this.entryCount);
+            this.buffer.putInt(centralDirectory.length);
+            this.buffer.putInt((int) centralDirectoryOffset);
+            this.buffer.putShort((short) 0); // comment length
+            this.flushBuffer();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * The compressed content of an entry, ready to be written.
+     */
+    public static class CompressedEntry {
+        public final String name;
+        private final int method;
+        private final int dosTime;
+        private final int crc;
+        private final long uncompressedSize;
+        private final byte[] data;
+
+        CompressedEntry(String name, int method, int dosTime, int crc, long uncompressedSize, byte[] data) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.uncompressedSize = uncompressedSize;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import net.fabricmc.tinyremapper.IMappingProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mappings that have been read once and are kept in memory, so that they can be
+ * given to any amount of remappers without reading them again.
+ * <p>
+ * Used for tiny files that are parsed directly, as a {@link MappingStore} can
+ * already be read any amount of times without being kept in this form.
+ * <p>
+ * Loading is thread safe, the mappings are not modified after construction.
+ */
+public class LoadedMappings implements IMappingProvider {
+    private final List<String[]> classes = new ArrayList<>();
+    private final List<Object[]> methods = new ArrayList<>();
+    private final List<Object[]> methodArgs = new ArrayList<>();
+    private final List<Object[]> methodVars = new ArrayList<>();
+    private final List<Object[]> fields = new ArrayList<>();
+
+    /**
+     * Read all mappings from a provider.
+     *
+     * @param provider The provider to read.
+     */
+    public LoadedMappings(IMappingProvider provider) {
+        provider.load(new MappingAcceptor() {
+            @Override
+            public void acceptClass(String srcName, String dstName) {
+                LoadedMappings.this.classes.add(new String[] { srcName, dstName });
+            }
+
+            @Override
+            public void acceptMethod(Member method, String dstName) {
+                LoadedMappings.this.methods.add(new Object[] { method, dstName });
+            }
+
+            @Override
+            public void acceptMethodArg(Member method, int lvIndex, String dstName) {
+                LoadedMappings.this.methodArgs.add(new Object[] { method, lvIndex, dstName });
+            }
+
+            @Override
+            public void acceptMethodVar(Member method, int lvIndex, int startOpIdx, int asmIndex, String dstName) {
+                LoadedMappings.this.methodVars.add(new Object[] { method, lvIndex, startOpIdx, asmIndex, dstName });
+            }
+
+            @Override
+            public void acceptField(Member field, String dstName) {
+                LoadedMappings.this.fields.add(new Object[] { field, dstName });
+            }
+        });
+    }
+
+    @Override
+    public void load(MappingAcceptor out) {
+        for (String[] mapping : this.classes) {
+            out.acceptClass(mapping[0], mapping[1]);
+        }
+        for (Object[] mapping : this.methods) {
+            out.acceptMethod((Member) mapping[0], (String) mapping[1]);
+        }
+        for (Object[] mapping : this.methodArgs) {
+            out.acceptMethodArg((Member) mapping[0], (Integer) mapping[1], (String) mapping[2]);
+        }
+        for (Object[] mapping : this.methodVars) {
+            out.acceptMethodVar((Member) mapping[0], (Integer) mapping[1], (Integer) mapping[2], (Integer) mapping[3], (String) mapping[4]);
+        }
+        for (Object[] mapping : this.fields) {
+            out.acceptField((Member) mapping[0], (String) mapping[1]);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Composes the Mojang to obfuscated mappings and the obfuscated to Spigot
+ * mappings into direct Mojang to Spigot mappings, so that a single remap gives
+ * the same result as remapping to obfuscated and then to Spigot.
+ * <p>
+ * Anything that the Spigot mappings do not rename keeps its obfuscated name,
+ * like it would after the second remap. Methods that the Spigot mappings only
+ * rename in a super class get the name from the super class, since the second
+ * remap would have propagated it.
+ */
+public class MappingComposer {
+    private final TinyMappings mojangMappings;
+    private final Map<String, String> mojangToObfuscatedClasses = new HashMap<>();
+    private final Map<String, String> spigotClasses = new HashMap<>();
+    private final Map<String, Map<String, String>> spigotFields = new HashMap<>();
+    private final Map<String, Map<String, String>> spigotMethods = new HashMap<>();
+    private final Map<String, List<String>> hierarchy;
+
+    /**
+     * Create a composer.
+     *
+     * @param mojangMappings The mappings with the namespaces mojang and obfuscated.
+     * @param spigotMappings The mappings with the namespaces obfuscated and spigot.
+     * @param hierarchy The super classes and interfaces of each class, with obfuscated names.
+     * @throws IOException If the mappings do not have the expected namespaces.
+     */
+    public MappingComposer(TinyMappings mojangMappings, TinyMappings spigotMappings, Map<String, List<String>> hierarchy) throws IOException {
+        if (!Arrays.asList("mojang", "obfuscated").equals(mojangMappings.getNamespaces())
+            || !Arrays.asList("obfuscated", "spigot").equals(spigotMappings.getNamespaces())) {
+            throw new IOException("Unexpected mapping namespaces " + mojangMappings.getNamespaces() + " and " + spigotMappings.getNamespaces());
+        }
+        this.mojangMappings = mojangMappings;
+        this.hierarchy = hierarchy;
+
+        for (TinyMappings.ClassEntry classEntry : mojangMappings.getClasses()) {
+            if (classEntry.names[0] != null && classEntry.names[1] != null) {
+                this.mojangToObfuscatedClasses.put(classEntry.names[0], classEntry.names[1]);
+            }
+        }
+        for (TinyMappings.ClassEntry classEntry : spigotMappings.getClasses()) {
+            String obfuscatedName = classEntry.names[0];
+            if (classEntry.names[1] != null) {
+                this.spigotClasses.put(obfuscatedName, classEntry.names[1]);
+            }
+            // Spigot field mappings do not always have a descriptor, so only use the name
+            Map<String, String> fields = new HashMap<>();
+            for (TinyMappings.MemberEntry field : classEntry.fields) {
+                if (field.names[1] != null) {
+                    fields.put(field.names[0], field.names[1]);
+                }
+            }
+            Map<String, String> methods = new HashMap<>();
+            for (TinyMappings.MemberEntry method : classEntry.methods) {
+                if (method.names[1] != null) {
+                    methods.put(method.names[0] + method.desc, method.names[1]);
+                }
+            }
+            this.spigotFields.put(obfuscatedName, fields);
+            this.spigotMethods.put(obfuscatedName, methods);
+        }
+    }
+
+    /**
+     * Read the super classes and interfaces of all classes in a Spigot mapped jar
+     * and translate them to obfuscated names.
+     *
+     * @param jarPath The path to the Spigot mapped jar.
+     * @param spigotMappings The mappings with the namespaces obfuscated and spigot.
+     * @return The super classes and interfaces of each class.
+     * @throws IOException If the jar could not be read.
+     */
+    public static Map<String, List<String>> readHierarchy(Path jarPath, TinyMappings spigotMappings) throws IOException {
+        Map<String, String> spigotToObfuscated = new HashMap<>();
+        for (TinyMappings.ClassEntry classEntry : spigotMappings.getClasses()) {
+            if (classEntry.names[1] != null) {
+                spigotToObfuscated.put(classEntry.names[1], classEntry.names[0]);
+            }
+        }
+
+        Map<String, List<String>> hierarchy = new HashMap<>();
+        try (JarFile jarFile = new JarFile(jarPath.toFile())) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class")) {
+                    continue;
+                }
+                ClassReader reader;
+                try (InputStream stream = jarFile.getInputStream(entry)) {
+                    reader = new ClassReader(stream);
+                }
+                List<String> parents = new ArrayList<>();
+                if (reader.getSuperName() != null) {
+                    parents.add(spigotToObfuscated.getOrDefault(reader.getSuperName(), reader.getSuperName()));
+                }
+                for (String interfaceName : reader.getInterfaces()) {
+                    parents.add(spigotToObfuscated.getOrDefault(interfaceName, interfaceName));
+                }
+                hierarchy.put(spigotToObfuscated.getOrDefault(reader.getClassName(), reader.getClassName()), parents);
+            }
+        }
+        return hierarchy;
+    }
+
+    /**
+     * Compose the mappings.
+     *
+     * @return Mappings with the namespaces mojang and spigot.
+     */
+    public TinyMappings compose() {
+        TinyMappings composed = new TinyMappings(Arrays.asList("mojang", "spigot"));
+        for (TinyMappings.ClassEntry classEntry : this.mojangMappings.getClasses()) {
+            String mojangName = classEntry.names[0];
+            String obfuscatedName = classEntry.names[1];
+            if (mojangName == null || obfuscatedName == null) {
+                continue;
+            }
+            TinyMappings.ClassEntry composedClass = new TinyMappings.ClassEntry(new String[] {
+                mojangName,
+                this.spigotClasses.getOrDefault(obfuscatedName, obfuscatedName)
+            });
+
+            Map<String, String> fields = this.spigotFields.getOrDefault(obfuscatedName, Collections.emptyMap());
+            for (TinyMappings.MemberEntry field : classEntry.fields) {
+                if (field.names[0] == null || field.names[1] == null) {
+                    continue;
+                }
+                composedClass.fields.add(new TinyMappings.MemberEntry(field.desc, new String[] {
+                    field.names[0],
+                    fields.getOrDefault(field.names[1], field.names[1])
+                }));
+            }
+
+            for (TinyMappings.MemberEntry method : classEntry.methods) {
+                if (method.names[0] == null || method.names[1] == null) {
+                    continue;
+                }
+                String spigotName = this.findSpigotMethod(obfuscatedName, method.names[1] + this.toObfuscatedDesc(method.desc));
+                composedClass.methods.add(new TinyMappings.MemberEntry(method.desc, new String[] {
+                    method.names[0],
+                    spigotName != null ? spigotName : method.names[1]
+                }));
+            }
+
+            composed.getClasses().add(composedClass);
+        }
+        return composed;
+    }
+
+    /**
+     * Find the Spigot name of a method in a class or the closest super class or
+     * interface that has a Spigot name for it.
+     */
+    private String findSpigotMethod(String obfuscatedClass, String nameAndDesc) {
+        Deque<String> queue = new ArrayDeque<>();
+        Set<String> visited = new HashSet<>();
+        queue.add(obfuscatedClass);
+        while (!queue.isEmpty()) {
+            String className = queue.poll();
+            if (!visited.add(className)) {
+                continue;
+            }
+            Map<String, String> methods = this.spigotMethods.get(className);
+            if (methods != null) {
+                String spigotName = methods.get(nameAndDesc);
+                if (spigotName != null) {
+                    return spigotName;
+                }
+            }
+            queue.addAll(this.hierarchy.getOrDefault(className, Collections.emptyList()));
+        }
+        return null;
+    }
+
+    private String toObfuscatedDesc(String desc) {
+        StringBuilder result = new StringBuilder(desc.length());
+        int i = 0;
+        while (i < desc.length()) {
+            char c = desc.charAt(i);
+            result.append(c);
+            i++;
+            if (c == 'L') {
+                int end = desc.indexOf(';', i);
+                String className = desc.substring(i, end);
+                result.append(this.mojangToObfuscatedClasses.getOrDefault(className, className)).append(';');
+                i = end + 1;
+            }
+        }
+        return result.toString();
+    }
+}
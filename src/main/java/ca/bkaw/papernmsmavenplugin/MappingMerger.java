@@ -0,0 +1,858 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the Spigot mappings (csrg) and the Mojang mappings (proguard) of versions
+ * without a dev bundle, and writes the merged Spigot to Mojang mappings, the Mojang
+ * mappings and the Spigot mappings in the tiny format.
+ * <p>
+ * The mappings are stored in two class tables, one with the obfuscated and Spigot
+ * names and one with the Mojang and obfuscated names. Classes are identified by
+ * their index in the table, and members are stored in arrays with the index of
+ * the class they belong to. The merged mappings are resolved one class at a time
+ * while writing, by joining the tables on the obfuscated names.
+ * <p>
+ * The output is the same as reading the mappings with Lorenz, merging the reversed
+ * Spigot mappings with the reversed Mojang mappings, and writing the mapping sets.
+ * Where the result of Lorenz depends on the iteration order of its hash maps,
+ * like when two classes are mapped to the same name, an
+ * {@link AmbiguousMappingsException} is thrown so that the caller can merge the
+ * mappings with Lorenz instead.
+ */
+public class MappingMerger {
+    private static final Comparator<String> CLASS_ORDER = Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+
+    private final Map<String, String> strings = new HashMap<>();
+    private final ClassTable spigotClasses = new ClassTable();
+    private final ClassTable mojangClasses = new ClassTable();
+    private final MemberTable spigotFields = new MemberTable();
+    private final MemberTable spigotMethods = new MemberTable();
+    private final MemberTable mojangFields = new MemberTable();
+    private final MemberTable mojangMethods = new MemberTable();
+    private final Map<String, Integer> spigotOwners = new HashMap<>();
+    private final Map<String, Map<String, String>> methodRenames = new HashMap<>();
+    private boolean spigotClassesIndexed;
+
+    /**
+     * Read the Spigot class mappings.
+     *
+     * @param path The path to the mappings (csrg).
+     * @throws IOException If the file could not be read or is invalid.
+     * @throws AmbiguousMappingsException If the mappings contain members.
+     */
+    public void readSpigotClasses(Path path) throws IOException, AmbiguousMappingsException {
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = splitCsrgLine(line);
+                if (parts == null) {
+                    continue;
+                }
+                if (parts.length == 2) {
+                    if (!parts[0].endsWith("/")) {
+                        int id = this.spigotClasses.getOrCreate(parts[0]);
+                        this.spigotClasses.setMappedName(id, parts[1]);
+                    }
+                } else if (parts.length == 3 || parts.length == 4) {
+                    throw new AmbiguousMappingsException("the Spigot class mappings contain members");
+                } else {
+                    throw new IOException("Invalid line in the Spigot class mappings: " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the Spigot member mappings. Must be called after the class mappings have
+     * been read.
+     *
+     * @param path The path to the mappings (csrg).
+     * @throws IOException If the file could not be read or is invalid.
+     * @throws AmbiguousMappingsException If the mappings contain classes, or can not be merged with the class mappings exactly.
+     */
+    public void readSpigotMembers(Path path) throws IOException, AmbiguousMappingsException {
+        this.indexSpigotClasses();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = splitCsrgLine(line);
+                if (parts == null) {
+                    continue;
+                }
+                if (parts.length == 3) {
+                    int owner = this.getOrCreateSpigotOwner(parts[0]);
+                    this.spigotFields.add(owner, parts[1], null, parts[2]);
+                } else if (parts.length == 4) {
+                    int owner = this.getOrCreateSpigotOwner(parts[0]);
+                    this.spigotMethods.add(owner, parts[1], parts[2], parts[3]);
+                } else if (parts.length == 2) {
+                    throw new AmbiguousMappingsException("the Spigot member mappings contain classes");
+                } else {
+                    throw new IOException("Invalid line in the Spigot member mappings: " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Split a line of csrg mappings into its parts.
+     *
+     * @param line The line.
+     * @return The parts, or null if the line is empty.
+     * @throws IOException If the line is too short to be a mapping.
+     */
+    @Nullable
+    private static String[] splitCsrgLine(String line) throws IOException {
+        int commentIndex = line.indexOf('#');
+        if (commentIndex != -1) {
+            line = line.substring(0, commentIndex);
+        }
+        line = line.trim();
+        if (line.isEmpty()) {
+            return null;
+        }
+        if (line.length() < 4) {
+            throw new IOException("Invalid line in the Spigot mappings: " + line);
+        }
+        return line.split(" ");
+    }
+
+    private void indexSpigotClasses() throws AmbiguousMappingsException {
+        if (!this.spigotClassesIndexed) {
+            this.spigotClasses.index();
+            this.spigotClassesIndexed = true;
+        }
+    }
+
+    /**
+     * Get the class in the Spigot table that members of a class with the specified
+     * Spigot name belong to, creating a class that keeps its obfuscated name if
+     * there is none.
+     *
+     * @param spigotName The Spigot name of the class.
+     * @return The index of the class.
+     * @throws AmbiguousMappingsException If a class with this obfuscated name is mapped to another name.
+     */
+    private int getOrCreateSpigotOwner(String spigotName) throws AmbiguousMappingsException {
+        Integer cached = this.spigotOwners.get(spigotName);
+        if (cached != null) {
+            return cached;
+        }
+        ClassTable classes = this.spigotClasses;
+        int index = spigotName.lastIndexOf('$');
+        int parent;
+        String simpleName;
+        String fullName;
+        String fullMappedName;
+        if (index == -1) {
+            parent = -1;
+            simpleName = spigotName.replace('.', '/');
+            fullName = simpleName;
+            fullMappedName = simpleName;
+        } else {
+            parent = this.getOrCreateSpigotOwner(spigotName.substring(0, index));
+            simpleName = spigotName.substring(index + 1);
+            fullName = classes.fullNames[parent] + '$' + simpleName;
+            fullMappedName = classes.fullMappedNames[parent] + '$' + simpleName;
+        }
+        Integer id = classes.byMappedName.get(fullMappedName);
+        Integer sameName = classes.byName.get(fullName);
+        if (sameName != null && !sameName.equals(id)) {
+            // Lorenz would let the members replace the name of that class
+            throw new AmbiguousMappingsException("the Spigot members of " + fullMappedName + " belong to a class that is renamed to " + classes.fullMappedNames[sameName]);
+        }
+        if (id == null) {
+            id = classes.add(parent, simpleName, fullName);
+            classes.fullMappedNames[id] = fullMappedName;
+            classes.byMappedName.put(fullMappedName, id);
+        }
+        this.spigotOwners.put(spigotName, id);
+        return id;
+    }
+
+    /**
+     * Read the Mojang mappings.
+     *
+     * @param path The path to the mappings (proguard).
+     * @throws IOException If the file could not be read or is invalid.
+     */
+    public void readMojang(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            int currentClass = -1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.trim().split(" ");
+                if (parts.length == 3 && parts[1].equals("->")) {
+                    String mojangName = parts[0].replace('.', '/');
+                    String obfuscatedName = parts[2].substring(0, parts[2].length() - 1).replace('.', '/');
+                    currentClass = this.mojangClasses.getOrCreate(mojangName);
+                    this.mojangClasses.setMappedName(currentClass, obfuscatedName);
+                }
+                if (parts.length == 4 && parts[2].equals("->")) {
+                    if (currentClass == -1) {
+                        throw new IOException("Member before the first class in the Mojang mappings: " + line);
+                    }
+                    String type = parts[0];
+                    String name = parts[1];
+                    int parametersStart = name.indexOf('(');
+                    if (parametersStart != -1) {
+                        // The type is prefixed with line numbers
+                        String returnType = type.substring(type.lastIndexOf(':') + 1);
+                        StringBuilder descriptor = new StringBuilder("(");
+                        for (String parameter : name.substring(parametersStart + 1, name.length() - 1).split(",")) {
+                            if (!parameter.isEmpty()) {
+                                descriptor.append(toDescriptor(parameter));
+                            }
+                        }
+                        descriptor.append(')').append(returnType.startsWith("void") ? "V" : toDescriptor(returnType));
+                        this.mojangMethods.add(currentClass, name.substring(0, parametersStart), descriptor.toString(), parts[3]);
+                    } else {
+                        this.mojangFields.add(currentClass, name, toDescriptor(type), parts[3]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert a type in the proguard format to a descriptor.
+     *
+     * @param type The type, like {@code int} or {@code java.lang.String[]}.
+     * @return The descriptor.
+     */
+    private static String toDescriptor(String type) {
+        int arrayStart = type.indexOf('[');
+        String elementType = arrayStart == -1 ? type : type.substring(0, arrayStart);
+        String descriptor;
+        switch (elementType) {
+            case "byte": descriptor = "B"; break;
+            case "char": descriptor = "C"; break;
+            case "double": descriptor = "D"; break;
+            case "float": descriptor = "F"; break;
+            case "int": descriptor = "I"; break;
+            case "long": descriptor = "J"; break;
+            case "short": descriptor = "S"; break;
+            case "boolean": descriptor = "Z"; break;
+            default: descriptor = "L" + elementType.replace('.', '/') + ";"; break;
+        }
+        if (arrayStart == -1) {
+            return descriptor;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = arrayStart; i < type.length(); i++) {
+            if (type.charAt(i) == '[') {
+                builder.append('[');
+            }
+        }
+        return builder.append(descriptor).toString();
+    }
+
+    /**
+     * Rename a method in the merged mappings.
+     *
+     * @param spigotClass The Spigot name of the class.
+     * @param name The Spigot name of the method.
+     * @param descriptor The descriptor of the method with Spigot names.
+     * @param mojangName The name to map the method to.
+     */
+    public void renameMethod(String spigotClass, String name, String descriptor, String mojangName) {
+        this.methodRenames.computeIfAbsent(spigotClass, k -> new HashMap<>()).put(name + ":" + descriptor, mojangName);
+    }
+
+    /**
+     * Write the merged mappings, the Mojang mappings and the Spigot mappings.
+     *
+     * @param outputPath The path to put the Spigot to Mojang mappings (tiny).
+     * @param outputMojangPath The path to put the Mojang to obfuscated mappings (tiny).
+     * @param outputSpigotPath The path to put the obfuscated to Spigot mappings (tiny).
+     * @throws IOException If a file could not be written.
+     * @throws AmbiguousMappingsException If Lorenz would not merge the mappings the same way every time.
+     */
+    public void write(Path outputPath, Path outputMojangPath, Path outputSpigotPath) throws IOException, AmbiguousMappingsException {
+        this.indexSpigotClasses();
+        this.mojangClasses.index();
+        this.spigotFields.group(this.spigotClasses.size);
+        this.spigotMethods.group(this.spigotClasses.size);
+        this.mojangFields.group(this.mojangClasses.size);
+        this.mojangMethods.group(this.mojangClasses.size);
+
+        ClassTable spigot = this.spigotClasses;
+        ClassTable mojang = this.mojangClasses;
+
+        // Join the tables on the obfuscated names
+        int[] spigotToMojang = new int[spigot.size];
+        for (int id = 0; id < spigot.size; id++) {
+            Integer mojangId = mojang.byMappedName.get(spigot.fullNames[id]);
+            spigotToMojang[id] = mojangId != null ? mojangId : -1;
+
+            // Lorenz looks for the Spigot name among the obfuscated names too
+            int parent = spigot.parents[id];
+            String sameNameClass = parent == -1 ? spigot.mappedNames[id] : spigot.fullNames[parent] + '$' + spigot.mappedNames[id];
+            Integer sameName = mojang.byMappedName.get(sameNameClass);
+            if (sameName != null && sameName != spigotToMojang[id]) {
+                throw new AmbiguousMappingsException("the class " + spigot.fullNames[id] + " has the Spigot name " + spigot.fullMappedNames[id] + " which is also an obfuscated name");
+            }
+        }
+
+        // The merged classes are the Spigot classes followed by the classes that
+        // only the Mojang mappings have
+        int[] mojangToMerged = new int[mojang.size];
+        int mergedSize = spigot.size;
+        for (int id = 0; id < mojang.size; id++) {
+            Integer spigotId = spigot.byName.get(mojang.fullMappedNames[id]);
+            mojangToMerged[id] = spigotId != null ? spigotId : mergedSize++;
+        }
+        int[] mergedParents = new int[mergedSize];
+        String[] mergedNames = new String[mergedSize];
+        String[] mergedMappedNames = new String[mergedSize];
+        int[] mergedToMojang = new int[mergedSize];
+        for (int id = 0; id < spigot.size; id++) {
+            int mojangId = spigotToMojang[id];
+            mergedParents[id] = spigot.parents[id];
+            mergedNames[id] = spigot.mappedNames[id];
+            mergedMappedNames[id] = mojangId != -1 ? mojang.names[mojangId] : spigot.names[id];
+            mergedToMojang[id] = mojangId;
+        }
+        for (int id = 0; id < mojang.size; id++) {
+            int mergedId = mojangToMerged[id];
+            if (mergedId >= spigot.size) {
+                int parent = mojang.parents[id];
+                mergedParents[mergedId] = parent == -1 ? -1 : mojangToMerged[parent];
+                mergedNames[mergedId] = mojang.mappedNames[id];
+                mergedMappedNames[mergedId] = mojang.names[id];
+                mergedToMojang[mergedId] = id;
+            }
+        }
+        String[] mergedFullNames = fullNames(mergedParents, mergedNames);
+        String[] mergedFullMappedNames = fullNames(mergedParents, mergedMappedNames);
+
+        try (Writer writer = Files.newBufferedWriter(outputPath);
+             Writer mojangWriter = Files.newBufferedWriter(outputMojangPath);
+             Writer spigotWriter = Files.newBufferedWriter(outputSpigotPath)) {
+            writeClasses(mojangWriter, "mojang", "obfuscated", mojang.parents, mojang.fullNames, mojang.fullMappedNames, mojang.size,
+                id -> this.writeMojangMembers(mojangWriter, id));
+            writeClasses(spigotWriter, "obfuscated", "spigot", spigot.parents, spigot.fullNames, spigot.fullMappedNames, spigot.size,
+                id -> this.writeSpigotMembers(spigotWriter, id));
+            writeClasses(writer, "spigot", "mojang", mergedParents, mergedFullNames, mergedFullMappedNames, mergedSize,
+                id -> this.writeMergedMembers(writer, id < spigot.size ? id : -1, mergedToMojang[id], mergedFullNames[id]));
+        }
+    }
+
+    private static String[] fullNames(int[] parents, String[] names) {
+        String[] fullNames = new String[names.length];
+        for (int id = 0; id < names.length; id++) {
+            fullNames[id] = resolveFullName(parents, names, fullNames, id);
+        }
+        return fullNames;
+    }
+
+    private static String resolveFullName(int[] parents, String[] names, String[] fullNames, int id) {
+        if (fullNames[id] == null) {
+            int parent = parents[id];
+            fullNames[id] = parent == -1 ? names[id] : resolveFullName(parents, names, fullNames, parent) + '$' + names[id];
+        }
+        return fullNames[id];
+    }
+
+    /**
+     * Write classes in the tiny v2 format in the order Lorenz writes them, with the
+     * members of a class before its inner classes.
+     */
+    private static void writeClasses(Writer writer, String fromNamespace, String toNamespace, int[] parents, String[] fullNames,
+                                     String[] fullMappedNames, int size, MemberWriter members) throws IOException, AmbiguousMappingsException {
+        writer.write("tiny\t2\t0\t" + fromNamespace + "\t" + toNamespace + "\n");
+
+        List<List<Integer>> children = new ArrayList<>(size);
+        List<Integer> topLevelClasses = new ArrayList<>();
+        for (int id = 0; id < size; id++) {
+            children.add(null);
+        }
+        for (int id = 0; id < size; id++) {
+            int parent = parents[id];
+            if (parent == -1) {
+                topLevelClasses.add(id);
+            } else {
+                if (children.get(parent) == null) {
+                    children.set(parent, new ArrayList<>());
+                }
+                children.get(parent).add(id);
+            }
+        }
+        Comparator<Integer> order = (a, b) -> CLASS_ORDER.compare(fullNames[a], fullNames[b]);
+        topLevelClasses.sort(order);
+        for (int id : topLevelClasses) {
+            writeClass(writer, id, children, order, fullNames, fullMappedNames, members);
+        }
+    }
+
+    private static void writeClass(Writer writer, int id, List<List<Integer>> children, Comparator<Integer> order, String[] fullNames,
+                                   String[] fullMappedNames, MemberWriter members) throws IOException, AmbiguousMappingsException {
+        writer.write("c\t" + fullNames[id] + "\t" + fullMappedNames[id] + "\n");
+        members.write(id);
+        List<Integer> innerClasses = children.get(id);
+        if (innerClasses != null) {
+            innerClasses.sort(order);
+            for (int innerId : innerClasses) {
+                writeClass(writer, innerId, children, order, fullNames, fullMappedNames, members);
+            }
+        }
+    }
+
+    private void writeMojangMembers(Writer writer, int id) throws IOException, AmbiguousMappingsException {
+        writeMembers(writer, "f", uniqueNames(this.mojangFields(id).values(), this.mojangClasses.fullNames[id]));
+        writeMembers(writer, "m", this.mojangMethods(id).values());
+    }
+
+    private void writeSpigotMembers(Writer writer, int id) throws IOException, AmbiguousMappingsException {
+        // Fields without a descriptor are left out, like Lorenz does
+        writeMembers(writer, "m", this.spigotMethods(id).values());
+    }
+
+    /**
+     * Resolve and write the members of a merged class, like Lorenz merges the
+     * reversed Spigot class with the reversed Mojang class.
+     *
+     * @param spigotId The index of the class in the Spigot table, or -1.
+     * @param mojangId The index of the class in the Mojang table, or -1.
+     * @param spigotName The full Spigot name of the class.
+     */
+    private void writeMergedMembers(Writer writer, int spigotId, int mojangId, String spigotName) throws IOException, AmbiguousMappingsException {
+        ClassTable spigot = this.spigotClasses;
+        ClassTable mojang = this.mojangClasses;
+        Map<String, Member> fields = new HashMap<>();
+        Map<String, Member> methods = new HashMap<>();
+
+        // The reversed classes, with the Spigot names and the obfuscated names
+        List<Member> spigotFields = new ArrayList<>();
+        List<Member> spigotMethods = new ArrayList<>();
+        if (spigotId != -1) {
+            Set<String> spigotFieldNames = new HashSet<>();
+            for (Member field : this.spigotFields(spigotId).values()) {
+                if (!spigotFieldNames.add(field.mappedName)) {
+                    throw new AmbiguousMappingsException("multiple fields in " + spigotName + " have the Spigot name " + field.mappedName);
+                }
+                spigotFields.add(new Member(field.mappedName, null, field.name));
+            }
+            Set<String> spigotMethodKeys = new HashSet<>();
+            for (Member method : this.spigotMethods(spigotId).values()) {
+                Member reversed = new Member(method.mappedName, spigot.mapDescriptor(method.descriptor), method.name);
+                if (!spigotMethodKeys.add(reversed.name + reversed.descriptor)) {
+                    throw new AmbiguousMappingsException("multiple methods in " + spigotName + " have the Spigot name " + reversed.name + reversed.descriptor);
+                }
+                spigotMethods.add(reversed);
+            }
+        }
+
+        // The reversed classes, with the obfuscated names and the Mojang names
+        Map<String, Member> mojangFields = new LinkedHashMap<>();
+        Map<String, List<Member>> mojangFieldsByName = new HashMap<>();
+        Map<String, Member> mojangMethods = new LinkedHashMap<>();
+        if (mojangId != -1) {
+            for (Member field : this.mojangFields(mojangId).values()) {
+                Member reversed = new Member(field.mappedName, mojang.mapDescriptor(field.descriptor), field.name);
+                if (mojangFields.put(reversed.name + ":" + reversed.descriptor, reversed) != null) {
+                    throw new AmbiguousMappingsException("multiple fields in " + spigotName + " have the obfuscated name " + reversed.name + ":" + reversed.descriptor);
+                }
+                mojangFieldsByName.computeIfAbsent(reversed.name, k -> new ArrayList<>()).add(reversed);
+            }
+            for (Member method : this.mojangMethods(mojangId).values()) {
+                Member reversed = new Member(method.mappedName, mojang.mapDescriptor(method.descriptor), method.name);
+                if (mojangMethods.put(reversed.name + reversed.descriptor, reversed) != null) {
+                    throw new AmbiguousMappingsException("multiple methods in " + spigotName + " have the obfuscated name " + reversed.name + reversed.descriptor);
+                }
+            }
+        }
+
+        // Fields are matched by name
+        Set<String> seenFieldNames = new HashSet<>();
+        for (Member field : spigotFields) {
+            Member duplicate = findField(mojangFieldsByName, field.name, spigotName);
+            Member continuation = findField(mojangFieldsByName, field.mappedName, spigotName);
+            if (duplicate != null) {
+                addMember(fields, new Member(field.name, spigot.mapDescriptor(duplicate.descriptor), duplicate.mappedName), spigotName);
+            } else if (continuation != null) {
+                addMember(fields, new Member(field.name, null, continuation.mappedName), spigotName);
+            } else {
+                addMember(fields, new Member(field.name, null, field.mappedName), spigotName);
+            }
+            seenFieldNames.add(field.name);
+            seenFieldNames.add(field.mappedName);
+        }
+        for (Member field : mojangFields.values()) {
+            if (!seenFieldNames.contains(field.name)) {
+                addMember(fields, new Member(field.name, spigot.mapDescriptor(field.descriptor), field.mappedName), spigotName);
+            }
+        }
+
+        // Methods are matched by name and descriptor
+        Set<String> seenMethods = new HashSet<>();
+        for (Member method : spigotMethods) {
+            String obfuscatedDescriptor = spigot.reverseMapDescriptor(method.descriptor);
+            Member duplicate = mojangMethods.get(method.name + method.descriptor);
+            Member continuation = mojangMethods.get(method.mappedName + obfuscatedDescriptor);
+            if (duplicate != null) {
+                addMember(methods, new Member(method.name, spigot.mapDescriptor(duplicate.descriptor), duplicate.mappedName), spigotName);
+            } else if (continuation != null) {
+                addMember(methods, new Member(method.name, method.descriptor, continuation.mappedName), spigotName);
+            } else {
+                addMember(methods, new Member(method.name, method.descriptor, method.mappedName), spigotName);
+            }
+            seenMethods.add(method.name + method.descriptor);
+            seenMethods.add(method.mappedName + obfuscatedDescriptor);
+        }
+        for (Member method : mojangMethods.values()) {
+            if (!seenMethods.contains(method.name + method.descriptor)) {
+                addMember(methods, new Member(method.name, spigot.mapDescriptor(method.descriptor), method.mappedName), spigotName);
+            }
+        }
+
+        Map<String, String> renames = this.methodRenames.get(spigotName);
+        if (renames != null) {
+            for (Map.Entry<String, String> rename : renames.entrySet()) {
+                Member method = methods.get(rename.getKey());
+                if (method != null) {
+                    methods.put(rename.getKey(), new Member(method.name, method.descriptor, rename.getValue()));
+                }
+            }
+        }
+
+        List<Member> typedFields = new ArrayList<>();
+        for (Member field : uniqueNames(fields.values(), spigotName)) {
+            // Fields without a descriptor are left out, like Lorenz does
+            if (field.descriptor != null) {
+                typedFields.add(field);
+            }
+        }
+        writeMembers(writer, "f", typedFields);
+        writeMembers(writer, "m", methods.values());
+    }
+
+    @Nullable
+    private static Member findField(Map<String, List<Member>> fieldsByName, String name, String className) throws AmbiguousMappingsException {
+        List<Member> fields = fieldsByName.get(name);
+        if (fields == null) {
+            return null;
+        }
+        if (fields.size() > 1) {
+            throw new AmbiguousMappingsException("multiple fields in " + className + " have the obfuscated name " + name);
+        }
+        return fields.get(0);
+    }
+
+    private static void addMember(Map<String, Member> members, Member member, String className) throws AmbiguousMappingsException {
+        String key = member.descriptor != null ? member.name + ":" + member.descriptor : member.name;
+        if (members.put(key, member) != null) {
+            throw new AmbiguousMappingsException("multiple members in " + className + " are merged into " + key);
+        }
+    }
+
+    private static Collection<Member> uniqueNames(Collection<Member> fields, String className) throws AmbiguousMappingsException {
+        Set<String> names = new HashSet<>();
+        for (Member field : fields) {
+            if (!names.add(field.name)) {
+                // Lorenz writes one field per name
+                throw new AmbiguousMappingsException("multiple fields in " + className + " are named " + field.name);
+            }
+        }
+        return fields;
+    }
+
+    private static void writeMembers(Writer writer, String kind, Collection<Member> members) throws IOException {
+        Member[] sorted = members.toArray(new Member[0]);
+        Arrays.sort(sorted, Comparator.comparing(member -> member.name + (member.descriptor != null ? member.descriptor : "")));
+        for (Member member : sorted) {
+            writer.write("\t" + kind + "\t" + member.descriptor + "\t" + member.name + "\t" + member.mappedName + "\n");
+        }
+    }
+
+    /**
+     * Get the Spigot fields of a class, as obfuscated name to Spigot name.
+     */
+    private Map<String, Member> spigotFields(int classId) {
+        Map<String, Member> fields = new LinkedHashMap<>();
+        MemberTable table = this.spigotFields;
+        for (int i = table.offsets[classId]; i < table.offsets[classId + 1]; i++) {
+            int member = table.order[i];
+            // A later mapping of the same field replaces the name
+            fields.put(table.names[member], new Member(table.names[member], null, table.mappedNames[member]));
+        }
+        return fields;
+    }
+
+    /**
+     * Get the Spigot methods of a class, as obfuscated name and descriptor to
+     * Spigot name, with the descriptor mapped from the Spigot names like Lorenz
+     * does when merging the member mappings with the class mappings.
+     */
+    private Map<String, Member> spigotMethods(int classId) throws AmbiguousMappingsException {
+        Map<String, Member> methods = new LinkedHashMap<>();
+        MemberTable table = this.spigotMethods;
+        for (int i = table.offsets[classId]; i < table.offsets[classId + 1]; i++) {
+            int member = table.order[i];
+            methods.put(table.names[member] + table.descriptors[member], new Member(table.names[member], table.descriptors[member], table.mappedNames[member]));
+        }
+        Map<String, Member> obfuscatedMethods = new LinkedHashMap<>();
+        for (Member method : methods.values()) {
+            String descriptor = this.spigotClasses.reverseMapDescriptor(method.descriptor);
+            if (obfuscatedMethods.put(method.name + descriptor, new Member(method.name, descriptor, method.mappedName)) != null) {
+                throw new AmbiguousMappingsException("multiple Spigot methods in " + this.spigotClasses.fullMappedNames[classId] + " are mapped to " + method.name + descriptor);
+            }
+        }
+        return obfuscatedMethods;
+    }
+
+    private Map<String, Member> mojangFields(int classId) {
+        return this.mojangMembers(this.mojangFields, classId, ":");
+    }
+
+    private Map<String, Member> mojangMethods(int classId) {
+        return this.mojangMembers(this.mojangMethods, classId, "");
+    }
+
+    private Map<String, Member> mojangMembers(MemberTable table, int classId, String separator) {
+        Map<String, Member> members = new LinkedHashMap<>();
+        for (int i = table.offsets[classId]; i < table.offsets[classId + 1]; i++) {
+            int member = table.order[i];
+            // A later mapping of the same member replaces the name
+            members.put(table.names[member] + separator + table.descriptors[member], new Member(table.names[member], table.descriptors[member], table.mappedNames[member]));
+        }
+        return members;
+    }
+
+    private String intern(String string) {
+        String existing = this.strings.putIfAbsent(string, string);
+        return existing != null ? existing : string;
+    }
+
+    /**
+     * Classes with a name and a mapped name, nested like Lorenz nests them: by
+     * splitting the name at each {@code $}.
+     */
+    private class ClassTable {
+        int size;
+        int[] parents = new int[256];
+        /** The simple name, or the full name for top level classes. */
+        String[] names = new String[256];
+        String[] mappedNames = new String[256];
+        String[] fullNames = new String[256];
+        String[] fullMappedNames = new String[256];
+        final Map<String, Integer> byName = new HashMap<>();
+        /** Filled by {@link #index()}. */
+        final Map<String, Integer> byMappedName = new HashMap<>();
+
+        int getOrCreate(String name) {
+            Integer existing = this.byName.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            int index = name.lastIndexOf('$');
+            if (index == -1) {
+                String fullName = name.replace('.', '/');
+                existing = this.byName.get(fullName);
+                return existing != null ? existing : this.add(-1, fullName, fullName);
+            }
+            int parent = this.getOrCreate(name.substring(0, index));
+            String simpleName = name.substring(index + 1);
+            String fullName = this.fullNames[parent] + '$' + simpleName;
+            existing = this.byName.get(fullName);
+            return existing != null ? existing : this.add(parent, simpleName, fullName);
+        }
+
+        int add(int parent, String name, String fullName) {
+            if (this.size == this.parents.length) {
+                int capacity = this.size * 2;
+                this.parents = Arrays.copyOf(this.parents, capacity);
+                this.names = Arrays.copyOf(this.names, capacity);
+                this.mappedNames = Arrays.copyOf(this.mappedNames, capacity);
+                this.fullNames = Arrays.copyOf(this.fullNames, capacity);
+                this.fullMappedNames = Arrays.copyOf(this.fullMappedNames, capacity);
+            }
+            int id = this.size++;
+            this.parents[id] = parent;
+            this.names[id] = intern(name);
+            this.mappedNames[id] = this.names[id];
+            this.fullNames[id] = fullName;
+            this.byName.put(fullName, id);
+            return id;
+        }
+
+        void setMappedName(int id, String mappedName) {
+            if (this.parents[id] == -1) {
+                this.mappedNames[id] = intern(mappedName.replace('.', '/'));
+            } else {
+                this.mappedNames[id] = intern(mappedName.substring(mappedName.lastIndexOf('$') + 1));
+            }
+        }
+
+        void index() throws AmbiguousMappingsException {
+            this.byMappedName.clear();
+            for (int id = 0; id < this.size; id++) {
+                int parent = this.parents[id];
+                String mappedName = this.mappedNames[id];
+                if (parent == -1 && mappedName.indexOf('$') != -1) {
+                    throw new AmbiguousMappingsException("the top level class " + this.fullNames[id] + " is mapped to the inner class " + mappedName);
+                }
+                // Parents are always added before their inner classes
+                String fullMappedName = parent == -1 ? mappedName : this.fullMappedNames[parent] + '$' + mappedName;
+                this.fullMappedNames[id] = fullMappedName;
+                Integer other = this.byMappedName.put(fullMappedName, id);
+                if (other != null) {
+                    throw new AmbiguousMappingsException("the classes " + this.fullNames[other] + " and " + this.fullNames[id] + " are both mapped to " + fullMappedName);
+                }
+            }
+        }
+
+        /**
+         * Map the class names in a descriptor from names to mapped names.
+         */
+        String mapDescriptor(String descriptor) {
+            return this.translateDescriptor(descriptor, this.byName, this.fullNames, this.fullMappedNames);
+        }
+
+        /**
+         * Map the class names in a descriptor from mapped names to names.
+         */
+        String reverseMapDescriptor(String descriptor) {
+            return this.translateDescriptor(descriptor, this.byMappedName, this.fullMappedNames, this.fullNames);
+        }
+
+        private String translateDescriptor(String descriptor, Map<String, Integer> lookup, String[] from, String[] to) {
+            int start = descriptor.indexOf('L');
+            if (start == -1) {
+                return descriptor;
+            }
+            StringBuilder result = new StringBuilder(descriptor.length());
+            int index = 0;
+            while (start != -1) {
+                int end = descriptor.indexOf(';', start);
+                if (end == -1) {
+                    break;
+                }
+                result.append(descriptor, index, start + 1);
+                result.append(translate(descriptor.substring(start + 1, end), lookup, from, to));
+                index = end;
+                start = descriptor.indexOf('L', end);
+            }
+            result.append(descriptor, index, descriptor.length());
+            return result.toString();
+        }
+
+        /**
+         * Map a class name like Lorenz does: by looking up each inner class by its
+         * simple name, keeping the rest of the name when an inner class is missing.
+         */
+        private String translate(String className, Map<String, Integer> lookup, String[] from, String[] to) {
+            String[] parts = className.split("\\$");
+            Integer current = lookup.get(parts[0].replace('.', '/'));
+            if (current == null) {
+                return className;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                Integer inner = lookup.get(from[current] + '$' + parts[i]);
+                if (inner == null) {
+                    StringBuilder result = new StringBuilder(to[current]);
+                    for (int j = i; j < parts.length; j++) {
+                        result.append('$').append(parts[j]);
+                    }
+                    return result.toString();
+                }
+                current = inner;
+            }
+            return to[current];
+        }
+    }
+
+    /**
+     * Fields or methods, with the index of the class they belong to.
+     */
+    private class MemberTable {
+        int size;
+        int[] owners = new int[1024];
+        String[] names = new String[1024];
+        String[] descriptors = new String[1024];
+        String[] mappedNames = new String[1024];
+        /** The members ordered by class, filled by {@link #group(int)}. */
+        int[] order;
+        int[] offsets;
+
+        void add(int owner, String name, @Nullable String descriptor, String mappedName) {
+            if (this.size == this.owners.length) {
+                int capacity = this.size * 2;
+                this.owners = Arrays.copyOf(this.owners, capacity);
+                this.names = Arrays.copyOf(this.names, capacity);
+                this.descriptors = Arrays.copyOf(this.descriptors, capacity);
+                this.mappedNames = Arrays.copyOf(this.mappedNames, capacity);
+            }
+            int id = this.size++;
+            this.owners[id] = owner;
+            this.names[id] = intern(name);
+            this.descriptors[id] = descriptor != null ? intern(descriptor) : null;
+            this.mappedNames[id] = intern(mappedName);
+        }
+
+        void group(int classCount) {
+            this.offsets = new int[classCount + 1];
+            for (int id = 0; id < this.size; id++) {
+                this.offsets[this.owners[id] + 1]++;
+            }
+            for (int i = 0; i < classCount; i++) {
+                this.offsets[i + 1] += this.offsets[i];
+            }
+            int[] next = Arrays.copyOf(this.offsets, classCount);
+            this.order = new int[this.size];
+            for (int id = 0; id < this.size; id++) {
+                this.order[next[this.owners[id]]++] = id;
+            }
+        }
+    }
+
+    private static class Member {
+        final String name;
+        @Nullable
+        final String descriptor;
+        final String mappedName;
+
+        Member(String name, @Nullable String descriptor, String mappedName) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.mappedName = mappedName;
+        }
+    }
+
+    @FunctionalInterface
+    private interface MemberWriter {
+        void write(int classId) throws IOException, AmbiguousMappingsException;
+    }
+
+    /**
+     * Thrown when the mappings can not be merged exactly like Lorenz merges them,
+     * for example because Lorenz would pick one of two mappings to the same name
+     * depending on the iteration order of a hash map.
+     */
+    public static class AmbiguousMappingsException extends Exception {
+        public AmbiguousMappingsException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import net.fabricmc.tinyremapper.IMappingProvider;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tiny mappings compiled into a compact binary file that is read into one buffer
+ * and decoded lazily.
+ * <p>
+ * Every name and descriptor is stored once in a string pool and referenced by
+ * index, and strings are only decoded when a remapper asks for them. The file is
+ * read instead of memory-mapped, as a mapped file can not be deleted or replaced
+ * on Windows until the mapping is garbage collected. The store
+ * remembers the size and modification time of the tiny file it was compiled
+ * from so that a changed tiny file is compiled again.
+ */
+public class MappingStore {
+    public static final String EXTENSION = ".bin";
+
+    private static final int MAGIC = 0x504E4D53; // PNMS
+    private static final int FORMAT_VERSION = 1;
+
+    private final ByteBuffer buffer;
+    private final long sourceSize;
+    private final long sourceLastModified;
+    private final int stringCount;
+    private final int stringOffsetsPosition;
+    private final int stringDataPosition;
+    private final String[] strings;
+    private final List<String> namespaces;
+    private final int classCount;
+    private final int classesPosition;
+
+    private MappingStore(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a compiled mappings file, or compiled by another version");
+        }
+        this.sourceSize = buffer.getLong(8);
+        this.sourceLastModified = buffer.getLong(16);
+        this.stringCount = buffer.getInt(24);
+        this.stringOffsetsPosition = 28;
+        this.stringDataPosition = this.stringOffsetsPosition + (this.stringCount + 1) * 4;
+        this.strings = new String[this.stringCount];
+
+        int position = this.stringDataPosition + buffer.getInt(this.stringOffsetsPosition + this.stringCount * 4);
+        int namespaceCount = buffer.getInt(position);
+        position += 4;
+        List<String> namespaces = new ArrayList<>(namespaceCount);
+        for (int i = 0; i < namespaceCount; i++) {
+            namespaces.add(this.getString(buffer.getInt(position)));
+            position += 4;
+        }
+        this.namespaces = Collections.unmodifiableList(namespaces);
+        this.classCount = buffer.getInt(position);
+        this.classesPosition = position + 4;
+    }
+
+    /**
+     * Get the path of the compiled store for a tiny mappings file.
+     *
+     * @param mappingsPath The path to the tiny mappings file.
+     * @return The path to the compiled store.
+     */
+    public static Path getStorePath(Path mappingsPath) {
+        return Paths.get(mappingsPath + EXTENSION);
+    }
+
+    /**
+     * Open the compiled store for a tiny mappings file, compiling it first if it
+     * does not exist or was compiled from an older version of the tiny file.
+     *
+     * @param mappingsPath The path to the tiny mappings file.
+     * @return The store.
+     * @throws IOException If the store could not be compiled or read.
+     */
+    public static MappingStore openFor(Path mappingsPath) throws IOException {
+        Path storePath = getStorePath(mappingsPath);
+        BasicFileAttributes attributes = Files.readAttributes(mappingsPath, BasicFileAttributes.class);
+        if (Files.exists(storePath)) {
+            try {
+                MappingStore store = open(storePath);
+                if (store.sourceSize == attributes.size() && store.sourceLastModified == attributes.lastModifiedTime().toMillis()) {
+                    return store;
+                }
+            } catch (IOException ignored) {
+                // Broken or outdated store, compile it again
+            }
+        }
+        compile(mappingsPath, storePath);
+        return open(storePath);
+    }
+
+    /**
+     * Read a compiled store. The file is closed when this method returns.
+     *
+     * @param storePath The path to the compiled store.
+     * @return The store.
+     * @throws IOException If the store could not be read.
+     */
+    public static MappingStore open(Path storePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(storePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Compiled mappings file is too large");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Compiled mappings file ended unexpectedly");
+                }
+            }
+            // The buffer methods are called through Buffer, as the ByteBuffer
+            // overrides that return ByteBuffer do not exist on Java 8
+            ((Buffer) buffer).flip();
+            return new MappingStore(buffer);
+        }
+    }
+
+    /**
+     * Compile a tiny v2 mappings file into a store.
+     * <p>
+     * The store is written to a temporary file and then moved into place, so
+     * that concurrent readers never see a partially written store.
+     *
+     * @param mappingsPath The path to the tiny mappings file.
+     * @param storePath The path to write the compiled store to.
+     * @throws IOException If the mappings could not be read or the store written.
+     */
+    public static void compile(Path mappingsPath, Path storePath) throws IOException {
+        compile(TinyMappings.read(mappingsPath), mappingsPath, storePath);
+    }
+
+    /**
+     * Compile mappings that have already been read into a store.
+     *
+     * @param mappings The mappings, as read from the tiny mappings file.
+     * @param mappingsPath The path to the tiny mappings file.
+     * @param storePath The path to write the compiled store to.
+     * @throws IOException If the store could not be written.
+     */
+    public static void compile(TinyMappings mappings, Path mappingsPath, Path storePath) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(mappingsPath, BasicFileAttributes.class);
+        AtomicFiles.write(storePath, tempPath -> write(mappings, attributes.size(), attributes.lastModifiedTime().toMillis(), tempPath));
+    }
+
+    private static void write(TinyMappings mappings, long sourceSize, long sourceLastModified, Path path) throws IOException {
+        StringPool pool = new StringPool();
+        int namespaceCount = mappings.getNamespaces().size();
+
+        // Write the records first so that the string pool is complete
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        records.writeInt(namespaceCount);
+        for (String namespace : mappings.getNamespaces()) {
+            records.writeInt(pool.get(namespace));
+        }
+        records.writeInt(mappings.getClasses().size());
+        for (TinyMappings.ClassEntry classEntry : mappings.getClasses()) {
+            writeNames(records, pool, classEntry.names);
+            records.writeInt(classEntry.fields.size());
+            for (TinyMappings.MemberEntry field : classEntry.fields) {
+                records.writeInt(pool.get(field.desc));
+                writeNames(records, pool, field.names);
+            }
+            records.writeInt(classEntry.methods.size());
+            for (TinyMappings.MemberEntry method : classEntry.methods) {
+                records.writeInt(pool.get(method.desc));
+                writeNames(records, pool, method.names);
+                records.writeInt(method.parameters.size());
+                for (TinyMappings.ParameterEntry parameter : method.parameters) {
+                    records.writeInt(parameter.lvIndex);
+                    writeNames(records, pool, parameter.names);
+                }
+                records.writeInt(method.variables.size());
+                for (TinyMappings.VariableEntry variable : method.variables) {
+                    records.writeInt(variable.lvIndex);
+                    records.writeInt(variable.startOpIdx);
+                    records.writeInt(variable.lvtRowIndex);
+                    writeNames(records, pool, variable.names);
+                }
+            }
+        }
+        records.flush();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(sourceSize);
+            out.writeLong(sourceLastModified);
+            out.writeInt(pool.strings.size());
+            int offset = 0;
+            List<byte[]> encoded = new ArrayList<>(pool.strings.size());
+            for (String string : pool.strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : encoded) {
+                out.write(bytes);
+            }
+            recordBytes.writeTo(out);
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, StringPool pool, String[] names) throws IOException {
+        for (String name : names) {
+            out.writeInt(name == null ? -1 : pool.get(name));
+        }
+    }
+
+    /**
+     * Get the namespaces of the mappings.
+     *
+     * @return The unmodifiable list of namespaces.
+     */
+    public List<String> getNamespaces() {
+        return this.namespaces;
+    }
+
+    /**
+     * Create a mapping provider for tiny-remapper that reads the mappings from
+     * this store.
+     *
+     * @param from The namespace to map from.
+     * @param to The namespace to map to.
+     * @return The mapping provider.
+     * @throws IllegalArgumentException If one of the namespaces does not exist.
+     */
+    public IMappingProvider createProvider(String from, String to) {
+        int fromId = this.namespaces.indexOf(from);
+        int toId = this.namespaces.indexOf(to);
+        if (fromId < 0 || toId < 0) {
+            throw new IllegalArgumentException("The mappings do not have the namespaces " + from + " and " + to + ", only " + this.namespaces);
+        }
+        return out -> this.load(out, fromId, toId);
+    }
+
+    private void load(IMappingProvider.MappingAcceptor out, int fromId, int toId) {
+        ByteBuffer buffer = this.buffer.duplicate();
+        ((Buffer) buffer).position(this.classesPosition);
+        int namespaceCount = this.namespaces.size();
+        Map<String, String> classNames = fromId == 0 ? null : this.getClassNames(fromId);
+
+        for (int i = 0; i < this.classCount; i++) {
+            int classStart = buffer.position();
+            String owner = this.getName(buffer, classStart, 0, fromId);
+            int classTo = buffer.getInt(classStart + toId * 4);
+            ((Buffer) buffer).position(classStart + namespaceCount * 4);
+            if (classTo >= 0) {
+                out.acceptClass(owner, this.getString(classTo));
+            }
+
+            int fieldCount = buffer.getInt();
+            for (int j = 0; j < fieldCount; j++) {
+                String desc = this.getDesc(buffer.getInt(), classNames);
+                int namesStart = buffer.position();
+                int nameTo = buffer.getInt(namesStart + toId * 4);
+                if (nameTo >= 0) {
+                    String name = this.getName(buffer, namesStart, 0, fromId);
+                    out.acceptField(new IMappingProvider.Member(owner, name, desc), this.getString(nameTo));
+                }
+                ((Buffer) buffer).position(namesStart + namespaceCount * 4);
+            }
+
+            int methodCount = buffer.getInt();
+            for (int j = 0; j < methodCount; j++) {
+                String desc = this.getDesc(buffer.getInt(), classNames);
+                int namesStart = buffer.position();
+                String name = this.getName(buffer, namesStart, 0, fromId);
+                IMappingProvider.Member method = new IMappingProvider.Member(owner, name, desc);
+                int nameTo = buffer.getInt(namesStart + toId * 4);
+                if (nameTo >= 0) {
+                    out.acceptMethod(method, this.getString(nameTo));
+                }
+                ((Buffer) buffer).position(namesStart + namespaceCount * 4);
+
+                int parameterCount = buffer.getInt();
+                for (int k = 0; k < parameterCount; k++) {
+                    int lvIndex = buffer.getInt();
+                    int parameterTo = buffer.getInt(buffer.position() + toId * 4);
+                    if (parameterTo >= 0) {
+                        out.acceptMethodArg(method, lvIndex, this.getString(parameterTo));
+                    }
+                    ((Buffer) buffer).position(buffer.position() + namespaceCount * 4);
+                }
+
+                int variableCount = buffer.getInt();
+                for (int k = 0; k < variableCount; k++) {
+                    int lvIndex = buffer.getInt();
+                    int startOpIdx = buffer.getInt();
+                    int lvtRowIndex = buffer.getInt();
+                    int variableTo = buffer.getInt(buffer.position() + toId * 4);
+                    if (variableTo >= 0) {
+                        out.acceptMethodVar(method, lvIndex, startOpIdx, lvtRowIndex, this.getString(variableTo));
+                    }
+                    ((Buffer) buffer).position(buffer.position() + namespaceCount * 4);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the name in a namespace, falling back to the name in the first namespace
+     * if the name is missing, like tiny mappings do.
+     */
+    private String getName(ByteBuffer buffer, int namesStart, int fallbackId, int namespaceId) {
+        int index = buffer.getInt(namesStart + namespaceId * 4);
+        if (index < 0) {
+            index = buffer.getInt(namesStart + fallbackId * 4);
+        }
+        return this.getString(index);
+    }
+
+    /**
+     * Get a descriptor in the namespace to map from. Descriptors are stored in the
+     * first namespace, so they need to be remapped for other namespaces.
+     */
+    private String getDesc(int index, Map<String, String> classNames) {
+        String desc = this.getString(index);
+        if (classNames == null) {
+            return desc;
+        }
+        StringBuilder result = new StringBuilder(desc.length());
+        int i = 0;
+        while (i < desc.length()) {
+            char c = desc.charAt(i);
+            result.append(c);
+            i++;
+            if (c == 'L') {
+                int end = desc.indexOf(';', i);
+                String className = desc.substring(i, end);
+                result.append(classNames.getOrDefault(className, className)).append(';');
+                i = end + 1;
+            }
+        }
+        return result.toString();
+    }
+
+    private Map<String, String> getClassNames(int namespaceId) {
+        Map<String, String> classNames = new HashMap<>(this.classCount * 2);
+        ByteBuffer buffer = this.buffer.duplicate();
+        ((Buffer) buffer).position(this.classesPosition);
+        int namespaceCount = this.namespaces.size();
+        for (int i = 0; i < this.classCount; i++) {
+            int classStart = buffer.position();
+            int first = buffer.getInt(classStart);
+            int name = buffer.getInt(classStart + namespaceId * 4);
+            if (first >= 0 && name >= 0) {
+                classNames.put(this.getString(first), this.getString(name));
+            }
+            ((Buffer) buffer).position(classStart + namespaceCount * 4);
+            int fieldCount = buffer.getInt();
+            ((Buffer) buffer).position(buffer.position() + fieldCount * (1 + namespaceCount) * 4);
+            int methodCount = buffer.getInt();
+            for (int j = 0; j < methodCount; j++) {
+                ((Buffer) buffer).position(buffer.position() + (1 + namespaceCount) * 4);
+                int parameterCount = buffer.getInt();
+                ((Buffer) buffer).position(buffer.position() + parameterCount * (1 + namespaceCount) * 4);
+                int variableCount = buffer.getInt();
+                ((Buffer) buffer).position(buffer.position() + variableCount * (3 + namespaceCount) * 4);
+            }
+        }
+        return classNames;
+    }
+
+    private String getString(int index) {
+        String string = this.strings[index];
+        if (string == null) {
+            int start = this.buffer.getInt(this.stringOffsetsPosition + index * 4);
+            int end = this.buffer.getInt(this.stringOffsetsPosition + (index + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer buffer = this.buffer.duplicate();
+            ((Buffer) buffer).position(this.stringDataPosition + start);
+            buffer.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+            // Racing threads decode equal strings, which is harmless
+            this.strings[index] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Assigns every distinct string an index.
+     */
+    private static class StringPool {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int get(String string) {
+            Integer index = this.indexes.get(string);
+            if (index == null) {
+                index = this.strings.size();
+                this.strings.add(string);
+                this.indexes.put(string, index);
+            }
+            return index;
+        }
+    }
+}
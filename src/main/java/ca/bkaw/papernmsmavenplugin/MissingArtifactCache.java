@@ -0,0 +1,98 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * A record of artifacts that were not found in any repository, so that looking
+ * for them again can be skipped until the record expires.
+ * <p>
+ * The record is stored as a properties file mapping the coordinates of each
+ * missing artifact to the time the artifact was last looked for. Expired entries
+ * are removed when the file is written.
+ */
+public class MissingArtifactCache {
+    private final Path path;
+    private final long timeToLive;
+    private final Properties entries = new Properties();
+
+    /**
+     * Create a cache, reading the entries that are stored in the file.
+     *
+     * @param path The path to the file to store the entries in.
+     * @param timeToLive The amount of milliseconds to remember that an artifact is missing.
+     */
+    public MissingArtifactCache(Path path, long timeToLive) {
+        this.path = path;
+        this.timeToLive = timeToLive;
+        if (Files.exists(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                this.entries.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                // Start over with an empty cache
+                this.entries.clear();
+            }
+        }
+    }
+
+    /**
+     * Check whether an artifact was recently found to be missing.
+     *
+     * @param coordinates The coordinates of the artifact.
+     * @return Whether the artifact is known to be missing.
+     */
+    public synchronized boolean isMissing(String coordinates) {
+        String checked = this.entries.getProperty(coordinates);
+        if (checked == null) {
+            return false;
+        }
+        try {
+            return System.currentTimeMillis() - Long.parseLong(checked) < this.timeToLive;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Remember that an artifact is missing.
+     *
+     * @param coordinates The coordinates of the artifact.
+     */
+    public synchronized void setMissing(String coordinates) {
+        this.entries.setProperty(coordinates, String.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * Forget that an artifact was missing, for example because it was found.
+     *
+     * @param coordinates The coordinates of the artifact.
+     */
+    public synchronized void setFound(String coordinates) {
+        this.entries.remove(coordinates);
+    }
+
+    /**
+     * Write the entries that have not expired to the file atomically.
+     *
+     * @throws IOException If the file could not be written.
+     */
+    public synchronized void save() throws IOException {
+        Properties unexpired = new Properties();
+        for (String coordinates : this.entries.stringPropertyNames()) {
+            if (this.isMissing(coordinates)) {
+                unexpired.setProperty(coordinates, this.entries.getProperty(coordinates));
+            }
+        }
+
+        Files.createDirectories(this.path.getParent());
+        AtomicFiles.write(this.path, tempPath -> {
+            try (OutputStream out = Files.newOutputStream(tempPath)) {
+                unexpired.store(out, "paper-nms-maven-plugin missing artifacts");
+            }
+        });
+    }
+}
@@ -8,7 +8,6 @@ import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.installer.ArtifactInstallationException;
 import org.apache.maven.artifact.installer.ArtifactInstaller;
-import org.apache.maven.artifact.metadata.ArtifactMetadataRetrievalException;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
@@ -18,8 +17,10 @@ import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
 import org.apache.maven.artifact.resolver.ArtifactResolutionException;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
 import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
 import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
@@ -38,14 +39,16 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.json.JSONTokener;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.UncheckedIOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystem;
@@ -53,21 +56,32 @@ import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * A base class for all mojos that has shared methods.
@@ -98,20 +112,112 @@ public abstract class MojoBase extends AbstractMojo {
     @Parameter( property = "devBundle" )
     DevBundle devBundle;
 
+    /**
+     * The amount of threads to compress classes with when writing a remapped jar.
+     * Dependencies that are remapped in parallel are each compressed on one thread
+     * instead. Defaults to the amount of available processors.
+     */
+    @Parameter( property = "paperNms.jarThreads" )
+    Integer jarThreads;
+
+    /**
+     * Whether to share mappings, mapped server jars and class path indexes with
+     * other projects through a cache in {@link #globalCacheDirectory}, instead of
+     * creating them in the .paper-nms folder of every project.
+     */
+    @Parameter( property = "paperNms.globalCache", defaultValue = "false" )
+    boolean globalCache;
+
+    /**
+     * The folder of the cache shared by all projects. Defaults to .paper-nms in the
+     * home folder of the user.
+     */
+    @Parameter( property = "paperNms.globalCacheDirectory" )
+    File globalCacheDirectory;
+
+    @Parameter( defaultValue = "${session}", readonly = true )
+    MavenSession session;
+
+    @Parameter( defaultValue = "${plugin.version}", readonly = true )
+    String pluginVersion;
+
+    /**
+     * The amount of minutes to use the cached list of available dev bundle versions
+     * before checking the repositories again when resolving a version range, to
+     * trust that the installed build of a range is the latest one, and to remember
+     * that a dev bundle version of an older version format was not found.
+     */
+    @Parameter( property = "paperNms.versionCacheTtl", defaultValue = "60" )
+    int versionCacheTtl;
+
+    /**
+     * The amount of days to keep class path indexes and dependencies remapped to
+     * obfuscated names that no build has used. Zero or less keeps them forever.
+     */
+    @Parameter( property = "paperNms.cacheRetentionDays", defaultValue = "30" )
+    int cacheRetentionDays;
+
+    /**
+     * Whether to merge the mappings of versions without a dev bundle with
+     * {@link MappingMerger} instead of Lorenz. The merger is faster and uses less
+     * memory, but is not yet the default as it has not been compared with Lorenz
+     * on the mappings of every version.
+     */
+    @Parameter( property = "paperNms.fastMappingMerge", defaultValue = "false" )
+    boolean fastMappingMerge;
+
+    private Downloader downloader;
+
+    private final PhaseReport phaseReport = new PhaseReport();
+
     // Paths
 
     /**
      * Get the directory where mapping files are stored and where temporary files are
      * created during init.
+     * <p>
+     * This is the {@link #getProjectCacheDirectory() project cache directory}, unless
+     * the {@link #globalCache global cache} is enabled.
      *
      * @return The path to the cache directory.
      */
     public Path getCacheDirectory() {
+        if (this.globalCache) {
+            return this.globalCacheDirectory != null
+                ? this.globalCacheDirectory.toPath()
+                : Paths.get(System.getProperty("user.home"), ".paper-nms");
+        }
+        return this.getProjectCacheDirectory();
+    }
+
+    /**
+     * Get the .paper-nms directory of the project, where files that belong to the
+     * project are stored even when the global cache is used.
+     *
+     * @return The path to the project cache directory.
+     */
+    public Path getProjectCacheDirectory() {
         MavenProject project = this.project.hasParent() && this.project.getParent().getBasedir() != null ? this.project.getParent() : this.project;
 
         return project.getBasedir().toPath().resolve(".paper-nms");
     }
 
+    /**
+     * Get the directory where the mappings of a game version are stored.
+     * <p>
+     * In the global cache, the directory is also keyed by the dev bundle id since
+     * projects may use different dev bundles for the same game version.
+     *
+     * @param gameVersion The game version.
+     * @return The path to the version directory.
+     */
+    public Path getVersionDirectory(String gameVersion) {
+        if (this.globalCache) {
+            return this.getCacheDirectory().resolve(this.devBundle.id).resolve(gameVersion);
+        }
+        return this.getCacheDirectory().resolve(gameVersion);
+    }
+
     // Getters
 
     /**
@@ -233,6 +339,57 @@ public abstract class MojoBase extends AbstractMojo {
 
     // Utils
 
+    /**
+     * Get whether Maven runs in offline mode ({@code -o}), in which case only files
+     * that are already on disk are used.
+     *
+     * @return Whether the network must not be accessed.
+     */
+    public boolean isOffline() {
+        return this.session != null && this.session.isOffline();
+    }
+
+    /**
+     * Get the downloader to use for all downloads of this execution.
+     *
+     * @return The downloader.
+     */
+    public synchronized Downloader getDownloader() {
+        if (this.downloader == null) {
+            this.downloader = new Downloader(getLog(), this.isOffline());
+        }
+        return this.downloader;
+    }
+
+    /**
+     * Get the report that the phases of this goal are measured in.
+     *
+     * @return The phase report.
+     */
+    public PhaseReport getPhaseReport() {
+        return this.phaseReport;
+    }
+
+    /**
+     * Log a summary of the phases of this goal and write the report to
+     * target/paper-nms/&lt;goal&gt;-report.json so that it can be tracked between
+     * builds.
+     *
+     * @param goal The name of the goal.
+     */
+    public void reportPhases(String goal) {
+        if (this.phaseReport.isEmpty()) {
+            return;
+        }
+        getLog().info(this.phaseReport.getSummary(goal));
+        Path reportPath = Paths.get(this.project.getBuild().getDirectory(), "paper-nms", goal + "-report.json");
+        try {
+            this.phaseReport.write(reportPath, goal);
+        } catch (IOException e) {
+            getLog().warn("Failed to write the phase report to " + reportPath, e);
+        }
+    }
+
     /**
      * Download a file from a URL.
      *
@@ -241,9 +398,9 @@ public abstract class MojoBase extends AbstractMojo {
      * @throws MojoExecutionException If the download failed.
      */
     public void downloadFile(String url, Path path) throws MojoExecutionException {
-        try {
-            InputStream in = new URL(url).openStream();
-            Files.copy(in, path, StandardCopyOption.REPLACE_EXISTING);
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.DOWNLOAD)) {
+            this.getDownloader().download(url, path, null);
+            phase.addFileWritten(path);
         } catch (IOException e) {
             throw new MojoExecutionException("Failed to download " + path.getFileName(), e);
         }
@@ -251,7 +408,7 @@ public abstract class MojoBase extends AbstractMojo {
 
     /**
      * Download a file from a URL and validate the SHA-1 hash to ensure the file
-     * downloaded correctly.
+     * downloaded correctly. The hash is calculated while downloading.
      *
      * @param url The url to download the file from.
      * @param path The path to place the downloaded file.
@@ -259,47 +416,35 @@ public abstract class MojoBase extends AbstractMojo {
      * @throws MojoExecutionException If the download failed.
      */
     public void downloadFile(String url, Path path, String sha1) throws MojoExecutionException {
-        this.downloadFile(url, path);
-        MessageDigest messageDigest = this.getSHA1();
-        byte[] hash;
-        try {
-            hash = messageDigest.digest(Files.readAllBytes(path));
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.DOWNLOAD)) {
+            this.getDownloader().download(url, path, sha1);
+            phase.addFileWritten(path);
         } catch (IOException e) {
-            throw new MojoExecutionException("Failed to check hash of downloaded file " + path.getFileName(), e);
-        }
-        String fileSha1 = this.toHex(hash);
-        if (!sha1.equals(fileSha1)) {
-            throw new MojoExecutionException("Download failed, sha1 hash of downloaded file did not match. Expected: " + sha1 + " Found: " + fileSha1 + " for file " + path.getFileName());
+            throw new MojoExecutionException("Failed to download " + path.getFileName() + ": " + e.getMessage(), e);
         }
     }
 
     /**
-     * Convert a byte array to a hexadecimal string.
+     * Calculate the SHA-1 hash of a file.
      *
-     * @param bytes The byte array.
-     * @return The hex string.
+     * @param path The path to the file.
+     * @return The hash as a hex string.
+     * @throws IOException If the file could not be read.
      */
-    public String toHex(byte[] bytes) {
-        StringBuilder result = new StringBuilder();
-        for (byte value : bytes) {
-            result.append(Integer.toString((value & 0xff) + 0x100, 16).substring(1));
+    public String sha1(Path path) throws IOException {
+        // Dependencies are hashed more than once per build, remember the hashes
+        // for as long as the file stays the same
+        Map<String, String> fileHashes = ReactorCache.get(this.session).getFileHashes();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String key = path.toAbsolutePath() + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+        String cached = fileHashes.get(key);
+        if (cached != null) {
+            return cached;
         }
-        return result.toString();
-    }
 
-    /**
-     * Get the SHA-1 {@link MessageDigest} and handle errors (that should never occur).
-     *
-     * @return The SHA-1 {@link MessageDigest} instance.
-     * @throws MojoExecutionException If something goes wrong.
-     */
-    private MessageDigest getSHA1() throws MojoExecutionException {
-        // Should never throw as all Java platforms are required to implement SHA-1
-        try {
-            return MessageDigest.getInstance("SHA-1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new MojoExecutionException("Unable to find SHA-1 MessageDigest.", e);
-        }
+        String sha1 = Hashes.sha1(path);
+        fileHashes.put(key, sha1);
+        return sha1;
     }
 
     /**
@@ -336,6 +481,157 @@ public abstract class MojoBase extends AbstractMojo {
         });
     }
 
+    // Mappings
+
+    /**
+     * Read tiny mappings for use with tiny-remapper.
+     * <p>
+     * The mappings are read from the compiled {@link MappingStore}, which is created
+     * if it does not exist yet. If the store can not be used the tiny file is parsed
+     * directly instead. The store, or the parsed mappings, are kept in the
+     * {@link ReactorCache} so that the other modules of the build can use them
+     * without reading them again.
+     *
+     * @param mappingsPath The path to the tiny mappings file.
+     * @param mappingFrom The mapping namespace to map from.
+     * @param mappingTo The mapping namespace to map to.
+     * @return The mapping provider.
+     */
+    public IMappingProvider readMappings(Path mappingsPath, String mappingFrom, String mappingTo) {
+        // The mappings are shared with the other modules of the build
+        ReactorCache cache = ReactorCache.get(this.session);
+        String sha1;
+        try {
+            sha1 = this.sha1(mappingsPath);
+        } catch (IOException e) {
+            getLog().warn("Unable to hash " + mappingsPath.getFileName() + ", the mappings will not be shared with other modules.", e);
+            sha1 = null;
+        }
+
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.MAPPING_LOAD)) {
+            ReactorCache.Opener opener = () -> {
+                MappingStore store = MappingStore.openFor(mappingsPath);
+                phase.addFileRead(MappingStore.getStorePath(mappingsPath));
+                return store;
+            };
+            try {
+                MappingStore store = sha1 != null ? cache.getMappingStore(sha1, opener) : opener.open();
+                return store.createProvider(mappingFrom, mappingTo);
+            } catch (IOException e) {
+                getLog().warn("Unable to use compiled mappings for " + mappingsPath.getFileName() + ", reading the tiny file instead.", e);
+            }
+
+            phase.addFileRead(mappingsPath);
+            if (sha1 == null) {
+                return TinyUtils.createTinyMappingProvider(mappingsPath, mappingFrom, mappingTo);
+            }
+            return cache.getTinyMappings(sha1 + ":" + mappingFrom + ":" + mappingTo,
+                () -> TinyUtils.createTinyMappingProvider(mappingsPath, mappingFrom, mappingTo));
+        }
+    }
+
+    /**
+     * Get the namespaces of tiny mappings.
+     *
+     * @param mappingsPath The path to the tiny mappings file.
+     * @return The namespaces.
+     * @throws IOException If the mappings could not be read.
+     */
+    public List<String> getMappingNamespaces(Path mappingsPath) throws IOException {
+        try {
+            return MappingStore.openFor(mappingsPath).getNamespaces();
+        } catch (IOException e) {
+            // Not compilable, read the namespaces from the header instead
+            try (BufferedReader reader = Files.newBufferedReader(mappingsPath)) {
+                String header = reader.readLine();
+                if (header == null) {
+                    throw new IOException("Empty mappings file " + mappingsPath.getFileName());
+                }
+                String[] parts = header.split("\t");
+                List<String> namespaces = new ArrayList<>();
+                for (int i = 3; i < parts.length; i++) {
+                    namespaces.add(parts[i]);
+                }
+                return namespaces;
+            }
+        }
+    }
+
+    /**
+     * Compile tiny mappings into a {@link MappingStore} so that remapping does not
+     * need to parse the tiny file.
+     *
+     * @param mappingsPath The path to the tiny mappings file.
+     */
+    public void compileMappings(Path mappingsPath) {
+        try {
+            MappingStore.compile(mappingsPath, MappingStore.getStorePath(mappingsPath));
+        } catch (IOException e) {
+            // Not fatal, the tiny file will be read directly when remapping
+            getLog().warn("Failed to compile mappings " + mappingsPath.getFileName(), e);
+        }
+    }
+
+    /**
+     * Delete tiny mappings and their compiled {@link MappingStore}, if they exist.
+     *
+     * @param mappingsPath The path to the tiny mappings file.
+     * @throws IOException If something goes wrong.
+     */
+    public void deleteMappings(Path mappingsPath) throws IOException {
+        Files.deleteIfExists(mappingsPath);
+        Files.deleteIfExists(MappingStore.getStorePath(mappingsPath));
+    }
+
+    /**
+     * Replace the jars on a class path with their {@link ClassPathIndex} so that
+     * tiny-remapper does not have to parse the full jars.
+     * <p>
+     * Entries that are not jars, or that fail to be indexed, are kept as-is.
+     *
+     * @param classPath The class path.
+     * @return The class path using indexes, in the same order.
+     */
+    public List<Path> indexClassPath(List<Path> classPath) {
+        Path indexDirectory = this.getCacheDirectory().resolve("classpath");
+        ClassPathIndex index = new ClassPathIndex(indexDirectory);
+        List<Path> indexedClassPath = new ArrayList<>(classPath.size());
+        for (Path path : classPath) {
+            if (!Files.isRegularFile(path) || !path.getFileName().toString().endsWith(".jar")) {
+                indexedClassPath.add(path);
+                continue;
+            }
+            try {
+                indexedClassPath.add(index.getIndex(path, this.sha1(path)));
+            } catch (IOException | RuntimeException e) {
+                getLog().warn("Failed to index class path entry " + path.getFileName(), e);
+                indexedClassPath.add(path);
+            }
+        }
+        this.deleteUnusedCacheEntries(indexDirectory);
+        return indexedClassPath;
+    }
+
+    /**
+     * Delete the entries of a cache folder that no build has used for
+     * {@link #cacheRetentionDays} days.
+     *
+     * @param directory The cache folder.
+     */
+    public void deleteUnusedCacheEntries(Path directory) {
+        if (this.cacheRetentionDays <= 0) {
+            return;
+        }
+        try {
+            int deleted = CacheCleaner.deleteUnused(directory, TimeUnit.DAYS.toMillis(this.cacheRetentionDays));
+            if (deleted > 0) {
+                getLog().info("Deleted " + deleted + " unused files from " + directory);
+            }
+        } catch (IOException e) {
+            getLog().warn("Failed to delete unused files from " + directory, e);
+        }
+    }
+
     // Init
 
     /**
@@ -355,6 +651,50 @@ public abstract class MojoBase extends AbstractMojo {
         // the form: "1.21.9-SNAPSHOT".
         String userVersion = this.getUserVersion();
 
+        // The version of the game. For example, "26.1.2", "1.21.9-rc1", "1.20.4", etc.
+        // This should not be used to resolve dev bundle versions, unless the user is
+        // using the old format of specifying game versions (e.g. "1.21.9-SNAPSHOT").
+        String gameVersion = this.getGameVersionFor(userVersion);
+        this.phaseReport.setAttribute("gameVersion", gameVersion);
+
+        Path cacheDirectory = this.getVersionDirectory(gameVersion);
+
+        // Only one build initializes a version at a time. Builds that waited for
+        // another build to initialize the same version into the same local
+        // repository use its result, if the fingerprint of what it installed
+        // matches. Otherwise the version is initialized again, which only installs
+        // it when the global cache already has it.
+        String description = this.getNmsGroupId() + ":" + this.devBundle.id + ":" + userVersion
+            + " from " + this.devBundle.artifact.groupId + ":" + this.devBundle.artifact.artifactId
+            + " into " + this.localRepository.getBasedir();
+        long requestTime = System.currentTimeMillis();
+        try (VersionLock lock = VersionLock.acquire(cacheDirectory, getLog())) {
+            if (lock.isCompletedSince(requestTime, description) && this.isInstalled(userVersion)) {
+                getLog().info("Version " + gameVersion + " was initialized by another build");
+                return;
+            }
+            this.initVersion(userVersion, gameVersion, cacheDirectory);
+            lock.markCompleted(description);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to lock the cache folder of " + gameVersion, e);
+        }
+    }
+
+    /**
+     * Initialize a version while holding its {@link VersionLock}.
+     *
+     * <p>
+     * When the global cache is used, a version that another project created from
+     * the same dev bundle is only installed. Otherwise the version is created in a
+     * staging folder and published to the global cache once complete.
+     *
+     * @param userVersion The version specified for the nms dependency.
+     * @param gameVersion The version of the game.
+     * @param versionDirectory The cache folder of the version.
+     * @throws MojoExecutionException If something goes wrong.
+     * @throws MojoFailureException If something goes wrong.
+     */
+    private void initVersion(String userVersion, String gameVersion, Path versionDirectory) throws MojoExecutionException, MojoFailureException {
         // The exact version of the dependency to install into the local maven repository.
         // In many cases, this is the same as the user version and has to be for maven to
         // be able to resolve the dependency. However, if the user version is a range then
@@ -362,30 +702,17 @@ public abstract class MojoBase extends AbstractMojo {
         // the range.
         String exactVersion = userVersion;
 
-        // The version of the game. For example, "26.1.2", "1.21.9-rc1", "1.20.4", etc.
-        // This should not be used to resolve dev bundle versions, unless the user is
-        // using the old format of specifying game versions (e.g. "1.21.9-SNAPSHOT").
-        String gameVersion = this.getGameVersionFor(userVersion);
-
-        Path cacheDirectory = this.getCacheDirectory().resolve(gameVersion);
-
         String extra = !"paper-nms".equals(this.devBundle.id) ? " (" + this.devBundle.id + ")" : "";
         getLog().info("Initializing paper-nms for version: " + gameVersion + extra);
 
-        getLog().info("Preparing cache folder");
-        try {
-            Files.createDirectories(cacheDirectory);
-        } catch (IOException e) {
-            throw new MojoExecutionException("Failed to create .paper-nms cache folder.", e);
-        }
-
-        Path mappingsPath = cacheDirectory.resolve("mappings.tiny");
-        Path mappedServerPath = cacheDirectory.resolve("mapped.jar");
-        List<String> dependencyCoordinates = new ArrayList<>();
-        List<String> dependencyManagementCoordinates = new ArrayList<>();
-
         getLog().info("Downloading dev-bundle");
-        Artifact devBundleArtifact = this.resolveDevBundle(userVersion);
+        Artifact devBundleArtifact;
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.DEV_BUNDLE_RESOLUTION)) {
+            devBundleArtifact = this.resolveDevBundle(userVersion);
+            if (devBundleArtifact != null && devBundleArtifact.getFile() != null) {
+                phase.addFileRead(devBundleArtifact.getFile().toPath());
+            }
+        }
 
         if (devBundleArtifact != null) {
             // Update the exact version with the concrete version that was resolved. If the
@@ -397,13 +724,270 @@ public abstract class MojoBase extends AbstractMojo {
             }
         }
 
+        GlobalCache globalCache = null;
+        String source = null;
+        Path cacheDirectory = versionDirectory;
+        if (this.globalCache) {
+            globalCache = new GlobalCache(versionDirectory);
+            try {
+                source = devBundleArtifact != null
+                    ? GlobalCache.sourceOf(devBundleArtifact.getId(), this.sha1(devBundleArtifact.getFile().toPath()))
+                    : GlobalCache.sourceOf("legacy:" + gameVersion, null);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to hash the dev bundle", e);
+            }
+
+            GlobalCache.Manifest manifest = globalCache.getManifest(source);
+            Path publishedServerPath = versionDirectory.resolve("mapped.jar");
+            if (manifest != null && Files.exists(publishedServerPath)) {
+                getLog().info("Using version " + gameVersion + " from the global cache");
+                this.installToMavenRepo(exactVersion, manifest.dependencies, manifest.dependencyManagement, publishedServerPath, versionDirectory.resolve("pom.xml"));
+                this.writeFingerprint(userVersion, exactVersion, devBundleArtifact);
+                return;
+            }
+
+            try {
+                cacheDirectory = globalCache.createStagingDirectory();
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to create a staging folder in the global cache.", e);
+            }
+        }
+
+        if (this.isOffline()) {
+            this.checkOffline(userVersion, gameVersion, devBundleArtifact);
+        }
+
+        List<String> dependencyCoordinates = new ArrayList<>();
+        List<String> dependencyManagementCoordinates = new ArrayList<>();
+        try {
+            this.createVersion(userVersion, gameVersion, exactVersion, devBundleArtifact, cacheDirectory,
+                dependencyCoordinates, dependencyManagementCoordinates, globalCache == null);
+
+            if (globalCache != null) {
+                getLog().info("Publishing to the global cache");
+                globalCache.publish(cacheDirectory, new GlobalCache.Manifest(source, dependencyCoordinates, dependencyManagementCoordinates));
+                this.installToMavenRepo(exactVersion, dependencyCoordinates, dependencyManagementCoordinates, versionDirectory.resolve("mapped.jar"), versionDirectory.resolve("pom.xml"));
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to publish to the global cache.", e);
+        } finally {
+            if (globalCache != null) {
+                try {
+                    GlobalCache.deleteRecursively(cacheDirectory);
+                } catch (IOException e) {
+                    getLog().warn("Failed to delete staging folder " + cacheDirectory, e);
+                }
+            }
+        }
+
+        this.writeFingerprint(userVersion, exactVersion, devBundleArtifact);
+    }
+
+    /**
+     * Fail with a list of what is missing if a version can not be created in offline
+     * mode.
+     * <p>
+     * A version is created from its dev bundle, which Maven only looks for in the
+     * local repository in offline mode, and the vanilla jar that was downloaded when
+     * the version was created before. Versions without a dev bundle are created
+     * from files that are always downloaded.
+     *
+     * @param userVersion The version specified for the nms dependency.
+     * @param gameVersion The version of the game.
+     * @param devBundleArtifact The resolved dev bundle, or null if none was found.
+     * @throws MojoFailureException If something is missing.
+     */
+    private void checkOffline(String userVersion, String gameVersion, @Nullable Artifact devBundleArtifact) throws MojoFailureException {
+        if (devBundleArtifact != null) {
+            return;
+        }
+        StringBuilder missing = new StringBuilder();
+        missing.append("\n - The dev bundle ").append(this.devBundle.artifact.groupId).append(":").append(this.devBundle.artifact.artifactId)
+            .append(":").append(userVersion).append(" in the local repository");
+        if (this.devBundle == DevBundle.PAPER_DEV_BUNDLE && userVersion.startsWith("1.")) {
+            missing.append("\n   or, if ").append(gameVersion).append(" has no dev bundle:")
+                .append("\n - The Mojang mappings of ").append(gameVersion).append(" from launchermeta.mojang.com")
+                .append("\n - The Spigot mappings of ").append(gameVersion).append(" from hub.spigotmc.org")
+                .append("\n - The Paper server of ").append(gameVersion).append(" from api.papermc.io");
+        }
+        throw new MojoFailureException("Unable to initialize paper-nms in offline mode." +
+            "\nUnable to initialize paper-nms for version " + userVersion + " in offline mode. The following is missing:" +
+            "\n" + missing +
+            "\n" +
+            "\nRun the build once without offline mode (-o) to download it." +
+            "\n"
+        );
+    }
+
+    /**
+     * Get the path where the mapped server jar of a version is installed in the
+     * local repository.
+     *
+     * @param exactVersion The exact version.
+     * @return The path to the installed jar.
+     */
+    public Path getInstalledArtifactPath(String exactVersion) {
+        Artifact artifact = this.artifactFactory.createArtifactWithClassifier(this.getNmsGroupId(), this.devBundle.id, exactVersion, "jar", null);
+        return Paths.get(this.localRepository.getBasedir(), this.localRepository.pathOf(artifact));
+    }
+
+    /**
+     * Check whether the nms dependency that the user specified is installed and was
+     * created by this version of the plugin from the dev bundle it would use now.
+     * <p>
+     * This only reads files in the local repository. For version ranges, any
+     * installed version that was created for the same range is accepted if the
+     * range was resolved less than {@link #versionCacheTtl} minutes ago, see
+     * {@link #renewInstalled(String)}.
+     *
+     * @param userVersion The version that the user specified.
+     * @return Whether init has nothing to do.
+     */
+    public boolean isInstalled(String userVersion) {
+        return this.findInstalled(userVersion, true) != null;
+    }
+
+    /**
+     * Check whether the nms dependency for a version range is installed from the
+     * build that the range resolves to now, after the time that the installed
+     * version is trusted without resolving the range has passed. If so, the time
+     * that the range was resolved is renewed.
+     *
+     * @param userVersion The version that the user specified.
+     * @return Whether init has nothing to do.
+     * @throws MojoExecutionException If the dev bundle could not be resolved.
+     * @throws MojoFailureException If the dev bundle could not be resolved.
+     */
+    public boolean renewInstalled(String userVersion) throws MojoExecutionException, MojoFailureException {
+        if (!isRange(userVersion) || this.findInstalled(userVersion, false) == null) {
+            return false;
+        }
+        Artifact devBundleArtifact;
+        try (PhaseReport.Phase ignored = this.phaseReport.start(PhaseName.DEV_BUNDLE_RESOLUTION)) {
+            devBundleArtifact = this.resolveDevBundle(userVersion);
+        }
+        if (devBundleArtifact == null) {
+            return false;
+        }
+        String exactVersion = devBundleArtifact.getVersion();
+        Path artifactPath = this.getInstalledArtifactPath(exactVersion);
+        InstallFingerprint fingerprint = InstallFingerprint.read(InstallFingerprint.pathFor(artifactPath));
+        if (fingerprint == null || !fingerprint.matches(artifactPath, userVersion, this.pluginVersion)) {
+            return false;
+        }
+        this.writeFingerprint(userVersion, exactVersion, devBundleArtifact);
+        return true;
+    }
+
+    private static boolean isRange(String userVersion) {
+        return userVersion.startsWith("[") || userVersion.startsWith("(");
+    }
+
+    /**
+     * Find the installed version of the nms dependency that the user specified.
+     *
+     * @param userVersion The version that the user specified.
+     * @param recentlyResolved Whether a version range must have been resolved less
+     *                         than {@link #versionCacheTtl} minutes ago.
+     * @return The installed exact version, or null if none is up to date.
+     */
+    @Nullable
+    private String findInstalled(String userVersion, boolean recentlyResolved) {
+        if (this.pluginVersion == null) {
+            return null;
+        }
+        List<String> candidates = new ArrayList<>();
+        boolean range = isRange(userVersion);
+        if (range) {
+            Path artifactDirectory = Paths.get(this.localRepository.getBasedir(), this.getNmsGroupId().replace('.', File.separatorChar), this.devBundle.id);
+            try (Stream<Path> stream = Files.list(artifactDirectory)) {
+                stream.filter(Files::isDirectory).forEach(path -> candidates.add(path.getFileName().toString()));
+            } catch (IOException e) {
+                return null;
+            }
+        } else {
+            candidates.add(userVersion);
+        }
+        long maxAge = TimeUnit.MINUTES.toMillis(this.versionCacheTtl);
+        for (String candidate : candidates) {
+            Path artifactPath = this.getInstalledArtifactPath(candidate);
+            InstallFingerprint fingerprint = InstallFingerprint.read(InstallFingerprint.pathFor(artifactPath));
+            if (fingerprint != null && fingerprint.matches(artifactPath, userVersion, this.pluginVersion)
+                && !(range && recentlyResolved && !fingerprint.isResolvedWithin(maxAge))) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record what the installed mapped server jar was created from.
+     *
+     * @param userVersion The version that the user specified.
+     * @param exactVersion The version that was installed.
+     * @param devBundleArtifact The dev bundle, or null if the version has none.
+     * @throws MojoExecutionException If the fingerprint could not be written.
+     */
+    private void writeFingerprint(String userVersion, String exactVersion, @Nullable Artifact devBundleArtifact) throws MojoExecutionException {
+        if (this.pluginVersion == null) {
+            return;
+        }
+        Path artifactPath = this.getInstalledArtifactPath(exactVersion);
+        try {
+            InstallFingerprint fingerprint;
+            if (devBundleArtifact != null) {
+                Path devBundlePath = devBundleArtifact.getFile().toPath().toAbsolutePath();
+                BasicFileAttributes attributes = Files.readAttributes(devBundlePath, BasicFileAttributes.class);
+                fingerprint = new InstallFingerprint(userVersion, devBundleArtifact.getVersion(), devBundlePath.toString(), this.sha1(devBundlePath),
+                    attributes.size(), attributes.lastModifiedTime().toMillis(), Files.size(artifactPath), System.currentTimeMillis(),
+                    this.pluginVersion, InstallFingerprint.DATA_VERSION);
+            } else {
+                fingerprint = new InstallFingerprint(userVersion, null, null, null,
+                    -1, -1, Files.size(artifactPath), System.currentTimeMillis(), this.pluginVersion, InstallFingerprint.DATA_VERSION);
+            }
+            fingerprint.write(InstallFingerprint.pathFor(artifactPath));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write the install fingerprint", e);
+        }
+    }
+
+    /**
+     * Create the mappings and the mapped server jar of a version.
+     *
+     * @param userVersion The version specified for the nms dependency.
+     * @param gameVersion The version of the game.
+     * @param exactVersion The version to install.
+     * @param devBundleArtifact The resolved dev bundle, or null if the version has none.
+     * @param cacheDirectory The folder to create the files in.
+     * @param dependencyCoordinates The list to add the dependencies of the server to.
+     * @param dependencyManagementCoordinates The list to add the dependency management of the server to.
+     * @param install Whether to install the mapped server jar once created.
+     * @throws MojoExecutionException If something goes wrong.
+     * @throws MojoFailureException If something goes wrong.
+     */
+    private void createVersion(String userVersion, String gameVersion, String exactVersion, @Nullable Artifact devBundleArtifact, Path cacheDirectory,
+                               List<String> dependencyCoordinates, List<String> dependencyManagementCoordinates, boolean install) throws MojoExecutionException, MojoFailureException {
+        getLog().info("Preparing cache folder");
+        try {
+            Files.createDirectories(cacheDirectory);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to create .paper-nms cache folder.", e);
+        }
+
+        Path mappingsPath = cacheDirectory.resolve("mappings.tiny");
+        Path mappedServerPath = cacheDirectory.resolve("mapped.jar");
+
+        // Independent steps run at the same time, see the dependencies of each task
+        TaskGraph graph = new TaskGraph();
+        List<String> installDependencies = new ArrayList<>();
+
         if (devBundleArtifact != null) {
             getLog().info("Extracting dev-bundle");
-            Path paperclipPath = cacheDirectory.resolve("paperclip.jar");
-            this.extractDevBundle(paperclipPath, mappingsPath, devBundleArtifact, dependencyCoordinates, dependencyManagementCoordinates);
+            this.extractDevBundle(graph, gameVersion, cacheDirectory, mappedServerPath, mappingsPath, devBundleArtifact, dependencyCoordinates, dependencyManagementCoordinates);
 
-            getLog().info("Extracting server");
-            this.extractServerJar(gameVersion, cacheDirectory, mappedServerPath);
+            installDependencies.add("extract mappings");
+            installDependencies.add("extract server");
+            installDependencies.add("resolve dependencies");
         } else if (this.devBundle == DevBundle.PAPER_DEV_BUNDLE && userVersion.startsWith("1.")) {
             // No dev-bundle exists for this version, let's create
             // mappings and map the jar manually.
@@ -412,34 +996,64 @@ public abstract class MojoBase extends AbstractMojo {
             Path mappingsSpigotPath = cacheDirectory.resolve("mappings_spigot.tiny");
 
             Path mojangMappingsPath = cacheDirectory.resolve("mojang_mappings.txt");
-            this.downloadMojangMappings(mojangMappingsPath, gameVersion);
+            graph.add("download mojang mappings", () -> this.downloadMojangMappings(mojangMappingsPath, gameVersion));
 
-            getLog().info("Downloading spigot mappings");
             Path spigotClassMappingsPath = cacheDirectory.resolve("spigot_class_mappings.csrg");
             Path spigotMemberMappingsPath = cacheDirectory.resolve("spigot_member_mappings.csrg");
-            this.downloadSpigotMappings(spigotClassMappingsPath, spigotMemberMappingsPath, gameVersion);
+            graph.add("download spigot mappings", () -> {
+                getLog().info("Downloading spigot mappings");
+                this.downloadSpigotMappings(spigotClassMappingsPath, spigotMemberMappingsPath, gameVersion);
+            });
+
+            graph.add("merge mappings", () -> {
+                getLog().info("Merging mappings");
+                this.mergeMappings(spigotClassMappingsPath, spigotMemberMappingsPath, mojangMappingsPath, mappingsPath, mappingsMojangPath, mappingsSpigotPath);
+            }, "download mojang mappings", "download spigot mappings");
 
-            getLog().info("Merging mappings");
-            this.mergeMappings(spigotClassMappingsPath, spigotMemberMappingsPath, mojangMappingsPath, mappingsPath, mappingsMojangPath, mappingsSpigotPath);
+            graph.add("compile mappings", () -> {
+                getLog().info("Compiling mappings");
+                this.compileMappings(mappingsMojangPath);
+                this.compileMappings(mappingsSpigotPath);
+            }, "merge mappings");
 
             Path paperclipPath = cacheDirectory.resolve("paperclip.jar");
-            this.downloadPaper(gameVersion, paperclipPath);
+            graph.add("download paper", () -> this.downloadPaper(gameVersion, paperclipPath));
 
-            getLog().info("Extracting paper");
             Path paperPath = cacheDirectory.resolve("paper.jar");
-            this.extractServerJar(gameVersion, cacheDirectory, paperPath);
-
-            getLog().info("Mapping paper jar");
-            this.mapPaperJar(mappingsPath, paperPath, mappedServerPath);
+            graph.add("extract paper", () -> {
+                getLog().info("Extracting paper");
+                this.extractServerJar(gameVersion, cacheDirectory, paperPath);
+            }, "download paper");
+
+            Path mappingsComposedPath = cacheDirectory.resolve("mappings_mojang_spigot.tiny");
+            graph.add("compose mappings", () -> {
+                getLog().info("Composing mappings");
+                this.composeMappings(mappingsMojangPath, mappingsSpigotPath, paperPath, mappingsComposedPath);
+            }, "merge mappings", "extract paper");
+
+            // Mapping the paper jar deletes it afterwards, so the composition must have read it first
+            graph.add("map paper jar", () -> {
+                getLog().info("Mapping paper jar");
+                this.mapPaperJar(mappingsPath, paperPath, mappedServerPath);
+            }, "merge mappings", "extract paper", "compose mappings");
+
+            installDependencies.add("compile mappings");
+            installDependencies.add("map paper jar");
         } else {
             throw new MojoFailureException("No dev bundle was found for version " + userVersion);
         }
 
         // Install the exact version into the local maven repository. In case the user
         // specified a range, Maven will resolve to the exact version automatically.
-        getLog().info("Installing into local maven repository");
-        Path pomPath = cacheDirectory.resolve("pom.xml");
-        this.installToMavenRepo(exactVersion, dependencyCoordinates, dependencyManagementCoordinates, mappedServerPath, pomPath);
+        if (install) {
+            graph.add("install", () -> {
+                getLog().info("Installing into local maven repository");
+                Path pomPath = cacheDirectory.resolve("pom.xml");
+                this.installToMavenRepo(exactVersion, dependencyCoordinates, dependencyManagementCoordinates, mappedServerPath, pomPath);
+            }, installDependencies.toArray(new String[0]));
+        }
+
+        graph.run(getLog());
     }
 
     /**
@@ -518,10 +1132,22 @@ public abstract class MojoBase extends AbstractMojo {
                 getLog().info("Resolving dev bundle version range " + versionRange);
                 artifact.setVersionRange(versionRange);
 
-                List<ArtifactVersion> availableVersions;
+                List<ArtifactVersion> availableVersions = new ArrayList<>();
+                Artifact rangeArtifact = artifact;
                 try {
-                    availableVersions = this.artifactMetadataSource.retrieveAvailableVersions(artifact, this.localRepository, repositories);
-                } catch (ArtifactMetadataRetrievalException e) {
+                    VersionListCache versionListCache = new VersionListCache(this.getCacheDirectory().resolve("metadata"),
+                        this.getDownloader(), getLog(), TimeUnit.MINUTES.toMillis(this.versionCacheTtl));
+                    List<String> versions = versionListCache.getVersions(artifact.getGroupId(), artifact.getArtifactId(), repositories, mavenRepositories -> {
+                        List<String> mavenVersions = new ArrayList<>();
+                        for (ArtifactVersion version : this.artifactMetadataSource.retrieveAvailableVersions(rangeArtifact, this.localRepository, mavenRepositories)) {
+                            mavenVersions.add(version.toString());
+                        }
+                        return mavenVersions;
+                    });
+                    for (String version : versions) {
+                        availableVersions.add(new DefaultArtifactVersion(version));
+                    }
+                } catch (IOException e) {
                     throw new MojoExecutionException("Failed to retrieve available dev-bundle versions for version range " + userVersion, e);
                 }
 
@@ -539,20 +1165,21 @@ public abstract class MojoBase extends AbstractMojo {
             // The user version is not a version range, treat it as an exact version.
         }
 
-        try {
-            this.artifactResolver.resolve(artifact, repositories, this.localRepository);
-            return artifact;
-        } catch (ArtifactResolutionException | ArtifactNotFoundException ignored) {
-            // Not found
-        }
+        // The version that was specified is looked for first, followed by the versions
+        // of older formats. They are looked for at the same time so that a missing
+        // version does not delay the next one, and the first one found in this order
+        // is used.
+        List<Artifact> candidates = new ArrayList<>();
+        List<Runnable> warnings = new ArrayList<>();
+        candidates.add(artifact);
+        warnings.add(null);
 
         // Check if a custom dev bundle is used with the ${gameVersion} placeholder
         if (this.devBundle.artifact.version != null && this.devBundle.artifact.version.contains("${gameVersion}")) {
             String gameVersion = this.getGameVersionFor(userVersion);
             String version = this.devBundle.artifact.version.replace("${gameVersion}", gameVersion);
-            artifact = this.getDevBundleArtifact(version);
-            try {
-                this.artifactResolver.resolve(artifact, repositories, this.localRepository);
+            candidates.add(this.getDevBundleArtifact(version));
+            warnings.add(() -> {
                 getLog().warn("Resolved dev bundle using ${gameVersion} placeholder.");
                 getLog().warn("Please remove the <version> from your dev bundle configuration and specify the version directly in the dependency version, so that the version is exactly the");
                 getLog().warn("version directly in the dependency version.");
@@ -580,19 +1207,14 @@ public abstract class MojoBase extends AbstractMojo {
                 getLog().warn("\33[0;32m NEW:    <version>" + version + "</version>\33[0m");
                 getLog().warn("         <scope>provided</scope>");
                 getLog().warn("     </dependency>");
-
-                return artifact;
-            } catch (ArtifactResolutionException | ArtifactNotFoundException ignored) {
-                // Not found
-            }
+            });
         }
 
         // Check the old format where -SNAPSHOT was appended to an exact version
         if (userVersion.endsWith("-SNAPSHOT")) {
             String versionWithoutSnapshot = userVersion.substring(0, userVersion.length() - "-SNAPSHOT".length());
-            artifact = this.getDevBundleArtifact(versionWithoutSnapshot);
-            try {
-                this.artifactResolver.resolve(artifact, repositories, this.localRepository);
+            candidates.add(this.getDevBundleArtifact(versionWithoutSnapshot));
+            warnings.add(() -> {
                 getLog().warn("Resolved dev bundle using old version format with -SNAPSHOT suffix.");
                 getLog().warn("Please update your version to not include the -SNAPSHOT suffix.");
                 getLog().warn("");
@@ -606,20 +1228,15 @@ public abstract class MojoBase extends AbstractMojo {
                 getLog().warn("         <scope>provided</scope>");
                 getLog().warn("     </dependency>");
                 getLog().warn("");
-
-                return artifact;
-            } catch (ArtifactResolutionException | ArtifactNotFoundException ignored) {
-                // Not found
-            }
+            });
         }
 
         // Check the old format where the version is gameVersion-SNAPSHOT
         if (userVersion.endsWith("-SNAPSHOT")) {
             String gameVersion = this.getGameVersionFor(userVersion);
             String version = gameVersion + "-R0.1-SNAPSHOT";
-            artifact = this.getDevBundleArtifact(version);
-            try {
-                this.artifactResolver.resolve(artifact, repositories, this.localRepository);
+            candidates.add(this.getDevBundleArtifact(version));
+            warnings.add(() -> {
                 getLog().warn("Resolved dev bundle using old version format.");
                 getLog().warn("Please update your version to include the \"R0.1\" so that the version is exactly the");
                 getLog().warn("same as the versions used in the dev bundles.");
@@ -634,15 +1251,134 @@ public abstract class MojoBase extends AbstractMojo {
                 getLog().warn("         <scope>provided</scope>");
                 getLog().warn("     </dependency>");
                 getLog().warn("");
+            });
+        }
+
+        int found = this.resolveFirst(candidates, repositories);
+        if (found < 0) {
+            getLog().info("No dev bundle was found for version " + userVersion);
+            return null;
+        }
+        if (warnings.get(found) != null) {
+            warnings.get(found).run();
+        }
+        return candidates.get(found);
+    }
 
-                return artifact;
+    /**
+     * Resolve the first artifact of a list that exists.
+     * <p>
+     * The artifacts after the first one are alternatives in case the first one does
+     * not exist. Unless the first one is already in the local repository, the
+     * existence of all artifacts is checked at the same time by resolving their
+     * poms, and only the first artifact that exists is resolved. Alternatives that
+     * are missing are remembered for {@link #versionCacheTtl} minutes and skipped in
+     * the meantime. The first artifact is always looked for, so that a version that
+     * was just published is found.
+     *
+     * @param artifacts The artifacts, in the order of preference.
+     * @param repositories The repositories to resolve from.
+     * @return The index of the first artifact that was resolved, or -1 if none were found.
+     * @throws MojoExecutionException If resolving failed unexpectedly.
+     */
+    private int resolveFirst(List<Artifact> artifacts, List<ArtifactRepository> repositories) throws MojoExecutionException {
+        Artifact first = artifacts.get(0);
+        if (Files.exists(Paths.get(this.localRepository.getBasedir(), this.localRepository.pathOf(first)))) {
+            try {
+                this.artifactResolver.resolve(first, repositories, this.localRepository);
+                return 0;
             } catch (ArtifactResolutionException | ArtifactNotFoundException ignored) {
-                // Not found
+                // Look for the alternatives too
+            }
+        }
+
+        MissingArtifactCache missingArtifacts = new MissingArtifactCache(
+            this.getCacheDirectory().resolve("metadata").resolve("missing.properties"),
+            TimeUnit.MINUTES.toMillis(this.versionCacheTtl)
+        );
+
+        ExecutorService executor = Executors.newFixedThreadPool(artifacts.size(), runnable -> {
+            Thread thread = new Thread(runnable, "paper-nms dev bundle lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<Boolean>> probes = new ArrayList<>();
+        try {
+            Set<String> versions = new HashSet<>();
+            for (int i = 0; i < artifacts.size(); i++) {
+                Artifact artifact = artifacts.get(i);
+                String coordinates = artifact.getId();
+                boolean alternative = i > 0;
+                if (!versions.add(artifact.getVersion()) || (alternative && missingArtifacts.isMissing(coordinates))) {
+                    probes.add(null);
+                    continue;
+                }
+                // The pom is much smaller than the dev bundle, so only the
+                // dev bundle that is used is downloaded
+                Artifact pomArtifact = this.artifactFactory.createProjectArtifact(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+                probes.add(executor.submit(() -> {
+                    try {
+                        this.artifactResolver.resolve(pomArtifact, repositories, this.localRepository);
+                        return true;
+                    } catch (ArtifactResolutionException | ArtifactNotFoundException e) {
+                        return false;
+                    }
+                }));
+            }
+
+            for (int i = 0; i < probes.size(); i++) {
+                Future<Boolean> probe = probes.get(i);
+                if (probe == null) {
+                    continue;
+                }
+                Artifact artifact = artifacts.get(i);
+                boolean found = probe.get();
+                if (found) {
+                    try {
+                        this.artifactResolver.resolve(artifact, repositories, this.localRepository);
+                    } catch (ArtifactResolutionException | ArtifactNotFoundException e) {
+                        found = false;
+                    }
+                }
+                if (found) {
+                    missingArtifacts.setFound(artifact.getId());
+                } else if (i > 0 && !this.isOffline()) {
+                    // In offline mode, only the local repository was searched
+                    missingArtifacts.setMissing(artifact.getId());
+                }
+                try {
+                    missingArtifacts.save();
+                } catch (IOException e) {
+                    getLog().warn("Failed to remember missing dev bundle versions", e);
+                }
+                if (found) {
+                    return i;
+                }
+            }
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while resolving the dev bundle", e);
+        } catch (ExecutionException e) {
+            throw new MojoExecutionException("Failed to resolve the dev bundle", e.getCause());
+        } finally {
+            // Stop the lookups of alternatives that are no longer needed, and wait
+            // for them so that no resolution outlives the execution
+            executor.shutdownNow();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
         }
-
-        getLog().info("No dev bundle was found for version " + userVersion);
-        return null;
     }
 
     /**
@@ -664,7 +1400,7 @@ public abstract class MojoBase extends AbstractMojo {
 
         List<ArtifactRepository> repositories = this.getDevBundleRepositories();
 
-        try {
+        try (PhaseReport.Phase ignored = this.phaseReport.start(PhaseName.DEPENDENCY_RESOLUTION)) {
             this.artifactResolver.resolve(metadataArtifact, repositories, this.localRepository);
         } catch (ArtifactResolutionException | ArtifactNotFoundException e) {
             getLog().warn("No gradle module metadata for " + artifact.getArtifactId());
@@ -689,7 +1425,7 @@ public abstract class MojoBase extends AbstractMojo {
 
         List<ArtifactRepository> repositories = this.getDevBundleRepositories();
 
-        try {
+        try (PhaseReport.Phase ignored = this.phaseReport.start(PhaseName.DEPENDENCY_RESOLUTION)) {
             this.artifactResolver.resolve(pomArtifact, repositories, this.localRepository);
         } catch (ArtifactResolutionException | ArtifactNotFoundException e) {
             getLog().warn("No pom.xml found for " + artifact.getArtifactId());
@@ -705,14 +1441,23 @@ public abstract class MojoBase extends AbstractMojo {
     }
 
     /**
-     * Extract the needed files from the dev bundle. Will extract the mapped paperclip
-     * jar and the mappings.
+     * Add tasks to extract the needed files from the dev bundle to a task graph.
+     * The tasks create the server jar from the mapped paperclip jar, extract and
+     * compile the mappings, and resolve the dependencies.
      *
      * <p>The {@code dependencyCoordinates} list will be populated if the dev bundle
      * is of a data version where the server dependencies are not included in the
      * server jar and where such information is present (1.18 - 1.21.4).</p>
      *
-     * @param paperclipPath The path to put the mapped paperclip jar.
+     * <p>The tasks are named {@code extract server}, {@code extract mappings} and
+     * {@code resolve dependencies}. The lists are populated once the dependency task
+     * has finished. The files are read from the dev bundle as they are needed, and
+     * the dev bundle is closed once the graph has run.</p>
+     *
+     * @param graph The task graph to add the tasks to.
+     * @param gameVersion The game version.
+     * @param cacheDirectory The cache directory.
+     * @param serverPath The path to put the server jar.
      * @param mappingsPath The path to put the extracted mappings.
      * @param devBundleArtifact The dev bundle artifact.
      * @param dependencyCoordinates The mutable list of dependency artifact coordinates.
@@ -720,12 +1465,21 @@ public abstract class MojoBase extends AbstractMojo {
      * @throws MojoExecutionException If something goes wrong.
      * @throws MojoFailureException If something goes wrong.
      */
-    public void extractDevBundle(Path paperclipPath, Path mappingsPath, Artifact devBundleArtifact, List<String> dependencyCoordinates, List<String> dependencyManagementCoordinates) throws MojoExecutionException, MojoFailureException {
+    public void extractDevBundle(TaskGraph graph, String gameVersion, Path cacheDirectory, Path serverPath, Path mappingsPath, Artifact devBundleArtifact, List<String> dependencyCoordinates, List<String> dependencyManagementCoordinates) throws MojoExecutionException, MojoFailureException {
+        ZipFile devBundle;
         try {
-            URI uri = new URI("jar:" + devBundleArtifact.getFile().toURI());
-            FileSystem devBundle = FileSystems.newFileSystem(uri, new HashMap<>());
+            devBundle = new ZipFile(devBundleArtifact.getFile());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to open dev-bundle.", e);
+        }
+        // The tasks read from the dev bundle, close it once they have all finished
+        graph.closeAfterRun(devBundle);
 
-            int dataVersion = Integer.parseInt(String.join("", Files.readAllLines(devBundle.getPath("data-version.txt"))).trim());
+        try {
+            int dataVersion;
+            try (InputStream stream = devBundle.getInputStream(getEntry(devBundle, "data-version.txt"))) {
+                dataVersion = Integer.parseInt(new String(Streams.readAllBytes(stream), StandardCharsets.UTF_8).trim());
+            }
 
             if (dataVersion != 3 && dataVersion != 2 && dataVersion != 5 && dataVersion != 6 && dataVersion != 7 && dataVersion != 8) {
                 getLog().warn("Unsupported dev-bundle version. Found data version " + dataVersion +
@@ -734,20 +1488,30 @@ public abstract class MojoBase extends AbstractMojo {
                     " the latest version of paper-nms-maven-plugin, please open an issue on GitHub.");
             }
 
-            JSONObject config = new JSONObject(new JSONTokener(Files.newInputStream(devBundle.getPath("config.json"))));
+            JSONObject config;
+            try (InputStream stream = devBundle.getInputStream(getEntry(devBundle, "config.json"))) {
+                config = new JSONObject(new JSONTokener(stream));
+            }
             JSONObject buildData = config.has("buildData") ? config.getJSONObject("buildData") : null;
 
+            // The tasks that find dependencies, merged in this order afterwards
+            List<String> dependencyTasks = new ArrayList<>();
+            List<List<String>> dependencyResults = new ArrayList<>();
+            List<String> macheCoordinatesList = new ArrayList<>();
+
             if (dataVersion >= 3 && dataVersion < 6 && buildData != null) {
                 // Dependencies only need to be added for 1.18+ where they are not in the jar
                 // And in 1.21.4+ they are no longer provided in the dev-bundle.
+                List<String> coordinates = new ArrayList<>();
                 for (Object runtimeDependency : buildData.getJSONArray("runtimeDependencies")) {
-                    dependencyCoordinates.add(String.valueOf(runtimeDependency));
+                    coordinates.add(String.valueOf(runtimeDependency));
                 }
                 // The API is not in the runtimeDependencies array
-                dependencyCoordinates.add(config.getString("apiCoordinates"));
+                coordinates.add(config.getString("apiCoordinates"));
                 if (config.has("mojangApiCoordinates")) {
-                    dependencyCoordinates.add(config.getString("mojangApiCoordinates"));
+                    coordinates.add(config.getString("mojangApiCoordinates"));
                 }
+                dependencyResults.add(coordinates);
             }
 
             if (dataVersion >= 6) {
@@ -755,21 +1519,19 @@ public abstract class MojoBase extends AbstractMojo {
                 getLog().info("Finding dependencies");
 
                 // Add paper dependencies
-                Path metadata = this.resolveGradleModuleMetadata(devBundleArtifact);
-                dependencyCoordinates.addAll(
-                    this.getCompileDependenciesFromMetadata(metadata)
-                );
+                List<String> paperDependencies = new ArrayList<>();
+                dependencyResults.add(paperDependencies);
+                graph.add("resolve paper metadata", () -> paperDependencies.addAll(
+                    this.getCompileDependenciesFromMetadata(this.resolveGradleModuleMetadata(devBundleArtifact))
+                ));
+                dependencyTasks.add("resolve paper metadata");
 
                 // Add mache dependencies (vanilla dependencies)
                 JSONObject mache = config.getJSONObject("mache");
-                JSONArray macheCoordinatesList = mache.getJSONArray("coordinates");
-                for (int i = 0; i < macheCoordinatesList.length(); i++) {
-                    String macheCoordinates = macheCoordinatesList.getString(i);
-
-                    // We remove mache from the dependencies since it cannot be found in the paper
-                    // public repo and has to be generated locally. We instead extract the dev-bundle
-                    // to get access to the game files.
-                    dependencyCoordinates.remove(macheCoordinates);
+                JSONArray macheCoordinatesArray = mache.getJSONArray("coordinates");
+                for (int i = 0; i < macheCoordinatesArray.length(); i++) {
+                    String macheCoordinates = macheCoordinatesArray.getString(i);
+                    macheCoordinatesList.add(macheCoordinates);
 
                     String[] macheCoordinateParts = macheCoordinates.split(":");
                     String groupId = macheCoordinateParts[0];
@@ -779,10 +1541,16 @@ public abstract class MojoBase extends AbstractMojo {
                         groupId, artifactId, version,
                         null, "jar"
                     );
-                    Path macheMetadata = this.resolveGradleModuleMetadata(artifact);
-                    dependencyCoordinates.addAll(
-                        this.getCompileDependenciesFromMetadata(macheMetadata)
-                    );
+                    List<String> macheDependencies = new ArrayList<>();
+                    dependencyResults.add(macheDependencies);
+                    String taskName = "resolve " + artifactId + " metadata";
+                    if (graph.has(taskName)) {
+                        taskName += " " + i;
+                    }
+                    graph.add(taskName, () -> macheDependencies.addAll(
+                        this.getCompileDependenciesFromMetadata(this.resolveGradleModuleMetadata(artifact))
+                    ));
+                    dependencyTasks.add(taskName);
                 }
             }
 
@@ -792,51 +1560,174 @@ public abstract class MojoBase extends AbstractMojo {
                 buildData = config;
             }
 
-            Path bundlePaperclipPath = devBundle.getPath(buildData.getString("mojangMappedPaperclipFile"));
-            Files.copy(bundlePaperclipPath, paperclipPath, StandardCopyOption.REPLACE_EXISTING);
+            // The paperclip jar is patched while it is read from the dev bundle
+            ZipEntry paperclipEntry = getEntry(devBundle, buildData.getString("mojangMappedPaperclipFile"));
+            graph.add("extract server", () -> {
+                getLog().info("Extracting server");
+                this.extractServerJar(gameVersion, cacheDirectory, serverPath, devBundle, paperclipEntry);
+            });
 
             // In data version 7 (1.21.5+) the reobf mappings are optional because Paper may
             // release before Spigot does. Use a .missing file to explicitly indicate that the
             // mappings are missing from the dev-bundle.
             Path missingMappingsPath = Paths.get(mappingsPath + ".missing");
-            if (buildData.has("reobfMappingsFile")) {
-                Path bundleMappingsPath = devBundle.getPath(buildData.getString("reobfMappingsFile"));
-                Files.copy(bundleMappingsPath, mappingsPath, StandardCopyOption.REPLACE_EXISTING);
-                Files.deleteIfExists(missingMappingsPath);
-            } else {
-                Files.deleteIfExists(mappingsPath);
-                try {
-                    Files.createFile(missingMappingsPath);
-                } catch (FileAlreadyExistsException ignored) {}
-            }
-
-            // Find adventure BOM dependency management artifact.
-            Artifact paperApiArtifact = dependencyCoordinates.stream()
-                .filter(dep -> dep.startsWith("io.papermc.paper:paper-api:"))
-                .findFirst()
-                .map(paperApiCoordinates -> {
-                    String[] parts = paperApiCoordinates.split(":");
-                    String groupId = parts[0];
-                    String artifactId = parts[1];
-                    String version = parts[2];
-                    return this.artifactFactory.createArtifact(
-                        groupId, artifactId, version,
-                        null, "jar"
+            String reobfMappingsFile = buildData.has("reobfMappingsFile") ? buildData.getString("reobfMappingsFile") : null;
+            graph.add("extract mappings", () -> {
+                if (reobfMappingsFile != null) {
+                    getLog().info("Extracting mappings");
+                    this.extractMappings(devBundle, getEntry(devBundle, reobfMappingsFile), mappingsPath);
+                    Files.deleteIfExists(missingMappingsPath);
+                } else {
+                    this.deleteMappings(mappingsPath);
+                    try {
+                        Files.createFile(missingMappingsPath);
+                    } catch (FileAlreadyExistsException ignored) {}
+                }
+            });
+
+            graph.add("merge dependencies", () -> {
+                // The paper dependencies come first, then the dependencies of each mache
+                // artifact. We remove mache from the dependencies since it cannot be found
+                // in the paper public repo and has to be generated locally. We instead
+                // extract the dev-bundle to get access to the game files.
+                for (int i = 0; i < dependencyResults.size(); i++) {
+                    int macheIndex = dataVersion >= 6 ? i - 1 : -1;
+                    if (macheIndex >= 0) {
+                        dependencyCoordinates.remove(macheCoordinatesList.get(macheIndex));
+                    }
+                    dependencyCoordinates.addAll(dependencyResults.get(i));
+                }
+            }, dependencyTasks.toArray(new String[0]));
+
+            graph.add("resolve dependencies", () -> {
+                // Find adventure BOM dependency management artifact.
+                Artifact paperApiArtifact = dependencyCoordinates.stream()
+                    .filter(dep -> dep.startsWith("io.papermc.paper:paper-api:"))
+                    .findFirst()
+                    .map(paperApiCoordinates -> {
+                        String[] parts = paperApiCoordinates.split(":");
+                        String groupId = parts[0];
+                        String artifactId = parts[1];
+                        String version = parts[2];
+                        return this.artifactFactory.createArtifact(
+                            groupId, artifactId, version,
+                            null, "jar"
+                        );
+                    }).orElse(null);
+
+                if (paperApiArtifact != null) {
+                    Path pomPath = this.resolvePom(paperApiArtifact);
+                    dependencyManagementCoordinates.addAll(
+                        this.getDependencyManagementFromPom(pomPath)
                     );
-                }).orElse(null);
+                }
+            }, "merge dependencies");
 
-            if (paperApiArtifact != null) {
-                Path pomPath = this.resolvePom(paperApiArtifact);
-                dependencyManagementCoordinates.addAll(
-                    this.getDependencyManagementFromPom(pomPath)
-                );
+        } catch (IOException | RuntimeException e) {
+            // The tasks will not run, so the dev bundle is not needed anymore
+            try {
+                devBundle.close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
             }
-
-        } catch (URISyntaxException | IOException e) {
             throw new MojoExecutionException("Failed to extract dev-bundle files.", e);
         }
     }
 
+    private static ZipEntry getEntry(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name.startsWith("/") ? name.substring(1) : name);
+        if (entry == null) {
+            throw new NoSuchFileException(name, null, "Not found in " + zip.getName());
+        }
+        return entry;
+    }
+
+    /**
+     * Extract tiny mappings from an archive, compiling them into a
+     * {@link MappingStore} from the same read instead of reading the written
+     * file again.
+     *
+     * @param archive The archive.
+     * @param entry The entry of the mappings.
+     * @param mappingsPath The path to write the tiny mappings file to.
+     * @throws IOException If the mappings could not be extracted.
+     */
+    public void extractMappings(ZipFile archive, ZipEntry entry, Path mappingsPath) throws IOException {
+        TinyMappings mappings = null;
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.MAPPING_LOAD);
+             InputStream in = archive.getInputStream(entry);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(mappingsPath))) {
+            TeeInputStream tee = new TeeInputStream(in, out);
+            try {
+                mappings = TinyMappings.read(new BufferedReader(new InputStreamReader(tee, StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                // Not fatal, the tiny file will be read directly when remapping
+                getLog().warn("Failed to compile mappings " + mappingsPath.getFileName(), e);
+            }
+            // Write the rest if the mappings could not be read to the end
+            byte[] buffer = new byte[65536];
+            while (tee.read(buffer) != -1) {
+                // Written by the tee
+            }
+            out.flush();
+            phase.addFileWritten(mappingsPath);
+        }
+        if (mappings != null) {
+            try {
+                MappingStore.compile(mappings, mappingsPath, MappingStore.getStorePath(mappingsPath));
+            } catch (IOException e) {
+                getLog().warn("Failed to compile mappings " + mappingsPath.getFileName(), e);
+            }
+        }
+    }
+
+    /**
+     * An input stream that writes everything that is read from it to an output
+     * stream.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+        private final OutputStream out;
+
+        private TeeInputStream(InputStream in, OutputStream out) {
+            super(in);
+            this.out = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                this.out.write(value);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                this.out.write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must be written as well
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int read = this.read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
     /**
      * Get all required dependencies from the {@code serverCompileClasspath} variant
      * in the Gradle module metadata.
@@ -938,8 +1829,7 @@ public abstract class MojoBase extends AbstractMojo {
     public void downloadMojangMappings(Path mojangMappingsPath, String gameVersion) throws MojoFailureException, MojoExecutionException {
         try {
             getLog().info("Downloading version manifest");
-            InputStream versionManifest = new URL("https://launchermeta.mojang.com/mc/game/version_manifest_v2.json").openStream();
-            JSONObject versionManifestJson = new JSONObject(new JSONTokener(versionManifest));
+            JSONObject versionManifestJson = this.getDownloader().fetchJson("https://launchermeta.mojang.com/mc/game/version_manifest_v2.json");
             JSONArray versions = versionManifestJson.getJSONArray("versions");
 
             String versionInfoUrl = null;
@@ -951,21 +1841,18 @@ public abstract class MojoBase extends AbstractMojo {
                     break;
                 }
             }
-            versionManifest.close();
             if (versionInfoUrl == null) {
                 throw new MojoFailureException("The version \"" + gameVersion + "\" was not found.");
             }
 
             getLog().info("Downloading version info");
-            InputStream versionInfo = new URL(versionInfoUrl).openStream();
-            JSONObject versionInfoJson = new JSONObject(new JSONTokener(versionInfo));
+            JSONObject versionInfoJson = this.getDownloader().fetchJson(versionInfoUrl);
 
             JSONObject downloads = versionInfoJson.getJSONObject("downloads");
             JSONObject mappings = downloads.getJSONObject("server_mappings");
 
             String mappingsUrl = mappings.getString("url");
             String mappingsSha1 = mappings.getString("sha1");
-            versionInfo.close();
             getLog().info("Downloading mojang mappings");
             this.downloadFile(mappingsUrl, mojangMappingsPath, mappingsSha1);
 
@@ -987,13 +1874,12 @@ public abstract class MojoBase extends AbstractMojo {
      */
     public void downloadSpigotMappings(Path spigotClassMappingsPath, Path spigotMemberMappingsPath, String gameVersion) throws MojoExecutionException {
         getLog().info("Downloading spigot version info");
-        InputStream inputStream;
+        JSONObject json;
         try {
-            inputStream = new URL("https://hub.spigotmc.org/versions/" + gameVersion + ".json").openStream();
+            json = this.getDownloader().fetchJson("https://hub.spigotmc.org/versions/" + gameVersion + ".json");
         } catch (IOException e) {
-            throw new MojoExecutionException("Failed to download spigot version info");
+            throw new MojoExecutionException("Failed to download spigot version info", e);
         }
-        JSONObject json = new JSONObject(new JSONTokener(inputStream));
 
         JSONObject refs = json.getJSONObject("refs");
         String ref = refs.getString("BuildData");
@@ -1023,6 +1909,10 @@ public abstract class MojoBase extends AbstractMojo {
      * Merge the spigot mappings and the Mojang mappings to create mappings from
      * Spigot mappings to Mojang mappings, and write the mappings to a file in the
      * tiny format. Also write the original Spigot and Mojang mappings to files.
+     * <p>
+     * The mappings are merged with Lorenz, or with {@link MappingMerger} if
+     * {@link #fastMappingMerge} is enabled. The merger falls back to Lorenz if the
+     * mappings contain something that it can not merge exactly like Lorenz does.
      *
      * @param spigotClassMappingsPath The path of the Spigot class mappings (csrg).
      * @param spigotMemberMappingsPath The path of the Spigot member mappings (csrg).
@@ -1033,55 +1923,133 @@ public abstract class MojoBase extends AbstractMojo {
      * @throws MojoExecutionException If something goes wrong.
      */
     public void mergeMappings(Path spigotClassMappingsPath, Path spigotMemberMappingsPath, Path mojangMappingsPath, Path outputPath, Path outputMojangPath, Path outputSpigotPath) throws MojoExecutionException {
-        MappingSet spigotMappings;
-        MappingSet mojangMappings;
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.MAPPING_LOAD)) {
+            phase.addFileRead(spigotClassMappingsPath);
+            phase.addFileRead(spigotMemberMappingsPath);
+            phase.addFileRead(mojangMappingsPath);
+            boolean merged = false;
+            if (this.fastMappingMerge) {
+                try {
+                    mergeMappingsWithMerger(spigotClassMappingsPath, spigotMemberMappingsPath, mojangMappingsPath, outputPath, outputMojangPath, outputSpigotPath);
+                    merged = true;
+                } catch (MappingMerger.AmbiguousMappingsException e) {
+                    getLog().info("Merging mappings with Lorenz, as " + e.getMessage());
+                }
+            }
+            if (!merged) {
+                mergeMappingsWithLorenz(spigotClassMappingsPath, spigotMemberMappingsPath, mojangMappingsPath, outputPath, outputMojangPath, outputSpigotPath);
+            }
+            phase.addFileWritten(outputPath);
+            phase.addFileWritten(outputMojangPath);
+            phase.addFileWritten(outputSpigotPath);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to merge mappings", e);
+        }
 
-        MappingSet spigotClassMappings;
+        getLog().info("Cleaning up mappings");
         try {
-            spigotClassMappings = MappingFormats.CSRG.read(spigotClassMappingsPath);
+            Files.delete(mojangMappingsPath);
+            Files.delete(spigotClassMappingsPath);
+            Files.deleteIfExists(spigotMemberMappingsPath);
         } catch (IOException e) {
-            throw new MojoExecutionException("Failed to read spigot class mappings", e);
+            throw new MojoExecutionException("Failed to clean up mappings");
         }
+    }
+
+    /**
+     * Merge the mappings like {@link #mergeMappings} with {@link MappingMerger}.
+     *
+     * @param spigotClassMappingsPath The path of the Spigot class mappings (csrg).
+     * @param spigotMemberMappingsPath The path of the Spigot member mappings (csrg).
+     * @param mojangMappingsPath The path of the mojang mappings (proguard).
+     * @param outputPath The path to put the merged mappings (tiny).
+     * @param outputMojangPath The path to put the mojang mappings (tiny).
+     * @param outputSpigotPath The path to put the spigot mappings (tiny).
+     * @throws IOException If the mappings could not be read or written.
+     * @throws MappingMerger.AmbiguousMappingsException If the mappings must be merged with Lorenz.
+     */
+    static void mergeMappingsWithMerger(Path spigotClassMappingsPath, Path spigotMemberMappingsPath, Path mojangMappingsPath, Path outputPath, Path outputMojangPath, Path outputSpigotPath) throws IOException, MappingMerger.AmbiguousMappingsException {
+        MappingMerger merger = new MappingMerger();
+        merger.readSpigotClasses(spigotClassMappingsPath);
         if (Files.exists(spigotMemberMappingsPath)) {
-            MappingSet memberMappings;
-            try {
-                memberMappings = MappingFormats.CSRG.read(spigotMemberMappingsPath);
-            } catch (IOException e) {
-                throw new MojoExecutionException("Failed to read spigot member mappings", e);
-            }
-            spigotMappings = spigotClassMappings.merge(memberMappings);
-        } else {
-            spigotMappings = spigotClassMappings;
+            merger.readSpigotMembers(spigotMemberMappingsPath);
+        }
+        merger.readMojang(mojangMappingsPath);
+        for (String[] fix : MAPPING_FIXES) {
+            merger.renameMethod(fix[0], fix[1], fix[2], fix[3]);
+        }
+        merger.write(outputPath, outputMojangPath, outputSpigotPath);
+    }
+
+    /**
+     * Merge the mappings like {@link #mergeMappings} by reading them into Lorenz
+     * mapping sets.
+     *
+     * @param spigotClassMappingsPath The path of the Spigot class mappings (csrg).
+     * @param spigotMemberMappingsPath The path of the Spigot member mappings (csrg).
+     * @param mojangMappingsPath The path of the mojang mappings (proguard).
+     * @param outputPath The path to put the merged mappings (tiny).
+     * @param outputMojangPath The path to put the mojang mappings (tiny).
+     * @param outputSpigotPath The path to put the spigot mappings (tiny).
+     * @throws IOException If the mappings could not be read or written.
+     */
+    static void mergeMappingsWithLorenz(Path spigotClassMappingsPath, Path spigotMemberMappingsPath, Path mojangMappingsPath, Path outputPath, Path outputMojangPath, Path outputSpigotPath) throws IOException {
+        MappingSet spigotMappings = MappingFormats.CSRG.read(spigotClassMappingsPath);
+        if (Files.exists(spigotMemberMappingsPath)) {
+            spigotMappings = spigotMappings.merge(MappingFormats.CSRG.read(spigotMemberMappingsPath));
         }
 
-        try {
-            mojangMappings = new ProGuardReader(Files.newBufferedReader(mojangMappingsPath)).read();
-        } catch (IOException e) {
-            throw new MojoExecutionException("Failed to read mojang mappings", e);
+        MappingSet mojangMappings;
+        try (BufferedReader reader = Files.newBufferedReader(mojangMappingsPath)) {
+            mojangMappings = new ProGuardReader(reader).read();
         }
 
         MappingSet mappings = spigotMappings.reverse().merge(mojangMappings.reverse());
 
-        this.fixMappings(mappings);
+        fixMappings(mappings);
 
-        try {
-            TinyMappingFormat.TINY_2.write(mappings, outputPath, "spigot", "mojang");
-            TinyMappingFormat.TINY_2.write(mojangMappings, outputMojangPath, "mojang", "obfuscated");
-            TinyMappingFormat.TINY_2.write(spigotMappings, outputSpigotPath, "obfuscated", "spigot");
-        } catch (IOException e) {
-            throw new MojoExecutionException("Failed to write merged mappings", e);
-        }
+        TinyMappingFormat.TINY_2.write(mappings, outputPath, "spigot", "mojang");
+        TinyMappingFormat.TINY_2.write(mojangMappings, outputMojangPath, "mojang", "obfuscated");
+        TinyMappingFormat.TINY_2.write(spigotMappings, outputSpigotPath, "obfuscated", "spigot");
+    }
 
-        getLog().info("Cleaning up mappings");
+    /**
+     * Compose the Mojang and Spigot mappings into direct mappings from Mojang
+     * mappings to Spigot mappings, and write them to a file in the tiny format.
+     * This allows remapping in a single pass instead of via the obfuscated names.
+     *
+     * @param mappingsMojangPath The path of the mojang mappings (tiny).
+     * @param mappingsSpigotPath The path of the spigot mappings (tiny).
+     * @param paperPath The path to the Spigot mapped paper jar, used for the class hierarchy.
+     * @param outputPath The path to put the composed mappings (tiny).
+     */
+    public void composeMappings(Path mappingsMojangPath, Path mappingsSpigotPath, Path paperPath, Path outputPath) {
         try {
-            Files.delete(mojangMappingsPath);
-            Files.delete(spigotClassMappingsPath);
-            Files.deleteIfExists(spigotMemberMappingsPath);
+            TinyMappings mojangMappings = TinyMappings.read(mappingsMojangPath);
+            TinyMappings spigotMappings = TinyMappings.read(mappingsSpigotPath);
+            Map<String, List<String>> hierarchy = MappingComposer.readHierarchy(paperPath, spigotMappings);
+            new MappingComposer(mojangMappings, spigotMappings, hierarchy).compose().write(outputPath);
         } catch (IOException e) {
-            throw new MojoExecutionException("Failed to clean up mappings");
+            // Not fatal, remapping will be done in two passes instead
+            getLog().warn("Failed to compose mappings", e);
+            try {
+                this.deleteMappings(outputPath);
+            } catch (IOException ignored) {}
+            return;
         }
+        this.compileMappings(outputPath);
     }
 
+    /**
+     * The methods that {@link #fixMappings(MappingSet)} renames, as the Spigot
+     * class name, the Spigot method name and descriptor, and the new name.
+     */
+    private static final String[][] MAPPING_FIXES = {
+        {"net/minecraft/world/level/storage/loot/entries/LootEntryAbstract$Serializer", "serializeType",
+            "(Lcom/google/gson/JsonObject;Lnet/minecraft/world/level/storage/loot/entries/LootEntryAbstract;Lcom/google/gson/JsonSerializationContext;)V", "mappingfix"},
+        {"net/minecraft/world/item/trading/IMerchant", "getWorld", "()Lnet/minecraft/world/level/World;", "getCommandSenderWorld"},
+    };
+
     /**
      * Fix mapping conflicts and issues that would crash tiny remapper if not fixed.
      * <p>
@@ -1093,22 +2061,12 @@ public abstract class MojoBase extends AbstractMojo {
      *
      * @param mappings The mappings to fix.
      */
-    public void fixMappings(MappingSet mappings) {
-        mappings.getClassMapping("net/minecraft/world/level/storage/loot/entries/LootEntryAbstract$Serializer")
-            .ifPresent(classMapping -> {
-                classMapping.getMethodMapping("serializeType", "(Lcom/google/gson/JsonObject;Lnet/minecraft/world/level/storage/loot/entries/LootEntryAbstract;Lcom/google/gson/JsonSerializationContext;)V")
-                    .ifPresent(methodMapping -> {
-                        methodMapping.setDeobfuscatedName("mappingfix");
-                    });
-            });
-
-        mappings.getClassMapping("net/minecraft/world/item/trading/IMerchant")
-            .ifPresent(classMapping -> {
-                classMapping.getMethodMapping("getWorld", "()Lnet/minecraft/world/level/World;")
-                    .ifPresent(methodMapping -> {
-                        methodMapping.setDeobfuscatedName("getCommandSenderWorld");
-                    });
-            });
+    public static void fixMappings(MappingSet mappings) {
+        for (String[] fix : MAPPING_FIXES) {
+            mappings.getClassMapping(fix[0])
+                .flatMap(classMapping -> classMapping.getMethodMapping(fix[1], fix[2]))
+                .ifPresent(methodMapping -> methodMapping.setDeobfuscatedName(fix[3]));
+        }
     }
 
     /**
@@ -1121,13 +2079,12 @@ public abstract class MojoBase extends AbstractMojo {
     public void downloadPaper(String gameVersion, Path paperclipPath) throws MojoExecutionException {
         getLog().info("Fetching latest paper build");
 
-        InputStream inputStream;
+        JSONObject json;
         try {
-            inputStream = new URL("https://api.papermc.io/v2/projects/paper/versions/" + gameVersion).openStream();
+            json = this.getDownloader().fetchJson("https://api.papermc.io/v2/projects/paper/versions/" + gameVersion);
         } catch (IOException e) {
             throw new MojoExecutionException("Failed to download paper builds", e);
         }
-        JSONObject json = new JSONObject(new JSONTokener(inputStream));
         JSONArray builds = json.getJSONArray("builds");
         int highestBuild = -1;
         for (int i = 0; i < builds.length(); i++) {
@@ -1150,6 +2107,107 @@ public abstract class MojoBase extends AbstractMojo {
      * <p>If the dependencies are not shaded, a list of dependencies can then be found
      * inside the META-INF/libraries.list file inside the paperclip jar.</p>
      *
+     * <p>The patch is applied in this JVM by the {@link PaperclipPatcher}. If the
+     * paperclip jar is not recognized or patching fails, paperclip is run instead.</p>
+     *
+     * @param gameVersion The game version.
+     * @param cacheDirectory The cache directory.
+     * @param serverPath The path to put the extracted server jar.
+     * @throws MojoExecutionException If something goes wrong.
+     * @throws MojoFailureException If something goes wrong.
+     */
+    public void extractServerJar(String gameVersion, Path cacheDirectory, Path serverPath) throws MojoExecutionException, MojoFailureException {
+        Path paperclipPath = cacheDirectory.resolve("paperclip.jar");
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.SERVER_EXTRACTION)) {
+            phase.addFileRead(paperclipPath);
+            PaperclipPatcher patcher = new PaperclipPatcher(this.getDownloader(), this.getCacheDirectory().resolve("vanilla"), getLog());
+            if (!this.tryPatch(() -> patcher.patch(paperclipPath, serverPath))) {
+                this.runPaperclip(gameVersion, cacheDirectory, serverPath);
+                phase.addFileWritten(serverPath);
+                return;
+            }
+            phase.addFileWritten(serverPath);
+        }
+        getLog().info("Extracted server jar");
+
+        try {
+            Files.delete(paperclipPath);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to clean up paperclip", e);
+        }
+    }
+
+    /**
+     * Extract the server jar from a paperclip jar inside an archive, without
+     * extracting the paperclip jar unless paperclip has to be run.
+     *
+     * @param gameVersion The game version.
+     * @param cacheDirectory The cache directory.
+     * @param serverPath The path to put the extracted server jar.
+     * @param archive The archive containing the paperclip jar.
+     * @param paperclipEntry The entry of the paperclip jar.
+     * @throws MojoExecutionException If something goes wrong.
+     * @throws MojoFailureException If something goes wrong.
+     */
+    public void extractServerJar(String gameVersion, Path cacheDirectory, Path serverPath, ZipFile archive, ZipEntry paperclipEntry) throws MojoExecutionException, MojoFailureException {
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.SERVER_EXTRACTION)) {
+            phase.addBytesRead(paperclipEntry.getSize() > 0 ? paperclipEntry.getSize() : 0);
+            PaperclipPatcher patcher = new PaperclipPatcher(this.getDownloader(), this.getCacheDirectory().resolve("vanilla"), getLog());
+            boolean patched = this.tryPatch(() -> {
+                try (InputStream in = archive.getInputStream(paperclipEntry)) {
+                    return patcher.patch(in, serverPath);
+                }
+            });
+            if (patched) {
+                phase.addFileWritten(serverPath);
+                getLog().info("Extracted server jar");
+                return;
+            }
+
+            try (InputStream in = archive.getInputStream(paperclipEntry)) {
+                Files.copy(in, cacheDirectory.resolve("paperclip.jar"), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to extract paperclip", e);
+            }
+            this.runPaperclip(gameVersion, cacheDirectory, serverPath);
+            phase.addFileWritten(serverPath);
+        }
+    }
+
+    /**
+     * Try to apply the paperclip patch with the {@link PaperclipPatcher}.
+     *
+     * <p>
+     * In offline mode, paperclip is not run as it would try to download the vanilla
+     * jar, so a failure is thrown instead.
+     *
+     * @param patch The call to the patcher.
+     * @return Whether the server jar was created, or false if paperclip has to be run.
+     * @throws MojoFailureException If the patch could not be applied in offline mode.
+     */
+    private boolean tryPatch(Callable<Boolean> patch) throws MojoFailureException {
+        try {
+            if (patch.call()) {
+                return true;
+            }
+            if (this.isOffline()) {
+                throw new MojoFailureException("Unknown paperclip format, paperclip can not be run in offline mode.");
+            }
+            getLog().info("Unknown paperclip format, running paperclip");
+        } catch (MojoFailureException e) {
+            throw e;
+        } catch (Exception e) {
+            if (this.isOffline()) {
+                throw new MojoFailureException("Failed to create the server jar in offline mode: " + e.getMessage(), e);
+            }
+            getLog().warn("Failed to apply the paperclip patch, running paperclip instead", e);
+        }
+        return false;
+    }
+
+    /**
+     * Extract the server jar by running the paperclip jar in a new JVM.
+     *
      * <p>This method will also clean up the directories that paperclip generate in
      * the cache folder.</p>
      *
@@ -1159,7 +2217,7 @@ public abstract class MojoBase extends AbstractMojo {
      * @throws MojoExecutionException If something goes wrong.
      * @throws MojoFailureException If something goes wrong.
      */
-    public void extractServerJar(String gameVersion, Path cacheDirectory, Path serverPath) throws MojoExecutionException, MojoFailureException {
+    private void runPaperclip(String gameVersion, Path cacheDirectory, Path serverPath) throws MojoExecutionException, MojoFailureException {
         String javaExecutable;
         Path bin = Paths.get(System.getProperty("java.home"), "bin");
         Path javaPath = bin.resolve("java");
@@ -1284,72 +2342,199 @@ public abstract class MojoBase extends AbstractMojo {
      * @param mappingFrom The mapping namespace to map from.
      * @param mappingTo The mapping namespace to map to.
      */
-    public void mapJar(Path in, Path out, Path mappingsPath, String mappingFrom, String mappingTo, Path... classPath) throws IOException, URISyntaxException {
+    public void mapJar(Path in, Path out, Path mappingsPath, String mappingFrom, String mappingTo, Path... classPath) throws IOException {
         // Read the mappings
-        IMappingProvider mappings = TinyUtils.createTinyMappingProvider(mappingsPath, mappingFrom, mappingTo);
+        IMappingProvider mappings = this.readMappings(mappingsPath, mappingFrom, mappingTo);
+
+        this.mapJar(in, out, mappings, classPath);
+    }
+
+    /**
+     * Map the input jar to the output jar.
+     *
+     * @param in The input jar.
+     * @param out The output jar.
+     * @param mappings The mappings to use. May be shared between concurrent calls.
+     * @param classPath The class path.
+     */
+    public void mapJar(Path in, Path out, IMappingProvider mappings, Path... classPath) throws IOException {
+        int jarThreads = this.jarThreads != null ? Math.max(1, this.jarThreads) : Runtime.getRuntime().availableProcessors();
+        this.mapJar(in, out, mappings, jarThreads, classPath);
+    }
 
+    /**
+     * Map the input jar to the output jar, compressing the classes on the specified
+     * amount of threads.
+     * <p>
+     * Callers that already map several jars at the same time should compress on
+     * one thread, so that the threads of each jar do not add up.
+     *
+     * @param in The input jar.
+     * @param out The output jar.
+     * @param mappings The mappings to use. May be shared between concurrent calls.
+     * @param jarThreads The amount of threads to compress classes with, or 1 to
+     *                   compress them on the calling thread.
+     * @param classPath The class path.
+     */
+    public void mapJar(Path in, Path out, IMappingProvider mappings, int jarThreads, Path... classPath) throws IOException {
         // Create the remapper
-        TinyRemapper remapper = TinyRemapper.newRemapper()
-            .withMappings(mappings)
-            .ignoreConflicts(true)
-            .build();
+        TinyRemapper remapper;
+        try (PhaseReport.Phase ignored = this.phaseReport.start(PhaseName.MAPPING_LOAD)) {
+            remapper = TinyRemapper.newRemapper()
+                .withMappings(mappings)
+                .ignoreConflicts(true)
+                .build();
+        }
 
         // Add the class path
-        remapper.readClassPath(classPath);
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.READ_CLASS_PATH)) {
+            for (Path path : classPath) {
+                phase.addFileRead(path);
+            }
+            remapper.readClassPath(classPath);
+        }
 
         // Add input file
-        remapper.readInputs(in);
-
-        // Create output jar
-        Files.deleteIfExists(out);
-        URI uri = new URI("jar:" + out.toUri());
-        Map<String, Object> env = new HashMap<>();
-        env.put("create", true);
-        FileSystem outputFileSystem = FileSystems.newFileSystem(uri, env);
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.READ_INPUTS)) {
+            phase.addFileRead(in);
+            remapper.readInputs(in);
+        }
 
-        // Copy all non-class files and count classes
-        JarFile inputJar = new JarFile(in.toFile());
-        int classCount = 0;
-        Enumeration<JarEntry> iter = inputJar.entries();
-        while (iter.hasMoreElements()) {
-            JarEntry jarEntry = iter.nextElement();
-            if (jarEntry.getName().endsWith(".class")) {
-                classCount++;
-            } else if (!jarEntry.isDirectory()) {
-                // A non-class file
-                InputStream stream = inputJar.getInputStream(jarEntry);
+        // Collect the remapped classes, sorted so that the output is reproducible
+        Map<String, byte[]> classes = new ConcurrentSkipListMap<>();
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.APPLY)) {
+            remapper.apply((name, bytes) -> classes.put(name + ".class", bytes));
 
-                Path path = outputFileSystem.getPath(jarEntry.getName());
-                Path parent = path.getParent();
-                if (parent != null) Files.createDirectories(parent);
+            // Finish up tiny-remapper
+            remapper.finish();
+            phase.addClasses(classes.size());
+        }
 
-                Files.copy(stream, path);
+        // Write the output jar
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.JAR_WRITING)) {
+            phase.addClasses(classes.size());
+            this.writeJar(in, out, classes, jarThreads);
+            phase.addFileWritten(out);
+        }
+    }
 
-                stream.close();
-            }
+    /**
+     * Write a remapped jar, copying the non-class entries of the input jar without
+     * recompressing them.
+     *
+     * @param in The input jar.
+     * @param out The output jar.
+     * @param classes The remapped classes, keyed by the entry name.
+     * @param threads The amount of threads to compress classes with.
+     * @throws IOException If something goes wrong.
+     */
+    private void writeJar(Path in, Path out, Map<String, byte[]> classes, int threads) throws IOException {
+        Files.deleteIfExists(out);
+        RawZipFile rawInputJar;
+        try {
+            rawInputJar = RawZipFile.open(in);
+        } catch (IOException e) {
+            // Not a zip file that can be copied raw, fall back to inflating the entries
+            this.writeJarFallback(in, out, classes, threads);
+            return;
         }
+        try (RawZipFile inputJar = rawInputJar;
+             JarWriter writer = new JarWriter(out)) {
+            // Copy all non-class entries without recompressing them
+            Map<String, Integer> dosTimes = new HashMap<>();
+            for (RawZipFile.Entry entry : inputJar.getEntries()) {
+                if (entry.name.endsWith(".class")) {
+                    dosTimes.put(entry.name, entry.dosTime);
+                } else {
+                    writer.copy(inputJar, entry);
+                }
+            }
 
-        // Write all remapped classes to the output jar
+            // Write all remapped classes to the output jar
+            this.writeClasses(writer, classes, dosTimes, threads);
+        }
+    }
 
-        remapper.apply((name, bytes) -> {
-            Path path = outputFileSystem.getPath(name + ".class");
-            try {
-                Path parent = path.getParent();
-                if (parent != null) Files.createDirectories(parent);
-                Files.write(path, bytes);
-            } catch (IOException e) {
-                throw new UncheckedIOException("Failed to write class " + name + " to jar", e);
+    /**
+     * Compress and write classes to a jar, in the order of the map.
+     * <p>
+     * The classes are compressed on the specified amount of threads and written in
+     * order as they complete, so the output is the same for any amount of threads.
+     *
+     * @param writer The writer to write to.
+     * @param classes The classes to write, keyed by the entry name.
+     * @param dosTimes The modification times of the classes in the input jar.
+     * @param threads The amount of threads to compress classes with.
+     * @throws IOException If something goes wrong.
+     */
+    private void writeClasses(JarWriter writer, Map<String, byte[]> classes, Map<String, Integer> dosTimes, int threads) throws IOException {
+        int now = JarWriter.toDosTime(System.currentTimeMillis());
+        if (threads <= 1 || classes.size() < 2) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                writer.write(JarWriter.compress(entry.getKey(), entry.getValue(), dosTimes.getOrDefault(entry.getKey(), now)));
             }
-        });
-
-        // Finish up tiny-remapper
-        remapper.finish();
+            return;
+        }
 
-        // Close the input jar
-        inputJar.close();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, classes.size()));
+        try {
+            List<Future<JarWriter.CompressedEntry>> futures = new ArrayList<>(classes.size());
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                String name = entry.getKey();
+                byte[] bytes = entry.getValue();
+                int dosTime = dosTimes.getOrDefault(name, now);
+                futures.add(executor.submit(() -> JarWriter.compress(name, bytes, dosTime)));
+            }
+            for (Future<JarWriter.CompressedEntry> future : futures) {
+                try {
+                    writer.write(future.get());
+                } catch (ExecutionException e) {
+                    throw new IOException("Failed to compress class", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while compressing classes");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-        // Close the output jar
-        outputFileSystem.close();
+    /**
+     * Write a remapped jar by reading the non-class entries of the input jar
+     * through {@link JarFile}, for jars that {@link RawZipFile} does not support.
+     *
+     * @param in The input jar.
+     * @param out The output jar.
+     * @param classes The remapped classes, keyed by the entry name.
+     * @param threads The amount of threads to compress classes with.
+     * @throws IOException If something goes wrong.
+     */
+    private void writeJarFallback(Path in, Path out, Map<String, byte[]> classes, int threads) throws IOException {
+        Files.deleteIfExists(out);
+        try (JarFile inputJar = new JarFile(in.toFile());
+             JarWriter writer = new JarWriter(out)) {
+            Enumeration<JarEntry> iter = inputJar.entries();
+            while (iter.hasMoreElements()) {
+                JarEntry jarEntry = iter.nextElement();
+                if (jarEntry.getName().endsWith(".class")) {
+                    continue;
+                }
+                byte[] bytes;
+                try (InputStream stream = inputJar.getInputStream(jarEntry)) {
+                    bytes = Streams.readAllBytes(stream);
+                }
+                writer.write(jarEntry.getName(), bytes, JarWriter.toDosTime(jarEntry.getTime()));
+            }
+            Map<String, Integer> dosTimes = new HashMap<>();
+            for (String name : classes.keySet()) {
+                JarEntry jarEntry = inputJar.getJarEntry(name);
+                if (jarEntry != null) {
+                    dosTimes.put(name, JarWriter.toDosTime(jarEntry.getTime()));
+                }
+            }
+            this.writeClasses(writer, classes, dosTimes, threads);
+        }
     }
 
     /**
@@ -1363,7 +2548,7 @@ public abstract class MojoBase extends AbstractMojo {
     public void mapPaperJar(Path mappingsPath, Path paperPath, Path mappedPaperPath) throws MojoExecutionException {
         try {
             mapJar(paperPath, mappedPaperPath, mappingsPath, "spigot", "mojang");
-        } catch (IOException | URISyntaxException e) {
+        } catch (IOException e) {
             throw new MojoExecutionException("Failed to map paper jar", e);
         } catch (RuntimeException e) {
             if ("Unfixable conflicts".equals(e.getMessage())) {
@@ -1379,7 +2564,7 @@ public abstract class MojoBase extends AbstractMojo {
         getLog().info("Cleaning up paper jar");
         try {
             Files.delete(paperPath);
-            Files.delete(mappingsPath);
+            this.deleteMappings(mappingsPath);
         } catch (IOException e) {
             throw new MojoExecutionException("Failed to delete paper jar", e);
         }
@@ -1486,7 +2671,8 @@ public abstract class MojoBase extends AbstractMojo {
             throw new MojoExecutionException("Failed to write pom.xml", e);
         }
 
-        try {
+        try (PhaseReport.Phase phase = this.phaseReport.start(PhaseName.INSTALL)) {
+            phase.addFileRead(mappedServerPath);
             this.installViaArtifactInstaller(mappedServerPath, pomPath, exactVersion);
         } catch (ArtifactInstallationException e) {
             throw new MojoExecutionException("Failed to install mapped server jar to local repository.", e);
@@ -1496,7 +2682,10 @@ public abstract class MojoBase extends AbstractMojo {
 
         getLog().info("Cleaning up");
         try {
-            Files.delete(mappedServerPath);
+            if (!this.globalCache) {
+                // The global cache keeps the jar for other projects
+                Files.delete(mappedServerPath);
+            }
             Files.deleteIfExists(pomPath);
         } catch (IOException e) {
             throw new MojoExecutionException("Failed to clean up", e);
@@ -0,0 +1,311 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.apache.maven.plugin.logging.Log;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Creates the server jar from a paperclip jar without running paperclip.
+ * <p>
+ * Paperclip ships the server as a bsdiff patch of the vanilla server jar. The
+ * vanilla jar is downloaded, the patch is applied with {@link BsdiffPatch} and
+ * the result is written straight to the output, verifying the hashes paperclip
+ * would verify. Downloaded vanilla jars are kept so that the server jar can be
+ * created again without network access.
+ * <p>
+ * Two formats are supported. Paperclip for 1.18 and later lists the patches in
+ * {@code META-INF/patches.list}, the vanilla download in
+ * {@code META-INF/download-context} and the server jar in
+ * {@code META-INF/versions.list}. Older paperclip describes a single patch of the
+ * whole vanilla jar in a {@code patch.json} file.
+ */
+public class PaperclipPatcher {
+    private static final int BUFFER_SIZE = 65536;
+
+    private final Downloader downloader;
+    private final Path vanillaDirectory;
+    private final Log log;
+
+    /**
+     * Create a patcher.
+     *
+     * @param downloader The downloader to download the vanilla jar with.
+     * @param vanillaDirectory The folder to keep downloaded vanilla jars in.
+     * @param log The log to report to.
+     */
+    public PaperclipPatcher(Downloader downloader, Path vanillaDirectory, Log log) {
+        this.downloader = downloader;
+        this.vanillaDirectory = vanillaDirectory;
+        this.log = log;
+    }
+
+    /**
+     * Create the server jar from a paperclip jar.
+     *
+     * @param paperclipPath The path to the paperclip jar.
+     * @param serverPath The path to write the server jar to.
+     * @return Whether the paperclip jar was recognized. If not, nothing was written.
+     * @throws IOException If something goes wrong while patching.
+     */
+    public boolean patch(Path paperclipPath, Path serverPath) throws IOException {
+        try (ZipFile paperclip = new ZipFile(paperclipPath.toFile())) {
+            return this.patch(name -> {
+                ZipEntry entry = paperclip.getEntry(name);
+                if (entry == null) {
+                    return null;
+                }
+                try (InputStream in = paperclip.getInputStream(entry)) {
+                    return Streams.readAllBytes(in);
+                }
+            }, serverPath);
+        }
+    }
+
+    /**
+     * Create the server jar from a paperclip jar that is read as a stream, for
+     * example from inside a dev bundle.
+     * <p>
+     * Only the patch data is kept in memory, the classes and libraries of the
+     * paperclip jar are skipped.
+     *
+     * @param paperclipJar The content of the paperclip jar. Not closed.
+     * @param serverPath The path to write the server jar to.
+     * @return Whether the paperclip jar was recognized. If not, nothing was written.
+     * @throws IOException If something goes wrong while patching.
+     */
+    public boolean patch(InputStream paperclipJar, Path serverPath) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        ZipInputStream zip = new ZipInputStream(paperclipJar);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (!entry.isDirectory() && isPatchData(entry.getName())) {
+                entries.put(entry.getName(), Streams.readAllBytes(zip));
+            }
+        }
+        return this.patch(entries::get, serverPath);
+    }
+
+    private boolean patch(Entries paperclip, Path serverPath) throws IOException {
+        byte[] patchesList = paperclip.get("META-INF/patches.list");
+        byte[] downloadContext = paperclip.get("META-INF/download-context");
+        byte[] versionsList = paperclip.get("META-INF/versions.list");
+        if (patchesList != null && downloadContext != null && versionsList != null) {
+            this.patchBundler(paperclip, readLines(patchesList), readLines(downloadContext), readLines(versionsList), serverPath);
+            return true;
+        }
+
+        byte[] patchJson = paperclip.get("META-INF/patch.json");
+        if (patchJson == null) {
+            patchJson = paperclip.get("patch.json");
+        }
+        if (patchJson != null) {
+            this.patchLegacy(paperclip, patchJson, serverPath);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check whether an entry of a paperclip jar may be needed to patch the server.
+     * This is the metadata and patches of both formats, but not the libraries and
+     * classes.
+     */
+    private static boolean isPatchData(String name) {
+        if (name.startsWith("META-INF/")) {
+            return name.startsWith("META-INF/versions/")
+                || name.equals("META-INF/patches.list")
+                || name.equals("META-INF/download-context")
+                || name.equals("META-INF/versions.list")
+                || name.equals("META-INF/patch.json");
+        }
+        return name.indexOf('/') < 0 && !name.endsWith(".class");
+    }
+
+    /**
+     * Patch the server jar of a paperclip jar for 1.18 and later, where the vanilla
+     * download is a bundler jar with the vanilla server jar inside it.
+     */
+    private void patchBundler(Entries paperclip, List<String> patches, List<String> downloadContext, List<String> versions,
+                              Path serverPath) throws IOException {
+        // hash, id, path
+        String[] version = split(versions, 3, "versions.list");
+        String serverJarPath = version[2];
+
+        // location, original hash, patch hash, output hash, original path, patch path, output path
+        String[] patch = null;
+        for (String line : patches) {
+            String[] parts = line.split("\t");
+            if (parts.length == 7 && "versions".equals(parts[0]) && serverJarPath.equals(parts[6])) {
+                patch = parts;
+            }
+        }
+
+        if (patch == null) {
+            // The server jar is not a patch, it is included as-is
+            byte[] serverJar = readEntry(paperclip, "META-INF/versions/" + serverJarPath);
+            this.writeVerified(serverPath, version[0], out -> out.write(serverJar));
+            return;
+        }
+
+        // hash, url, file name
+        String[] download = split(downloadContext, 3, "download-context");
+        Path vanillaPath = this.getVanillaJar(download[1], download[0]);
+
+        byte[] original;
+        try (ZipFile vanilla = new ZipFile(vanillaPath.toFile())) {
+            ZipEntry entry = vanilla.getEntry("META-INF/versions/" + patch[4]);
+            if (entry == null) {
+                throw new IOException("The vanilla jar does not contain " + patch[4]);
+            }
+            try (InputStream in = vanilla.getInputStream(entry)) {
+                original = Streams.readAllBytes(in);
+            }
+        }
+        byte[] patchBytes = readEntry(paperclip, "META-INF/versions/" + patch[5]);
+
+        checkHash(original, patch[1], patch[4]);
+        checkHash(patchBytes, patch[2], patch[5]);
+        this.log.info("Applying paperclip patch");
+        this.writeVerified(serverPath, patch[3], out -> BsdiffPatch.patch(original, patchBytes, out));
+    }
+
+    /**
+     * Patch the server jar of a paperclip jar from before 1.18, where the patch
+     * applies to the whole vanilla jar.
+     */
+    private void patchLegacy(Entries paperclip, byte[] patchJson, Path serverPath) throws IOException {
+        String patchName;
+        String sourceUrl;
+        String originalHash;
+        String patchedHash;
+        try {
+            JSONObject json = new JSONObject(new String(patchJson, StandardCharsets.UTF_8));
+            patchName = json.getString("patch");
+            sourceUrl = json.getString("sourceUrl");
+            originalHash = json.getString("originalHash");
+            patchedHash = json.getString("patchedHash");
+        } catch (JSONException e) {
+            throw new IOException("Invalid paperclip patch.json", e);
+        }
+
+        byte[] original = Files.readAllBytes(this.getVanillaJar(sourceUrl, originalHash));
+        byte[] patchBytes = readEntry(paperclip, patchName.startsWith("/") ? patchName.substring(1) : patchName);
+
+        this.log.info("Applying paperclip patch");
+        this.writeVerified(serverPath, patchedHash, out -> BsdiffPatch.patch(original, patchBytes, out));
+    }
+
+    /**
+     * Get the vanilla jar with the specified SHA-256 hash, downloading it unless it
+     * was downloaded before.
+     */
+    private Path getVanillaJar(String url, String sha256) throws IOException {
+        Path path = this.vanillaDirectory.resolve(sha256.toLowerCase(Locale.ROOT) + ".jar");
+        if (Files.exists(path)) {
+            try {
+                checkHash(Files.readAllBytes(path), sha256, path.getFileName().toString());
+                return path;
+            } catch (IOException e) {
+                this.log.warn("Downloading vanilla jar again, " + e.getMessage());
+            }
+        }
+        this.log.info("Downloading vanilla jar");
+        Files.createDirectories(this.vanillaDirectory);
+        AtomicFiles.write(path, tempPath -> {
+            this.downloader.download(url, tempPath, null);
+            checkHash(Files.readAllBytes(tempPath), sha256, path.getFileName().toString());
+        });
+        return path;
+    }
+
+    /**
+     * Write a file through a temporary file, checking the SHA-256 hash of the
+     * content before moving it into place.
+     */
+    private void writeVerified(Path path, String sha256, Writer writer) throws IOException {
+        AtomicFiles.write(path, tempPath -> {
+            MessageDigest messageDigest = Hashes.sha256Digest();
+            try (OutputStream out = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath), BUFFER_SIZE), messageDigest)) {
+                writer.write(out);
+            }
+            String hash = Hashes.toHex(messageDigest.digest());
+            if (!hash.equalsIgnoreCase(sha256)) {
+                throw new IOException("Patched server jar has the wrong hash. Expected: " + sha256 + " Found: " + hash);
+            }
+        });
+    }
+
+    private static void checkHash(byte[] content, String sha256, String name) throws IOException {
+        String hash = Hashes.toHex(Hashes.sha256Digest().digest(content));
+        if (!hash.equalsIgnoreCase(sha256)) {
+            throw new IOException("Wrong hash of " + name + ". Expected: " + sha256 + " Found: " + hash);
+        }
+    }
+
+    private static String[] split(List<String> lines, int parts, String name) throws IOException {
+        for (String line : lines) {
+            String[] split = line.split("\t");
+            if (split.length == parts) {
+                return split;
+            }
+        }
+        throw new IOException("Invalid paperclip " + name);
+    }
+
+    private static List<String> readLines(byte[] content) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static byte[] readEntry(Entries zip, String name) throws IOException {
+        byte[] content = zip.get(name);
+        if (content == null) {
+            throw new IOException("The paperclip jar does not contain " + name);
+        }
+        return content;
+    }
+
+    /**
+     * The entries of a paperclip jar.
+     */
+    @FunctionalInterface
+    private interface Entries {
+        @Nullable
+        byte[] get(String name) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,148 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Java Flight Recorder events for the phases of a {@link PhaseReport}, so that the
+ * work of the plugin can be told apart from the rest of the build in a recording.
+ * <p>
+ * This class is only loaded by {@link PhaseReport} when jdk.jfr is available, as
+ * the plugin also runs on Java 8 builds without it. The events are passed around
+ * as {@link Object} so that the report does not load them otherwise.
+ */
+final class PhaseEvents {
+    private PhaseEvents() {}
+
+    /**
+     * Begin the event of a phase.
+     * <p>
+     * No event is created when Flight Recorder has not been started. When it has,
+     * the event is created and dropped again if no recording enables it.
+     *
+     * @param phase The phase.
+     * @return The event, or null if the event is not enabled in any recording.
+     */
+    @Nullable
+    static Object begin(PhaseName phase) {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        PhaseEvent event = create(phase);
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End the event of a phase and commit it if the recording wants it.
+     *
+     * @param event The event returned by {@link #begin(PhaseName)}.
+     * @param gameVersion The game version, or null if not known yet.
+     * @param bytesRead The amount of bytes that the phase read.
+     * @param bytesWritten The amount of bytes that the phase wrote.
+     * @param classes The amount of classes of the phase.
+     */
+    static void commit(Object event, @Nullable String gameVersion, long bytesRead, long bytesWritten, long classes) {
+        PhaseEvent phaseEvent = (PhaseEvent) event;
+        phaseEvent.end();
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.gameVersion = gameVersion;
+            phaseEvent.bytesRead = bytesRead;
+            phaseEvent.bytesWritten = bytesWritten;
+            phaseEvent.classes = classes;
+            phaseEvent.commit();
+        }
+    }
+
+    private static PhaseEvent create(PhaseName phase) {
+        switch (phase) {
+            case DEPENDENCY_RESOLUTION: return new DependencyResolutionEvent();
+            case DEV_BUNDLE_RESOLUTION: return new DevBundleResolutionEvent();
+            case DOWNLOAD: return new DownloadEvent();
+            case SERVER_EXTRACTION: return new ServerExtractionEvent();
+            case MAPPING_LOAD: return new MappingLoadEvent();
+            case READ_CLASS_PATH: return new ReadClassPathEvent();
+            case READ_INPUTS: return new ReadInputsEvent();
+            case APPLY: return new ApplyEvent();
+            case JAR_WRITING: return new JarWritingEvent();
+            case INSTALL: return new InstallEvent();
+            default: throw new IllegalArgumentException("No event for phase " + phase);
+        }
+    }
+
+    @Category("paper-nms")
+    abstract static class PhaseEvent extends Event {
+        @Label("Game Version")
+        String gameVersion;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+        @Label("Classes")
+        long classes;
+    }
+
+    @Name("ca.bkaw.papernms.DependencyResolution")
+    @Label("Dependency Resolution")
+    @Description("Resolving dependencies and their metadata")
+    static class DependencyResolutionEvent extends PhaseEvent {}
+
+    @Name("ca.bkaw.papernms.DevBundleResolution")
+    @Label("Dev Bundle Resolution")
+    @Description("Resolving and downloading the dev bundle")
+    static class DevBundleResolutionEvent extends PhaseEvent {}
+
+    @Name("ca.bkaw.papernms.Download")
+    @Label("Download")
+    @Description("Downloading a file, like mappings or paperclip")
+    static class DownloadEvent extends PhaseEvent {}
+
+    @Name("ca.bkaw.papernms.ServerExtraction")
+    @Label("Paperclip Extraction")
+    @Description("Creating the server jar from paperclip")
+    static class ServerExtractionEvent extends PhaseEvent {}
+
+    @Name("ca.bkaw.papernms.MappingLoad")
+    @Label("Mapping Parse")
+    @Description("Reading, merging or extracting mappings")
+    static class MappingLoadEvent extends PhaseEvent {}
+
+    @Name("ca.bkaw.papernms.ReadClassPath")
+    @Label("Class Path Read")
+    @Description("Reading the class path into tiny-remapper")
+    static class ReadClassPathEvent extends PhaseEvent {}
+
+    @Name("ca.bkaw.papernms.ReadInputs")
+    @Label("Inputs Read")
+    @Description("Reading the classes to remap into tiny-remapper")
+    static class ReadInputsEvent extends PhaseEvent {}
+
+    @Name("ca.bkaw.papernms.Apply")
+    @Label("Remap Apply")
+    @Description("Remapping classes")
+    static class ApplyEvent extends PhaseEvent {}
+
+    @Name("ca.bkaw.papernms.JarWriting")
+    @Label("Jar Write")
+    @Description("Writing a remapped jar")
+    static class JarWritingEvent extends PhaseEvent {}
+
+    @Name("ca.bkaw.papernms.Install")
+    @Label("Local Repository Install")
+    @Description("Installing the mapped server into the local repository")
+    static class InstallEvent extends PhaseEvent {}
+}
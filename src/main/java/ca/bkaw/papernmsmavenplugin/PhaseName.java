@@ -0,0 +1,33 @@
+package ca.bkaw.papernmsmavenplugin;
+
+/**
+ * The phases that a {@link PhaseReport} measures. Each phase has a Java Flight
+ * Recorder event in {@link PhaseEvents}.
+ */
+public enum PhaseName {
+    DEPENDENCY_RESOLUTION("dependency resolution"),
+    DEV_BUNDLE_RESOLUTION("dev bundle resolution"),
+    DOWNLOAD("download"),
+    SERVER_EXTRACTION("server extraction"),
+    MAPPING_LOAD("mapping load"),
+    READ_CLASS_PATH("read class path"),
+    READ_INPUTS("read inputs"),
+    APPLY("apply"),
+    JAR_WRITING("jar writing"),
+    INSTALL("install");
+
+    private final String displayName;
+
+    PhaseName(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Get the name of the phase in the summary and the json of the report.
+     *
+     * @return The name.
+     */
+    public String getDisplayName() {
+        return this.displayName;
+    }
+}
@@ -0,0 +1,303 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the phases of a goal, like resolving dependencies, loading mappings and
+ * writing jars, to find out where a slow build spends its time.
+ * <p>
+ * For each phase the wall time, the bytes read and written, the amount of classes
+ * and an approximate peak heap usage are recorded. Phases with the same name, like
+ * mapping each dependency, are added together. Phases may run at the same time, in
+ * which case their wall times overlap and the peak heap of a phase includes the
+ * phases that ran alongside it.
+ * <p>
+ * The heap usage is sampled every {@value #HEAP_SAMPLE_MILLIS} ms while a phase
+ * runs, and when it starts and ends. The peak is the highest sample, so a higher
+ * peak between two samples is missed. It includes garbage that has not been
+ * collected yet, and the rest of the build.
+ * <p>
+ * The report is logged as one line and written as json, so that the phases can be
+ * compared between builds. When Java Flight Recorder is available, each phase is
+ * also recorded as an event, see {@link PhaseEvents}.
+ */
+public class PhaseReport {
+    private static final boolean JFR_AVAILABLE = isJfrAvailable();
+    private static final long HEAP_SAMPLE_MILLIS = 50;
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final Map<PhaseName, Stats> phases = new LinkedHashMap<>();
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+    private final Set<Phase> activePhases = new HashSet<>();
+    private ScheduledExecutorService heapSampler;
+    private long peakHeap;
+
+    /**
+     * Start measuring a phase. The phase ends when it is closed.
+     *
+     * @param name The phase.
+     * @return The phase.
+     */
+    public Phase start(PhaseName name) {
+        Phase phase = new Phase(name);
+        phase.recordHeap(usedHeap());
+        synchronized (this) {
+            this.activePhases.add(phase);
+            if (this.heapSampler == null) {
+                this.heapSampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "paper-nms heap sampler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                this.heapSampler.scheduleAtFixedRate(this::sampleHeap, HEAP_SAMPLE_MILLIS, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        return phase;
+    }
+
+    /**
+     * Set an attribute of the report, like the game version.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    public synchronized void setAttribute(String key, String value) {
+        this.attributes.put(key, value);
+    }
+
+    /**
+     * Check whether no phase has ended yet.
+     *
+     * @return Whether the report is empty.
+     */
+    public synchronized boolean isEmpty() {
+        return this.phases.isEmpty();
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PhaseReport.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static long usedHeap() {
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    private synchronized void sampleHeap() {
+        long used = usedHeap();
+        for (Phase phase : this.activePhases) {
+            phase.recordHeap(used);
+        }
+    }
+
+    private synchronized void end(Phase phase, long nanos) {
+        phase.recordHeap(usedHeap());
+        this.activePhases.remove(phase);
+        if (this.activePhases.isEmpty() && this.heapSampler != null) {
+            this.heapSampler.shutdownNow();
+            this.heapSampler = null;
+        }
+        long peak = phase.peakHeap.get();
+        this.peakHeap = Math.max(this.peakHeap, peak);
+
+        Stats stats = this.phases.computeIfAbsent(phase.name, Stats::new);
+        stats.count++;
+        stats.nanos += nanos;
+        stats.bytesRead += phase.bytesRead.get();
+        stats.bytesWritten += phase.bytesWritten.get();
+        stats.classes += phase.classes.get();
+        stats.peakHeap = Math.max(stats.peakHeap, peak);
+    }
+
+    /**
+     * Get a summary of the phases on one line.
+     *
+     * @param goal The goal that was measured.
+     * @return The summary.
+     */
+    public synchronized String getSummary(String goal) {
+        StringBuilder phases = new StringBuilder();
+        for (Stats stats : this.phases.values()) {
+            phases.append(phases.length() == 0 ? "" : ", ").append(stats.name.getDisplayName()).append(' ').append(stats.nanos / 1000000).append(" ms");
+            List<String> details = new ArrayList<>();
+            if (stats.classes > 0) {
+                details.add(stats.classes + " classes");
+            }
+            if (stats.bytesRead > 0) {
+                details.add(formatBytes(stats.bytesRead) + " read");
+            }
+            if (stats.bytesWritten > 0) {
+                details.add(formatBytes(stats.bytesWritten) + " written");
+            }
+            if (!details.isEmpty()) {
+                phases.append(" (").append(String.join(", ", details)).append(')');
+            }
+        }
+        return "Phases of " + goal + " finished in " + (System.nanoTime() - this.startNanos) / 1000000 + " ms with an approximate peak heap of "
+            + formatBytes(this.peakHeap) + " (" + phases + ")";
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return (bytes + 1023) / 1024 + " KB";
+        }
+        return bytes / (1024 * 1024) + " MB";
+    }
+
+    /**
+     * Get the report as json.
+     *
+     * @param goal The goal that was measured.
+     * @return The json.
+     */
+    public synchronized JSONObject toJson(String goal) {
+        JSONArray phases = new JSONArray();
+        for (Stats stats : this.phases.values()) {
+            JSONObject phase = new JSONObject();
+            phase.put("name", stats.name.getDisplayName());
+            phase.put("count", stats.count);
+            phase.put("wallMillis", stats.nanos / 1000000);
+            phase.put("bytesRead", stats.bytesRead);
+            phase.put("bytesWritten", stats.bytesWritten);
+            phase.put("classes", stats.classes);
+            phase.put("approximatePeakHeapBytes", stats.peakHeap);
+            phases.put(phase);
+        }
+        JSONObject json = new JSONObject();
+        json.put("goal", goal);
+        json.put("startTime", this.startTime);
+        json.put("wallMillis", (System.nanoTime() - this.startNanos) / 1000000);
+        json.put("approximatePeakHeapBytes", this.peakHeap);
+        json.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        json.put("attributes", new JSONObject(this.attributes));
+        json.put("phases", phases);
+        return json;
+    }
+
+    /**
+     * Write the report as json atomically.
+     *
+     * @param path The path to write to.
+     * @param goal The goal that was measured.
+     * @throws IOException If the file could not be written.
+     */
+    public void write(Path path, String goal) throws IOException {
+        String json = this.toJson(goal).toString(2);
+        Files.createDirectories(path.getParent());
+        AtomicFiles.write(path, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A phase that is being measured. The counters may be updated from any thread.
+     */
+    public class Phase implements AutoCloseable {
+        private final PhaseName name;
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final AtomicLong classes = new AtomicLong();
+        private final AtomicLong peakHeap = new AtomicLong();
+        private final Object event;
+        private boolean closed;
+
+        private Phase(PhaseName name) {
+            this.name = name;
+            this.event = JFR_AVAILABLE ? PhaseEvents.begin(name) : null;
+        }
+
+        private void recordHeap(long used) {
+            this.peakHeap.accumulateAndGet(used, Math::max);
+        }
+
+        public void addBytesRead(long bytes) {
+            this.bytesRead.addAndGet(bytes);
+        }
+
+        public void addBytesWritten(long bytes) {
+            this.bytesWritten.addAndGet(bytes);
+        }
+
+        public void addClasses(long classes) {
+            this.classes.addAndGet(classes);
+        }
+
+        /**
+         * Count the size of a file as read, if it is a file.
+         *
+         * @param path The path to the file.
+         */
+        public void addFileRead(Path path) {
+            this.addBytesRead(sizeOf(path));
+        }
+
+        /**
+         * Count the size of a file as written, if it is a file.
+         *
+         * @param path The path to the file.
+         */
+        public void addFileWritten(Path path) {
+            this.addBytesWritten(sizeOf(path));
+        }
+
+        private long sizeOf(Path path) {
+            try {
+                return Files.isRegularFile(path) ? Files.size(path) : 0;
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!this.closed) {
+                this.closed = true;
+                PhaseReport.this.end(this, System.nanoTime() - this.startNanos);
+                if (this.event != null) {
+                    String gameVersion;
+                    synchronized (PhaseReport.this) {
+                        gameVersion = PhaseReport.this.attributes.get("gameVersion");
+                    }
+                    PhaseEvents.commit(this.event, gameVersion, this.bytesRead.get(), this.bytesWritten.get(), this.classes.get());
+                }
+            }
+        }
+    }
+
+    private static class Stats {
+        private final PhaseName name;
+        private int count;
+        private long nanos;
+        private long bytesRead;
+        private long bytesWritten;
+        private long classes;
+        private long peakHeap;
+
+        private Stats(PhaseName name) {
+            this.name = name;
+        }
+    }
+}
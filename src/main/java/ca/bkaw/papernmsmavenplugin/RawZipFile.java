@@ -0,0 +1,184 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A zip file read from its central directory, giving access to the compressed
+ * data of the entries so that they can be copied without inflating them.
+ * <p>
+ * Zip64 archives and archives spanning several disks are not supported.
+ */
+public class RawZipFile implements Closeable {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private final FileChannel channel;
+    private final List<Entry> entries;
+
+    private RawZipFile(FileChannel channel, List<Entry> entries) {
+        this.channel = channel;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Open a zip file and read its central directory.
+     *
+     * @param path The path to the zip file.
+     * @return The zip file.
+     * @throws IOException If the file could not be read or is not supported.
+     */
+    public static RawZipFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new RawZipFile(channel, readEntries(channel));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static List<Entry> readEntries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int tailSize = (int) Math.min(size, 22 + 65535);
+        ByteBuffer tail = read(channel, size - tailSize, tailSize);
+
+        int endPosition = -1;
+        for (int i = tailSize - 22; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                endPosition = i;
+                break;
+            }
+        }
+        if (endPosition < 0) {
+            throw new IOException("Not a zip file, end of central directory not found");
+        }
+        int entryCount = tail.getShort(endPosition + 10) & 0xffff;
+        long centralDirectorySize = tail.getInt(endPosition + 12) & 0xffffffffL;
+        long centralDirectoryOffset = tail.getInt(endPosition + 16) & 0xffffffffL;
+        if (entryCount == 0xffff || centralDirectorySize == 0xffffffffL || centralDirectoryOffset == 0xffffffffL) {
+            throw new IOException("Zip64 is not supported");
+        }
+
+        ByteBuffer centralDirectory = read(channel, centralDirectoryOffset, (int) centralDirectorySize);
+        List<Entry> entries = new ArrayList<>(entryCount);
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (centralDirectory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory header");
+            }
+            int flags = centralDirectory.getShort(position + 8) & 0xffff;
+            int method = centralDirectory.getShort(position + 10) & 0xffff;
+            int dosTime = centralDirectory.getInt(position + 12);
+            int crc = centralDirectory.getInt(position + 16);
+            long compressedSize = centralDirectory.getInt(position + 20) & 0xffffffffL;
+            long uncompressedSize = centralDirectory.getInt(position + 24) & 0xffffffffL;
+            int nameLength = centralDirectory.getShort(position + 28) & 0xffff;
+            int extraLength = centralDirectory.getShort(position + 30) & 0xffff;
+            int commentLength = centralDirectory.getShort(position + 32) & 0xffff;
+            long localHeaderOffset = centralDirectory.getInt(position + 42) & 0xffffffffL;
+            if ((flags & 1) != 0) {
+                throw new IOException("Encrypted entries are not supported");
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer nameBuffer = centralDirectory.duplicate();
+            ((Buffer) nameBuffer).position(position + 46);
+            nameBuffer.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            entries.add(new Entry(name, method, dosTime, crc, compressedSize, uncompressedSize, localHeaderOffset));
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of zip file");
+            }
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    /**
+     * Get the entries in the order of the central directory.
+     *
+     * @return The unmodifiable list of entries.
+     */
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * Get the position of the compressed data of an entry in the file.
+     *
+     * @param entry The entry.
+     * @return The position.
+     * @throws IOException If the local header could not be read.
+     */
+    public long getDataPosition(Entry entry) throws IOException {
+        ByteBuffer localHeader = read(this.channel, entry.localHeaderOffset, 30);
+        if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header for " + entry.name);
+        }
+        int nameLength = localHeader.getShort(26) & 0xffff;
+        int extraLength = localHeader.getShort(28) & 0xffff;
+        return entry.localHeaderOffset + 30 + nameLength + extraLength;
+    }
+
+    /**
+     * Get the channel of the zip file.
+     *
+     * @return The channel.
+     */
+    public FileChannel getChannel() {
+        return this.channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * An entry in the central directory.
+     */
+    public static class Entry {
+        public final String name;
+        public final int method;
+        public final int dosTime;
+        public final int crc;
+        public final long compressedSize;
+        public final long uncompressedSize;
+        private final long localHeaderOffset;
+
+        Entry(String name, int method, int dosTime, int crc, long compressedSize, long uncompressedSize, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.uncompressedSize = uncompressedSize;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public boolean isDirectory() {
+            return this.name.endsWith("/");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import net.fabricmc.tinyremapper.IMappingProvider;
+import org.apache.maven.execution.MavenSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A cache that is shared by all executions of the plugin in a build session, so
+ * that the modules of a multi-module build do not hash the same files and read
+ * the same mappings again.
+ * <p>
+ * The cache is stored in the session data of the repository session, which is
+ * discarded when the build ends.
+ */
+public class ReactorCache {
+    /**
+     * The key in the session data. Includes the identity of this class so that
+     * another version of the plugin in the same build gets its own cache.
+     */
+    private static final String KEY = ReactorCache.class.getName() + "@" + System.identityHashCode(ReactorCache.class);
+
+    private final Map<String, String> fileHashes = new ConcurrentHashMap<>();
+    private final Map<String, MappingStore> mappingStores = new ConcurrentHashMap<>();
+    private final Map<String, IMappingProvider> tinyMappings = new ConcurrentHashMap<>();
+
+    /**
+     * Get the cache of a build session.
+     *
+     * @param session The session, or null to get a cache that is not shared.
+     * @return The cache.
+     */
+    public static ReactorCache get(@Nullable MavenSession session) {
+        RepositorySystemSession repositorySession = session != null ? session.getRepositorySession() : null;
+        SessionData data = repositorySession != null ? repositorySession.getData() : null;
+        if (data == null) {
+            return new ReactorCache();
+        }
+        while (true) {
+            Object cache = data.get(KEY);
+            if (cache instanceof ReactorCache) {
+                return (ReactorCache) cache;
+            }
+            ReactorCache newCache = new ReactorCache();
+            // Compare and set, as session data may be used by parallel module builds
+            if (data.set(KEY, null, newCache)) {
+                return newCache;
+            }
+        }
+    }
+
+    /**
+     * Get the remembered hashes of files, keyed by the path, size and last
+     * modified time of the file.
+     *
+     * @return The mutable map of hashes.
+     */
+    public Map<String, String> getFileHashes() {
+        return this.fileHashes;
+    }
+
+    /**
+     * Get a compiled mapping store, opening it if no execution in this session has
+     * opened it yet. Stores are immutable, so one store is shared by all modules.
+     *
+     * @param sha1 The SHA-1 hash of the tiny mappings file of the store.
+     * @param opener The function that opens the store.
+     * @return The store.
+     * @throws IOException If the store could not be opened.
+     */
+    public MappingStore getMappingStore(String sha1, Opener opener) throws IOException {
+        try {
+            return this.mappingStores.computeIfAbsent(sha1, k -> {
+                try {
+                    return opener.open();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Get tiny mappings that could not be read through a {@link MappingStore},
+     * reading them if no execution in this session has read them yet. These are
+     * kept as {@link LoadedMappings}, as the provider parses the file every time.
+     *
+     * @param key A key identifying the content of the mappings and the namespaces.
+     * @param reader The function that creates the provider that parses the file.
+     * @return The mappings.
+     */
+    public IMappingProvider getTinyMappings(String key, Supplier<IMappingProvider> reader) {
+        return this.tinyMappings.computeIfAbsent(key, k -> new LoadedMappings(reader.get()));
+    }
+
+    /**
+     * Opens a {@link MappingStore}.
+     */
+    @FunctionalInterface
+    public interface Opener {
+        MappingStore open() throws IOException;
+    }
+}
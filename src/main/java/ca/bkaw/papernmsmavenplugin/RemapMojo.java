@@ -2,7 +2,6 @@ package ca.bkaw.papernmsmavenplugin;
 
 import net.fabricmc.tinyremapper.IMappingProvider;
 import net.fabricmc.tinyremapper.TinyRemapper;
-import net.fabricmc.tinyremapper.TinyUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.resolver.ArtifactNotFoundException;
 import org.apache.maven.artifact.resolver.ArtifactResolutionException;
@@ -11,24 +10,48 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UncheckedIOException;
-import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Mojo(name = "remap", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true)
 public class RemapMojo extends MojoBase {
+    /**
+     * The amount of dependencies to remap at the same time when remapping via the
+     * obfuscated names. Defaults to the amount of available processors.
+     */
+    @Parameter( property = "paperNms.remapThreads" )
+    Integer remapThreads;
+
     private RemappedClasses remappedClasses;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
+        try {
+            this.remap();
+        } finally {
+            this.reportPhases("remap");
+        }
+    }
+
+    private void remap() throws MojoExecutionException, MojoFailureException {
         this.createDevBundleConfiguration();
 
         Path inputPath = this.project.getArtifact().getFile().toPath();
@@ -52,53 +75,66 @@ public class RemapMojo extends MojoBase {
         }
 
         String gameVersion = this.getGameVersionFor(userVersion);
+        this.getPhaseReport().setAttribute("gameVersion", gameVersion);
 
-        Path cacheDirectory = this.getCacheDirectory().resolve(gameVersion);
+        Path cacheDirectory = this.getVersionDirectory(gameVersion);
         Path mappingsPath = cacheDirectory.resolve("mappings.tiny");
         Path missingMappingsPath = Paths.get(mappingsPath + ".missing");
 
         Path mappingsMojangPath = cacheDirectory.resolve("mappings_mojang.tiny");
         Path mappingsSpigotPath = cacheDirectory.resolve("mappings_spigot.tiny");
-
-        if (Files.exists(mappingsMojangPath) != Files.exists(mappingsSpigotPath)) {
-            // One of the files is missing, delete the mappings and initialize again
-            getLog().info("Broken mappings found, running init");
-
-            try {
-                Files.deleteIfExists(mappingsPath);
-                Files.deleteIfExists(mappingsMojangPath);
-                Files.deleteIfExists(mappingsSpigotPath);
-            } catch (IOException exception) {
-                throw new MojoExecutionException("Unable to delete mappings", exception);
-            }
-
-            this.init();
-        }
+        Path mappingsComposedPath = cacheDirectory.resolve("mappings_mojang_spigot.tiny");
 
         String mappingFrom = "mojang";
         String mappingTo = "spigot";
 
         List<Path> classPath = new ArrayList<>();
 
-        for (Object object : this.project.getDependencies()) {
-            Dependency dependency = (Dependency) object;
+        try (PhaseReport.Phase ignored = this.getPhaseReport().start(PhaseName.DEPENDENCY_RESOLUTION)) {
+            for (Object object : this.project.getDependencies()) {
+                Dependency dependency = (Dependency) object;
 
-            Artifact artifact = this.artifactFactory.createArtifactWithClassifier(dependency.getGroupId(), dependency.getArtifactId(),
-                dependency.getVersion(), dependency.getType(), dependency.getClassifier());
+                Artifact artifact = this.artifactFactory.createArtifactWithClassifier(dependency.getGroupId(), dependency.getArtifactId(),
+                    dependency.getVersion(), dependency.getType(), dependency.getClassifier());
 
-            try {
-                this.artifactResolver.resolve(artifact, this.remoteRepositories, this.localRepository);
-            } catch (ArtifactResolutionException | ArtifactNotFoundException e) {
-                getLog().error("Failed to resolve "+ artifact.getGroupId() + ":" + artifact.getArtifactId(), e);
-                continue;
-            }
+                try {
+                    this.artifactResolver.resolve(artifact, this.remoteRepositories, this.localRepository);
+                } catch (ArtifactResolutionException | ArtifactNotFoundException e) {
+                    getLog().error("Failed to resolve "+ artifact.getGroupId() + ":" + artifact.getArtifactId(), e);
+                    continue;
+                }
 
-            classPath.add(artifact.getFile().toPath());
+                classPath.add(artifact.getFile().toPath());
+            }
         }
 
-        if (!Files.exists(mappingsPath) && !Files.exists(missingMappingsPath) && !Files.exists(mappingsMojangPath)) {
-            getLog().info("No mappings found, running init");
-            this.init();
+        // Check the mappings while holding the lock of the version, so that the files
+        // of an init that is running in another module or build are not seen as broken
+        try (VersionLock ignored = VersionLock.acquire(cacheDirectory, getLog())) {
+            if (Files.exists(mappingsMojangPath) != Files.exists(mappingsSpigotPath)) {
+                // One of the files is missing, delete the mappings and initialize again
+                getLog().info("Broken mappings found, running init");
+
+                try {
+                    this.deleteMappings(mappingsPath);
+                    this.deleteMappings(mappingsMojangPath);
+                    this.deleteMappings(mappingsSpigotPath);
+                    this.deleteMappings(mappingsComposedPath);
+                    // Do not let init reuse the broken files from the global cache
+                    Files.deleteIfExists(cacheDirectory.resolve(GlobalCache.MANIFEST_FILE_NAME));
+                } catch (IOException exception) {
+                    throw new MojoExecutionException("Unable to delete mappings", exception);
+                }
+
+                this.init();
+            }
+
+            if (!Files.exists(mappingsPath) && !Files.exists(missingMappingsPath) && !Files.exists(mappingsMojangPath)) {
+                getLog().info("No mappings found, running init");
+                this.init();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to lock the cache folder of " + gameVersion, e);
         }
 
         if (!Files.exists(mappingsPath) && Files.exists(missingMappingsPath)) {
@@ -122,11 +158,8 @@ public class RemapMojo extends MojoBase {
 
         if (!hasMojangMappings) {
             try {
-                BufferedReader bufferedReader = Files.newBufferedReader(mappingsPath);
-                String line = bufferedReader.readLine();
-                bufferedReader.close();
                 // If the dev bundle is used, there are also yarn parameter mappings
-                if (line.contains("mojang+yarn")) {
+                if (this.getMappingNamespaces(mappingsPath).contains("mojang+yarn")) {
                     mappingFrom = "mojang+yarn";
                 }
             } catch (IOException e) {
@@ -170,18 +203,28 @@ public class RemapMojo extends MojoBase {
             }
         });
 
-        if (hasMojangMappings) {
+        if (hasMojangMappings && !Files.exists(mappingsComposedPath)) {
+            // Initialized before composed mappings existed, remap via the obfuscated names
+            getLog().info("Run paper-nms:init again to remap in a single pass.");
             remapDouble(inputPath, mappingsMojangPath, mappingsSpigotPath, classPath);
         } else {
+            if (hasMojangMappings) {
+                // Remap directly from Mojang to Spigot mappings
+                mappingsPath = mappingsComposedPath;
+            }
+
+            // Use the class path indexes instead of the full jars
+            List<Path> indexedClassPath = this.indexClassPath(classPath);
+
             if (Files.isDirectory(inputPath)) {
                 // A directory, we are before the package stage, we need to remap the classes
                 getLog().info("Remapping classes");
-                this.remapClasses(inputPath, mappingsPath, mappingFrom, mappingTo, classPath, true);
+                this.remapClasses(inputPath, mappingsPath, mappingFrom, mappingTo, indexedClassPath, true);
             } else {
                 // A file, we are at the package stage, we need to remap the jar
                 Path outputPath = cacheDirectory.resolve("remapped.jar");
                 getLog().info("Remapping artifact");
-                this.remapArtifact(inputPath, outputPath, mappingsPath, mappingFrom, mappingTo, classPath);
+                this.remapArtifact(inputPath, outputPath, mappingsPath, mappingFrom, mappingTo, indexedClassPath);
             }
         }
 
@@ -203,45 +246,234 @@ public class RemapMojo extends MojoBase {
         // Read information about which classes have already been remapped
         if (this.remappedClasses == null) {
             try {
-                this.remappedClasses = new RemappedClasses(this.getCacheDirectory().resolve(RemappedClasses.FILE_NAME), classesPath);
+                this.remappedClasses = new RemappedClasses(this.getProjectCacheDirectory().resolve(RemappedClasses.FILE_NAME), classesPath);
             } catch (IOException e) {
                 throw new MojoExecutionException("Failed to read remapped classes json.", e);
             }
         }
 
-        // Read the mappings
-        IMappingProvider mappings = TinyUtils.createTinyMappingProvider(mappingsPath, mappingFrom, mappingTo);
-
-        // Create the remapper
-        TinyRemapper remapper = TinyRemapper.newRemapper()
-            .withMappings(mappings)
-            .ignoreConflicts(true)
-            .build();
-
-        // Add the class path
-        remapper.readClassPath(classPath.toArray(new Path[0]));
-
-        // Add input classes
-        remapper.readInputs(classesPath);
+        // When remapping the Mojang mapped classes in a single pass, only the classes
+        // that changed are remapped. The unchanged classes are given to tiny-remapper
+        // as class path, using skeletons of their original Mojang mapped classes.
+        Path originalClassesPath = Paths.get(this.project.getBuild().getDirectory(), "paper-nms", "original-classes");
+        boolean keepOriginals = markRemapping && mappingFrom.startsWith("mojang");
+        Map<Path, byte[]> changedClasses = null;
+        if (keepOriginals) {
+            try {
+                changedClasses = this.findChangedClasses(classesPath, originalClassesPath);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to find changed classes.", e);
+            }
+            if (changedClasses == null) {
+                getLog().info("Original classes are missing, remapping all classes. Run a clean build to remap incrementally again.");
+            } else if (changedClasses.isEmpty()) {
+                getLog().info("All classes are already remapped");
+                return;
+            }
+        }
 
-        // Run the remapper and write classes
-        remapper.apply((name, bytes) -> {
+        // Write remapped classes back to the classes folder
+        Map<Path, byte[]> originalClasses = changedClasses;
+        BiConsumer<String, byte[]> classWriter = (name, bytes) -> {
             try {
                 Path path = classesPath.resolve(name + ".class");
-                if (!this.remappedClasses.isAlreadyRemapped(path)) {
+                byte[] originalBytes = originalClasses != null ? originalClasses.get(path) : null;
+                if (originalBytes == null) {
+                    originalBytes = Files.readAllBytes(path);
+                }
+                if (originalClasses != null || !this.remappedClasses.isAlreadyRemapped(path, originalBytes)) {
+                    if (keepOriginals) {
+                        // Keep a skeleton of the original class for the next incremental remap
+                        Path originalPath = originalClassesPath.resolve(classesPath.relativize(path).toString());
+                        Files.createDirectories(originalPath.getParent());
+                        Files.write(originalPath, ClassPathIndex.strip(originalBytes));
+                    }
+
                     Files.write(path, bytes);
 
                     if (markRemapping) {
-                        this.remappedClasses.markAsRemappedNow(path);
+                        this.remappedClasses.markAsRemapped(path, originalBytes, bytes);
                     }
                 }
             } catch (IOException e) {
                 throw new UncheckedIOException("Failed to write class " + name, e);
             }
-        });
+        };
+
+        if (changedClasses != null) {
+            // Add the class path, including the unchanged classes
+            List<Path> remapClassPath = new ArrayList<>(classPath);
+            try {
+                for (Path path : changedClasses.keySet()) {
+                    Files.deleteIfExists(originalClassesPath.resolve(classesPath.relativize(path).toString()));
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to delete outdated original classes.", e);
+            }
+            if (Files.isDirectory(originalClassesPath)) {
+                remapClassPath.add(originalClassesPath);
+            }
+            List<Path> inputs = new ArrayList<>(changedClasses.keySet());
+            getLog().info("Remapping " + changedClasses.size() + " changed classes");
+
+            // Remap the changed classes
+            TinyRemapper remapper = this.createRemapper(mappingsPath, mappingFrom, mappingTo);
+            this.runRemapper(remapper, remapClassPath, inputs.toArray(new Path[0]), classWriter);
+        } else {
+            // Find the remapped classes that are missing their original class before
+            // the remap below writes the originals of the other classes
+            List<Path> missingOriginals = new ArrayList<>();
+            if (keepOriginals) {
+                try {
+                    missingOriginals = this.findMissingOriginals(classesPath, originalClassesPath);
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Failed to find classes with missing original classes.", e);
+                }
+            }
+
+            // Remap all input classes
+            TinyRemapper remapper = this.createRemapper(mappingsPath, mappingFrom, mappingTo);
+            this.runRemapper(remapper, classPath, new Path[] { classesPath }, classWriter);
+
+            if (!missingOriginals.isEmpty()) {
+                // The Mojang mapped bytes of these classes are gone, so map the remapped
+                // classes back to get skeletons that let the next build remap incrementally
+                getLog().info("Restoring " + missingOriginals.size() + " original classes");
+                TinyRemapper reverseRemapper = this.createRemapper(mappingsPath, mappingTo, mappingFrom);
+                this.runRemapper(reverseRemapper, new ArrayList<>(), missingOriginals.toArray(new Path[0]), (name, bytes) -> {
+                    try {
+                        Path originalPath = originalClassesPath.resolve(name + ".class");
+                        Files.createDirectories(originalPath.getParent());
+                        Files.write(originalPath, ClassPathIndex.strip(bytes));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to write original class " + name, e);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Find the classes that have already been remapped but have no skeleton of
+     * their original class.
+     *
+     * @param classesPath The path of the target/classes folder.
+     * @param originalClassesPath The folder with skeletons of the original classes.
+     * @return The paths of the classes.
+     * @throws IOException If something goes wrong.
+     */
+    private List<Path> findMissingOriginals(Path classesPath, Path originalClassesPath) throws IOException {
+        List<Path> classFiles;
+        try (Stream<Path> stream = Files.walk(classesPath)) {
+            classFiles = stream
+                .filter(path -> path.getFileName().toString().endsWith(".class") && Files.isRegularFile(path))
+                .collect(Collectors.toList());
+        }
+        List<Path> missingOriginals = new ArrayList<>();
+        for (Path path : classFiles) {
+            if (!Files.exists(originalClassesPath.resolve(classesPath.relativize(path).toString()))
+                && this.remappedClasses.isAlreadyRemapped(path, Files.readAllBytes(path))) {
+                missingOriginals.add(path);
+            }
+        }
+        return missingOriginals;
+    }
+
+    /**
+     * Read the class path and inputs into tiny-remapper and write the remapped
+     * classes, measuring each phase.
+     *
+     * @param remapper The remapper.
+     * @param classPath The class path.
+     * @param inputs The input files or folders.
+     * @param classWriter The consumer to write the remapped classes with.
+     */
+    private void runRemapper(TinyRemapper remapper, List<Path> classPath, Path[] inputs, BiConsumer<String, byte[]> classWriter) {
+        // Add the class path
+        try (PhaseReport.Phase phase = this.getPhaseReport().start(PhaseName.READ_CLASS_PATH)) {
+            for (Path path : classPath) {
+                phase.addFileRead(path);
+            }
+            remapper.readClassPath(classPath.toArray(new Path[0]));
+        }
+
+        // Add input classes
+        try (PhaseReport.Phase phase = this.getPhaseReport().start(PhaseName.READ_INPUTS)) {
+            for (Path path : inputs) {
+                phase.addFileRead(path);
+            }
+            remapper.readInputs(inputs);
+        }
+
+        // Run the remapper and write classes
+        try (PhaseReport.Phase phase = this.getPhaseReport().start(PhaseName.APPLY)) {
+            remapper.apply((name, bytes) -> {
+                phase.addClasses(1);
+                phase.addBytesWritten(bytes.length);
+                classWriter.accept(name, bytes);
+            });
+
+            // Finish up tiny-remapper
+            remapper.finish();
+        }
+    }
+
+    private TinyRemapper createRemapper(Path mappingsPath, String mappingFrom, String mappingTo) {
+        // Read the mappings
+        IMappingProvider mappings = this.readMappings(mappingsPath, mappingFrom, mappingTo);
+
+        // Create the remapper
+        try (PhaseReport.Phase ignored = this.getPhaseReport().start(PhaseName.MAPPING_LOAD)) {
+            return TinyRemapper.newRemapper()
+                .withMappings(mappings)
+                .ignoreConflicts(true)
+                .build();
+        }
+    }
+
+    /**
+     * Find the classes that have not been remapped yet, and remove the original
+     * classes of classes that no longer exist.
+     *
+     * @param classesPath The path of the target/classes folder.
+     * @param originalClassesPath The folder with skeletons of the original classes.
+     * @return The changed classes and their content, or null if the original class
+     * of an unchanged class is missing so that all classes have to be remapped.
+     * @throws IOException If something goes wrong.
+     */
+    @Nullable
+    private Map<Path, byte[]> findChangedClasses(Path classesPath, Path originalClassesPath) throws IOException {
+        Map<Path, byte[]> changedClasses = new HashMap<>();
+        boolean missingOriginal = false;
+
+        List<Path> classFiles;
+        try (Stream<Path> stream = Files.walk(classesPath)) {
+            classFiles = stream
+                .filter(path -> path.getFileName().toString().endsWith(".class") && Files.isRegularFile(path))
+                .collect(Collectors.toList());
+        }
+        for (Path path : classFiles) {
+            byte[] bytes = Files.readAllBytes(path);
+            if (!this.remappedClasses.isAlreadyRemapped(path, bytes)) {
+                changedClasses.put(path, bytes);
+            } else if (!Files.exists(originalClassesPath.resolve(classesPath.relativize(path).toString()))) {
+                missingOriginal = true;
+            }
+        }
+
+        if (Files.isDirectory(originalClassesPath)) {
+            List<Path> originalFiles;
+            try (Stream<Path> stream = Files.walk(originalClassesPath)) {
+                originalFiles = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            for (Path originalPath : originalFiles) {
+                if (!Files.exists(classesPath.resolve(originalClassesPath.relativize(originalPath).toString()))) {
+                    Files.delete(originalPath);
+                }
+            }
+        }
 
-        // Finish up tiny-remapper
-        remapper.finish();
+        return missingOriginal ? null : changedClasses;
     }
 
     public void remapArtifact(Path artifactPath, Path outputPath, Path mappingsPath, String mappingFrom, String mappingTo, List<Path> classPath) throws MojoExecutionException {
@@ -253,7 +485,7 @@ public class RemapMojo extends MojoBase {
 
         try {
             this.mapJar(artifactPath, outputPath, mappingsPath, mappingFrom, mappingTo, classPath.toArray(new Path[0]));
-        } catch (IOException | URISyntaxException e) {
+        } catch (IOException e) {
             throw new MojoExecutionException("Failed to remap artifact", e);
         }
 
@@ -267,58 +499,102 @@ public class RemapMojo extends MojoBase {
     }
 
     public void remapDouble(Path artifactPath, Path mappingsMojangPath, Path mappingsSpigotPath, List<Path> classPath) throws MojoExecutionException {
+        // The dependencies themselves are remapped below, so only use the indexes
+        // where the dependencies are used as class path
+        List<Path> indexedClassPath = this.indexClassPath(classPath);
+
         // Map from Mojang to obfuscated
         if (Files.isDirectory(artifactPath)) {
             getLog().info("Remapping classes to obfuscated form");
-            this.remapClasses(artifactPath, mappingsMojangPath, "mojang", "obfuscated", classPath, false);
+            this.remapClasses(artifactPath, mappingsMojangPath, "mojang", "obfuscated", indexedClassPath, false);
         } else {
-            Path outputPath = getCacheDirectory().resolve("remapped.jar");
+            Path outputPath = getProjectCacheDirectory().resolve("remapped.jar");
             getLog().info("Remapping artifact to obfuscated form");
-            this.remapArtifact(artifactPath, outputPath, mappingsMojangPath, "mojang", "obfuscated", classPath);
+            this.remapArtifact(artifactPath, outputPath, mappingsMojangPath, "mojang", "obfuscated", indexedClassPath);
         }
 
         getLog().info("Remapping dependencies to obfuscated form");
 
+        // Remapped dependencies are cached by the hash of the dependency and the
+        // mappings, so that only new or changed dependencies have to be remapped
+        Path obfuscatedDirectory = this.getCacheDirectory().resolve("obfuscated");
+        String mappingsSha1;
+        try {
+            Files.createDirectories(obfuscatedDirectory);
+            mappingsSha1 = this.sha1(mappingsMojangPath);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to prepare the remapped dependency cache", e);
+        }
+
+        // All dependencies share the parsed mappings and the class path
+        IMappingProvider mappings = this.readMappings(mappingsMojangPath, "mojang", "obfuscated");
+        Path[] sharedClassPath = indexedClassPath.toArray(new Path[indexedClassPath.size() + 1]);
+        sharedClassPath[indexedClassPath.size()] = artifactPath;
+
+        int threads = this.remapThreads != null ? Math.max(1, this.remapThreads) : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, classPath.size())));
+
         List<Path> newClassPath = new ArrayList<>(classPath.size());
+        List<Future<?>> futures = new ArrayList<>();
 
-        // Keep count to avoid accidentally overwriting dependencies
-        int count = 0;
+        try {
+            // Map dependencies from Mojang to obfuscated to gain a correct classpath for the second mapping
+            for (int i = 0; i < classPath.size(); i++) {
+                Path path = classPath.get(i);
+
+                Path outputPath;
+                try {
+                    outputPath = obfuscatedDirectory.resolve(this.sha1(path) + "-" + mappingsSha1 + ".jar");
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Failed to hash dependency " + path.getFileName(), e);
+                }
+                newClassPath.add(outputPath);
 
-        // Map dependencies from Mojang to obfuscated to gain a correct classpath for the second mapping
-        for (Path path : classPath) {
-            List<Path> tempClassPath = new ArrayList<>(classPath);
-            tempClassPath.remove(path);
-            tempClassPath.add(artifactPath);
+                if (Files.exists(outputPath)) {
+                    CacheCleaner.markUsed(outputPath);
+                    continue;
+                }
 
-            Path outputPath = path.getParent().resolve("remapped_dependency_" + count + ".jar");
+                // The class path without the dependency itself
+                Path[] tempClassPath = new Path[sharedClassPath.length - 1];
+                System.arraycopy(sharedClassPath, 0, tempClassPath, 0, i);
+                System.arraycopy(sharedClassPath, i + 1, tempClassPath, i, sharedClassPath.length - i - 1);
+
+                // The dependencies are already remapped in parallel, so each jar is
+                // compressed on its own thread
+                futures.add(executor.submit(() -> {
+                    AtomicFiles.write(outputPath, tempPath -> this.mapJar(path, tempPath, mappings, 1, tempClassPath));
+                    return null;
+                }));
+            }
 
-            try {
-                this.mapJar(path, outputPath, mappingsMojangPath, "mojang", "obfuscated", tempClassPath.toArray(new Path[0]));
-            } catch (IOException | URISyntaxException exception) {
-                throw new MojoExecutionException("Failed to remap dependency", exception);
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new MojoExecutionException("Failed to remap dependency", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while remapping dependencies", e);
+                }
             }
+        } finally {
+            executor.shutdownNow();
+        }
 
-            newClassPath.add(outputPath);
+        this.deleteUnusedCacheEntries(obfuscatedDirectory);
 
-            count++;
-        }
+        // The remapped dependencies are only used as class path from here
+        newClassPath = this.indexClassPath(newClassPath);
 
         // Map from obfuscated to Spigot
         if (Files.isDirectory(artifactPath)) {
             getLog().info("Remapping classes to Spigot mappings");
             this.remapClasses(artifactPath, mappingsSpigotPath, "obfuscated", "spigot", newClassPath, true);
         } else {
-            Path outputPath = getCacheDirectory().resolve("remapped_2.jar");
+            Path outputPath = getProjectCacheDirectory().resolve("remapped_2.jar");
             getLog().info("Remapping artifact to Spigot mappings");
             this.remapArtifact(artifactPath, outputPath, mappingsSpigotPath, "obfuscated", "spigot", newClassPath);
         }
-
-        for (Path path : newClassPath) {
-            try {
-                Files.delete(path);
-            } catch (IOException exception) {
-                throw new MojoExecutionException("Unable to delete remapped dependency", exception);
-            }
-        }
     }
 }
@@ -5,20 +5,27 @@ import org.json.JSONTokener;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An object that keeps track of the class files that have already been remapped.
+ * <p>
+ * For every remapped class the SHA-1 hash of the original class file and of the
+ * remapped class file are stored. A class file is already remapped when its
+ * content is exactly the remapped content, so timestamps do not matter.
  */
 public class RemappedClasses {
     public static final String FILE_NAME = "classes.json";
 
     private final Path jsonFile;
     private final Path classesFolder;
-    private final Map<Path, Long> lastModifiedTimes = new HashMap<>();
+    private final Map<Path, ClassHashes> hashes = new ConcurrentHashMap<>();
+    private final Map<Path, Long> legacyLastModifiedTimes = new HashMap<>();
 
     /**
      * Read the data.
@@ -31,17 +38,31 @@ public class RemappedClasses {
         this.jsonFile = jsonFile;
         this.classesFolder = classesFolder;
         if (Files.exists(jsonFile)) {
-            JSONObject config = new JSONObject(new JSONTokener(Files.newInputStream(jsonFile)));
+            JSONObject config;
+            try (InputStream stream = Files.newInputStream(jsonFile)) {
+                config = new JSONObject(new JSONTokener(stream));
+            }
             for (String key : config.keySet()) {
                 Path path = classesFolder.resolve(key);
-                long lastModifiedTime = config.getLong(key);
-                this.lastModifiedTimes.put(path, lastModifiedTime);
+                JSONObject entry = config.optJSONObject(key);
+                if (entry != null) {
+                    this.hashes.put(path, new ClassHashes(entry.getString("input"), entry.getString("output")));
+                } else {
+                    // Written by an older version that used the last modified time
+                    this.legacyLastModifiedTimes.put(path, config.getLong(key));
+                }
             }
         }
     }
 
-    private long getLastModifiedTime(Path path) throws IOException {
-        return Files.getLastModifiedTime(path).toMillis();
+    /**
+     * Calculate the SHA-1 hash of a class file.
+     *
+     * @param classBytes The content of the class file.
+     * @return The hash as a hex string.
+     */
+    public static String hash(byte[] classBytes) {
+        return Hashes.sha1(classBytes);
     }
 
     /**
@@ -49,41 +70,78 @@ public class RemappedClasses {
      *
      * @param classFilePath The class file.
      * @return Whether already remapped.
-     * @throws IOException If the last modified time failed to be read.
+     * @throws IOException If the class file failed to be read.
      */
     public boolean isAlreadyRemapped(Path classFilePath) throws IOException {
-        Long lastRemapTime = this.lastModifiedTimes.get(classFilePath);
-        if (lastRemapTime == null) {
-            return false;
+        return this.isAlreadyRemapped(classFilePath, Files.readAllBytes(classFilePath));
+    }
+
+    /**
+     * Check if the specified class file has already been remapped.
+     *
+     * @param classFilePath The class file.
+     * @param classBytes The current content of the class file.
+     * @return Whether already remapped.
+     * @throws IOException If the last modified time failed to be read.
+     */
+    public boolean isAlreadyRemapped(Path classFilePath, byte[] classBytes) throws IOException {
+        ClassHashes hashes = this.hashes.get(classFilePath);
+        if (hashes != null) {
+            return hashes.output.equals(hash(classBytes));
+        }
+        Long lastRemapTime = this.legacyLastModifiedTimes.get(classFilePath);
+        if (lastRemapTime != null && lastRemapTime == Files.getLastModifiedTime(classFilePath).toMillis()) {
+            // Remapped by an older version and unchanged since, keep track of it by content from now on
+            String hash = hash(classBytes);
+            this.hashes.put(classFilePath, new ClassHashes(hash, hash));
+            return true;
         }
-        long lastModified = this.getLastModifiedTime(classFilePath);
-        return lastModified == lastRemapTime;
+        return false;
     }
 
     /**
-     * Mark a class as having been remapped right now.
+     * Mark a class as having been remapped.
      *
      * @param classFilePath The path of the class file that was remapped.
-     * @throws IOException If the last modified time fails to be read.
+     * @param originalBytes The content of the class file before remapping.
+     * @param remappedBytes The content of the class file after remapping.
      */
-    public void markAsRemappedNow(Path classFilePath) throws IOException {
-        this.lastModifiedTimes.put(classFilePath, this.getLastModifiedTime(classFilePath));
+    public void markAsRemapped(Path classFilePath, byte[] originalBytes, byte[] remappedBytes) {
+        this.hashes.put(classFilePath, new ClassHashes(hash(originalBytes), hash(remappedBytes)));
     }
 
     /**
      * Save the data.
+     * <p>
+     * Classes that no longer exist are forgotten.
      *
      * @throws IOException If the data could not be written.
      */
     public void save() throws IOException {
         JSONObject json = new JSONObject();
-        for (Map.Entry<Path, Long> entry : this.lastModifiedTimes.entrySet()) {
+        for (Map.Entry<Path, ClassHashes> entry : this.hashes.entrySet()) {
             Path path = entry.getKey();
+            if (!Files.exists(path)) {
+                continue;
+            }
             Path relativePath = this.classesFolder.relativize(path);
-            json.put(relativePath.toString(), entry.getValue().longValue());
+            JSONObject hashes = new JSONObject();
+            hashes.put("input", entry.getValue().input);
+            hashes.put("output", entry.getValue().output);
+            json.put(relativePath.toString(), hashes);
         }
         try (BufferedWriter writer = Files.newBufferedWriter(this.jsonFile)) {
             json.write(writer);
         }
     }
+
+    private static class ClassHashes {
+        private final String input;
+        private final String output;
+
+        private ClassHashes(String input, String output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
 }
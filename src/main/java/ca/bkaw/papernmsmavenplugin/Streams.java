@@ -0,0 +1,29 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reading of streams, as {@code InputStream.readAllBytes()} requires Java 9.
+ */
+public final class Streams {
+    private Streams() {}
+
+    /**
+     * Read the rest of a stream. The stream is not closed.
+     *
+     * @param stream The stream.
+     * @return The bytes that were read.
+     * @throws IOException If the stream could not be read.
+     */
+    public static byte[] readAllBytes(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(stream.available(), 8192));
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,173 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A graph of named tasks that run as soon as the tasks they depend on have
+ * finished, so that independent tasks run at the same time.
+ * <p>
+ * If a task fails, the tasks that depend on it are not run. The other tasks
+ * still finish before {@link #run(Log)} throws the failure, so that no task is
+ * left writing files after init has returned.
+ */
+public class TaskGraph {
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    private final List<Closeable> closeables = new ArrayList<>();
+
+    /**
+     * Add a task.
+     *
+     * @param name The name of the task, shown in the timings.
+     * @param action The action to run.
+     * @param dependencies The names of the tasks that must finish before this task runs.
+     * @throws IllegalArgumentException If a task with the name already exists or a
+     * dependency does not exist.
+     */
+    public void add(String name, Action action, String... dependencies) {
+        if (this.tasks.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate task " + name);
+        }
+        List<Task> dependencyTasks = new ArrayList<>(dependencies.length);
+        for (String dependency : dependencies) {
+            Task task = this.tasks.get(dependency);
+            if (task == null) {
+                throw new IllegalArgumentException("Unknown dependency " + dependency + " of task " + name);
+            }
+            dependencyTasks.add(task);
+        }
+        this.tasks.put(name, new Task(name, action, dependencyTasks));
+    }
+
+    /**
+     * Check whether a task exists.
+     *
+     * @param name The name of the task.
+     * @return Whether the task exists.
+     */
+    public boolean has(String name) {
+        return this.tasks.containsKey(name);
+    }
+
+    /**
+     * Close a resource once the graph has finished running.
+     *
+     * @param closeable The resource used by the tasks.
+     */
+    public void closeAfterRun(Closeable closeable) {
+        this.closeables.add(closeable);
+    }
+
+    /**
+     * Run all tasks and log how long each task took.
+     * <p>
+     * Since dependencies must be added before the tasks that depend on them, the
+     * graph can not contain cycles.
+     *
+     * @param log The log to report the timings to.
+     * @throws MojoExecutionException If a task failed.
+     * @throws MojoFailureException If a task failed.
+     */
+    public void run(Log log) throws MojoExecutionException, MojoFailureException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.tasks.size()));
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>(this.tasks.size());
+            for (Task task : this.tasks.values()) {
+                CompletableFuture<?>[] dependencies = new CompletableFuture<?>[task.dependencies.size()];
+                for (int i = 0; i < dependencies.length; i++) {
+                    dependencies[i] = task.dependencies.get(i).future;
+                }
+                task.future = CompletableFuture.allOf(dependencies).thenRunAsync(task::execute, executor);
+                futures.add(task.future);
+            }
+
+            // Wait for every task to finish or be skipped, then report the first failure
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException ignored) {
+                // Reported below
+            }
+        } finally {
+            executor.shutdownNow();
+            for (Closeable closeable : this.closeables) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close resource used by init", e);
+                }
+            }
+        }
+
+        StringBuilder timings = new StringBuilder();
+        Throwable failure = null;
+        for (Task task : this.tasks.values()) {
+            if (task.failure != null && failure == null) {
+                failure = task.failure;
+            }
+            if (task.nanos >= 0) {
+                timings.append(timings.length() == 0 ? "" : ", ").append(task.name).append(' ').append(task.nanos / 1000000).append(" ms");
+            }
+        }
+        log.info("Init tasks finished in " + (System.nanoTime() - start) / 1000000 + " ms (" + timings + ")");
+
+        if (failure instanceof MojoExecutionException) {
+            throw (MojoExecutionException) failure;
+        } else if (failure instanceof MojoFailureException) {
+            throw (MojoFailureException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new MojoExecutionException("Init task failed", failure);
+        }
+    }
+
+    /**
+     * The work of a task.
+     */
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    private static class Task {
+        private final String name;
+        private final Action action;
+        private final List<Task> dependencies;
+        private CompletableFuture<Void> future;
+        private volatile Throwable failure;
+        private volatile long nanos = -1;
+
+        private Task(String name, Action action, List<Task> dependencies) {
+            this.name = name;
+            this.action = action;
+            this.dependencies = dependencies;
+        }
+
+        private void execute() {
+            long start = System.nanoTime();
+            try {
+                this.action.run();
+            } catch (Exception | Error e) {
+                this.failure = e;
+                throw new CompletionException(e);
+            } finally {
+                this.nanos = System.nanoTime() - start;
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Mappings in the tiny v2 format read into memory.
+ * <p>
+ * Names are stored per namespace in the same order as the namespaces in the
+ * header. A name that is missing for a namespace is stored as null. Descriptors
+ * are always in the first namespace, like in the file.
+ */
+public class TinyMappings {
+    private final List<String> namespaces;
+    private final List<ClassEntry> classes = new ArrayList<>();
+
+    public TinyMappings(List<String> namespaces) {
+        this.namespaces = Collections.unmodifiableList(new ArrayList<>(namespaces));
+    }
+
+    /**
+     * Read mappings in the tiny v2 format from a file.
+     *
+     * @param path The path to the file.
+     * @return The mappings.
+     * @throws IOException If the file could not be read or is not tiny v2.
+     */
+    public static TinyMappings read(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Read mappings in the tiny v2 format.
+     *
+     * @param reader The reader to read from. Will not be closed.
+     * @return The mappings.
+     * @throws IOException If the mappings could not be read or are not tiny v2.
+     */
+    public static TinyMappings read(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IOException("Empty mappings file");
+        }
+        String[] headerParts = header.split("\t", -1);
+        if (headerParts.length < 5 || !"tiny".equals(headerParts[0]) || !"2".equals(headerParts[1])) {
+            throw new IOException("Not a tiny v2 mappings file");
+        }
+        TinyMappings mappings = new TinyMappings(Arrays.asList(headerParts).subList(3, headerParts.length));
+        int namespaceCount = mappings.namespaces.size();
+
+        boolean escapedNames = false;
+        ClassEntry currentClass = null;
+        MemberEntry currentMethod = null;
+
+        String line;
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty()) {
+                continue;
+            }
+            int indent = 0;
+            while (indent < line.length() && line.charAt(indent) == '\t') {
+                indent++;
+            }
+            String[] parts = line.substring(indent).split("\t", -1);
+            String kind = parts[0];
+
+            if (currentClass == null && indent == 1) {
+                // A property in the header
+                if ("escaped-names".equals(kind)) {
+                    escapedNames = true;
+                }
+                continue;
+            }
+
+            if (indent == 0 && "c".equals(kind)) {
+                currentClass = new ClassEntry(readNames(parts, 1, namespaceCount, escapedNames, lineNumber));
+                currentMethod = null;
+                mappings.classes.add(currentClass);
+            } else if (indent == 1 && currentClass != null && ("f".equals(kind) || "m".equals(kind))) {
+                checkLength(parts, 2 + namespaceCount, lineNumber);
+                MemberEntry member = new MemberEntry(unescape(parts[1], escapedNames), readNames(parts, 2, namespaceCount, escapedNames, lineNumber));
+                if ("f".equals(kind)) {
+                    currentClass.fields.add(member);
+                    currentMethod = null;
+                } else {
+                    currentClass.methods.add(member);
+                    currentMethod = member;
+                }
+            } else if (indent == 2 && currentMethod != null && "p".equals(kind)) {
+                checkLength(parts, 2 + namespaceCount, lineNumber);
+                int lvIndex = parseInt(parts[1], lineNumber);
+                currentMethod.parameters.add(new ParameterEntry(lvIndex, readNames(parts, 2, namespaceCount, escapedNames, lineNumber)));
+            } else if (indent == 2 && currentMethod != null && "v".equals(kind)) {
+                checkLength(parts, 4 + namespaceCount, lineNumber);
+                int lvIndex = parseInt(parts[1], lineNumber);
+                int startOpIdx = parseInt(parts[2], lineNumber);
+                int lvtRowIndex = parts[3].isEmpty() ? -1 : parseInt(parts[3], lineNumber);
+                currentMethod.variables.add(new VariableEntry(lvIndex, startOpIdx, lvtRowIndex, readNames(parts, 4, namespaceCount, escapedNames, lineNumber)));
+            }
+            // Anything else is a comment or something we do not need
+        }
+        return mappings;
+    }
+
+    private static String[] readNames(String[] parts, int offset, int namespaceCount, boolean escapedNames, int lineNumber) throws IOException {
+        checkLength(parts, offset + namespaceCount, lineNumber);
+        String[] names = new String[namespaceCount];
+        for (int i = 0; i < namespaceCount; i++) {
+            String name = parts[offset + i];
+            names[i] = name.isEmpty() ? null : unescape(name, escapedNames);
+        }
+        return names;
+    }
+
+    private static void checkLength(String[] parts, int length, int lineNumber) throws IOException {
+        if (parts.length < length) {
+            throw new IOException("Too few columns on line " + lineNumber + " of the mappings");
+        }
+    }
+
+    private static int parseInt(String value, int lineNumber) throws IOException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number on line " + lineNumber + " of the mappings", e);
+        }
+    }
+
+    private static String unescape(String value, boolean escapedNames) {
+        if (!escapedNames || value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 'n': result.append('\n'); break;
+                    case 'r': result.append('\r'); break;
+                    case 't': result.append('\t'); break;
+                    case '0': result.append('\0'); break;
+                    default: result.append(next); break;
+                }
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Write the mappings to a file in the tiny v2 format.
+     *
+     * @param path The path to write to.
+     * @throws IOException If the file could not be written.
+     */
+    public void write(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+            writer.write("tiny\t2\t0");
+            for (String namespace : this.namespaces) {
+                writer.write('\t');
+                writer.write(namespace);
+            }
+            writer.write('\n');
+            for (ClassEntry classEntry : this.classes) {
+                writer.write("c");
+                writeNames(writer, classEntry.names);
+                for (MemberEntry field : classEntry.fields) {
+                    writer.write("\tf\t");
+                    writer.write(field.desc);
+                    writeNames(writer, field.names);
+                }
+                for (MemberEntry method : classEntry.methods) {
+                    writer.write("\tm\t");
+                    writer.write(method.desc);
+                    writeNames(writer, method.names);
+                    for (ParameterEntry parameter : method.parameters) {
+                        writer.write("\t\tp\t");
+                        writer.write(String.valueOf(parameter.lvIndex));
+                        writeNames(writer, parameter.names);
+                    }
+                    for (VariableEntry variable : method.variables) {
+                        writer.write("\t\tv\t");
+                        writer.write(variable.lvIndex + "\t" + variable.startOpIdx + "\t" + (variable.lvtRowIndex < 0 ? "" : String.valueOf(variable.lvtRowIndex)));
+                        writeNames(writer, variable.names);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeNames(BufferedWriter writer, String[] names) throws IOException {
+        for (String name : names) {
+            writer.write('\t');
+            if (name != null) {
+                writer.write(name);
+            }
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Get the namespaces of the mappings, in the order they appear in the file.
+     *
+     * @return The unmodifiable list of namespaces.
+     */
+    public List<String> getNamespaces() {
+        return this.namespaces;
+    }
+
+    /**
+     * Get the index of a namespace.
+     *
+     * @param namespace The namespace.
+     * @return The index, or -1 if the mappings do not have the namespace.
+     */
+    public int getNamespaceId(String namespace) {
+        return this.namespaces.indexOf(namespace);
+    }
+
+    /**
+     * Get the mutable list of classes.
+     *
+     * @return The classes.
+     */
+    public List<ClassEntry> getClasses() {
+        return this.classes;
+    }
+
+    /**
+     * A class and the mappings of its members.
+     */
+    public static class ClassEntry {
+        public final String[] names;
+        public final List<MemberEntry> fields = new ArrayList<>();
+        public final List<MemberEntry> methods = new ArrayList<>();
+
+        public ClassEntry(String[] names) {
+            this.names = names;
+        }
+
+        @Nullable
+        public String getName(int namespace) {
+            return this.names[namespace];
+        }
+    }
+
+    /**
+     * A field or a method.
+     */
+    public static class MemberEntry {
+        public final String desc;
+        public final String[] names;
+        public final List<ParameterEntry> parameters = new ArrayList<>();
+        public final List<VariableEntry> variables = new ArrayList<>();
+
+        public MemberEntry(String desc, String[] names) {
+            this.desc = desc;
+            this.names = names;
+        }
+
+        @Nullable
+        public String getName(int namespace) {
+            return this.names[namespace];
+        }
+    }
+
+    /**
+     * A method parameter.
+     */
+    public static class ParameterEntry {
+        public final int lvIndex;
+        public final String[] names;
+
+        public ParameterEntry(int lvIndex, String[] names) {
+            this.lvIndex = lvIndex;
+            this.names = names;
+        }
+    }
+
+    /**
+     * A local variable in a method.
+     */
+    public static class VariableEntry {
+        public final int lvIndex;
+        public final int startOpIdx;
+        public final int lvtRowIndex;
+        public final String[] names;
+
+        public VariableEntry(int lvIndex, int startOpIdx, int lvtRowIndex, String[] names) {
+            this.lvIndex = lvIndex;
+            this.startOpIdx = startOpIdx;
+            this.lvtRowIndex = lvtRowIndex;
+            this.names = names;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A cache of the versions of an artifact that are available in remote
+ * repositories, used to resolve version ranges.
+ * <p>
+ * Within the time to live, the cached list is used without any network access.
+ * After that, the {@code maven-metadata.xml} of each repository is requested
+ * with the ETag and Last-Modified time of the last response, so that unchanged
+ * metadata is not downloaded again. Repositories that can not be requested
+ * directly, like repositories that need authentication, are instead queried
+ * through Maven on every refresh.
+ * <p>
+ * If a refresh fails, an expired list is used instead of failing the build. When
+ * the downloader is offline, the cached list is used regardless of its age, or
+ * only the versions in the local repository if nothing is cached.
+ */
+public class VersionListCache {
+    private final Path directory;
+    private final Downloader downloader;
+    private final Log log;
+    private final long timeToLive;
+
+    /**
+     * Create a cache.
+     *
+     * @param directory The folder to store the lists in.
+     * @param downloader The downloader to request metadata with.
+     * @param log The log to report to.
+     * @param timeToLive The amount of milliseconds to use a list without checking the repositories.
+     */
+    public VersionListCache(Path directory, Downloader downloader, Log log, long timeToLive) {
+        this.directory = directory;
+        this.downloader = downloader;
+        this.log = log;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Get the available versions of an artifact.
+     *
+     * @param groupId The group id of the artifact.
+     * @param artifactId The artifact id of the artifact.
+     * @param repositories The repositories to look in.
+     * @param maven The lookup to use for repositories that can not be requested directly.
+     * @return The available versions.
+     * @throws IOException If the versions could not be retrieved and nothing is cached.
+     */
+    public List<String> getVersions(String groupId, String artifactId, List<ArtifactRepository> repositories, MavenLookup maven) throws IOException {
+        Path path = this.directory.resolve(groupId).resolve(artifactId + ".json");
+        JSONObject cached = read(path);
+        if (cached != null && (this.downloader.isOffline() || System.currentTimeMillis() - cached.optLong("checked") < this.timeToLive)) {
+            return toList(cached.getJSONArray("versions"));
+        }
+        if (this.downloader.isOffline()) {
+            try {
+                return maven.retrieve(new ArrayList<>());
+            } catch (Exception e) {
+                throw new IOException("Failed to retrieve the versions of " + artifactId + " in the local repository", e);
+            }
+        }
+
+        JSONObject refreshed;
+        try {
+            refreshed = this.refresh(groupId, artifactId, repositories, maven, cached);
+        } catch (IOException e) {
+            if (cached == null) {
+                throw e;
+            }
+            this.log.warn("Failed to check for new versions of " + artifactId + " (" + e.getMessage() + "), using the versions found earlier");
+            return toList(cached.getJSONArray("versions"));
+        }
+
+        try {
+            write(path, refreshed);
+        } catch (IOException e) {
+            this.log.warn("Failed to cache the versions of " + artifactId, e);
+        }
+        return toList(refreshed.getJSONArray("versions"));
+    }
+
+    private JSONObject refresh(String groupId, String artifactId, List<ArtifactRepository> repositories, MavenLookup maven, @Nullable JSONObject cached) throws IOException {
+        JSONObject cachedRepositories = cached != null ? cached.optJSONObject("repositories") : null;
+        JSONObject newRepositories = new JSONObject();
+        Set<String> versions = new LinkedHashSet<>();
+        List<ArtifactRepository> otherRepositories = new ArrayList<>();
+
+        for (ArtifactRepository repository : repositories) {
+            String url = repository.getUrl();
+            if (url == null || !(url.startsWith("https://") || url.startsWith("http://")) || repository.getAuthentication() != null) {
+                otherRepositories.add(repository);
+                continue;
+            }
+            JSONObject previous = cachedRepositories != null ? cachedRepositories.optJSONObject(url) : null;
+            String metadataUrl = (url.endsWith("/") ? url : url + "/") + groupId.replace('.', '/') + "/" + artifactId + "/maven-metadata.xml";
+
+            Downloader.Response response = this.downloader.fetchIfChanged(metadataUrl,
+                previous != null ? previous.optString("etag", null) : null,
+                previous != null ? previous.optString("lastModified", null) : null);
+
+            JSONObject entry = new JSONObject();
+            if (response.status == HttpURLConnection.HTTP_NOT_MODIFIED && previous != null) {
+                entry = previous;
+            } else if (response.content != null) {
+                entry.put("versions", new JSONArray(parseVersions(response.content, metadataUrl)));
+                if (response.etag != null) {
+                    entry.put("etag", response.etag);
+                }
+                if (response.lastModified != null) {
+                    entry.put("lastModified", response.lastModified);
+                }
+            } else {
+                // Not in this repository
+                entry.put("versions", new JSONArray());
+            }
+            newRepositories.put(url, entry);
+            versions.addAll(toList(entry.getJSONArray("versions")));
+        }
+
+        // Also called without remote repositories, as Maven includes the versions in
+        // the local repository
+        try {
+            versions.addAll(maven.retrieve(otherRepositories));
+        } catch (Exception e) {
+            throw new IOException("Failed to retrieve available versions of " + artifactId, e);
+        }
+
+        JSONObject refreshed = new JSONObject();
+        refreshed.put("checked", System.currentTimeMillis());
+        refreshed.put("versions", new JSONArray(versions));
+        refreshed.put("repositories", newRepositories);
+        return refreshed;
+    }
+
+    private static List<String> parseVersions(byte[] content, String url) throws IOException {
+        Metadata metadata;
+        try (InputStream in = new ByteArrayInputStream(content)) {
+            metadata = new MetadataXpp3Reader().read(in, false);
+        } catch (XmlPullParserException e) {
+            throw new IOException("Invalid metadata at " + url, e);
+        }
+        if (metadata.getVersioning() == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(metadata.getVersioning().getVersions());
+    }
+
+    @Nullable
+    private static JSONObject read(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            JSONObject json = new JSONObject(new JSONTokener(in));
+            // Check that the versions are present
+            json.getJSONArray("versions");
+            return json;
+        } catch (IOException | JSONException e) {
+            return null;
+        }
+    }
+
+    private static void write(Path path, JSONObject json) throws IOException {
+        Files.createDirectories(path.getParent());
+        AtomicFiles.write(path, json.toString(2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> toList(JSONArray array) {
+        List<String> list = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            list.add(array.getString(i));
+        }
+        return list;
+    }
+
+    /**
+     * Retrieves versions through Maven.
+     */
+    @FunctionalInterface
+    public interface MavenLookup {
+        /**
+         * Retrieve the available versions in the local repository and the
+         * specified remote repositories.
+         *
+         * @param repositories The remote repositories to look in.
+         * @return The versions.
+         * @throws Exception If the versions could not be retrieved.
+         */
+        List<String> retrieve(List<ArtifactRepository> repositories) throws Exception;
+    }
+}
@@ -0,0 +1,177 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A lock on the cache folder of a game version, held while the version is being
+ * initialized.
+ * <p>
+ * The lock is held by one thread in the whole machine at a time. Threads of the
+ * same build are coordinated by an in-memory lock, and other processes by a lock
+ * on a file in the folder. The lock is reentrant, so a thread holding it may
+ * acquire it again.
+ * <p>
+ * When initialization finishes, the time and what was initialized are written to
+ * a marker file, so that executions that waited for the lock can see that the
+ * same version was initialized while they were waiting and reuse the result
+ * instead of initializing again.
+ */
+public class VersionLock implements Closeable {
+    private static final String LOCK_FILE_NAME = "init.lock";
+    private static final String COMPLETED_FILE_NAME = "init.done";
+    private static final Map<Path, Holder> HOLDERS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    private final Holder holder;
+    private boolean closed;
+
+    private VersionLock(Path directory, Holder holder) {
+        this.directory = directory;
+        this.holder = holder;
+    }
+
+    /**
+     * Acquire the lock of a version, waiting for other builds that hold it.
+     *
+     * @param directory The cache folder of the version.
+     * @param log The log to report waiting to.
+     * @return The acquired lock, which must be closed.
+     * @throws IOException If the lock file could not be locked.
+     */
+    public static VersionLock acquire(Path directory, Log log) throws IOException {
+        Files.createDirectories(directory);
+        Path key = directory.toAbsolutePath().normalize();
+        Holder holder = HOLDERS.computeIfAbsent(key, k -> new Holder());
+
+        if (!holder.lock.tryLock()) {
+            log.info("Waiting for another module to finish initializing " + directory.getFileName());
+            holder.lock.lock();
+        }
+        if (holder.lock.getHoldCount() > 1) {
+            // Already holding the file lock
+            return new VersionLock(directory, holder);
+        }
+
+        try {
+            holder.channel = FileChannel.open(directory.resolve(LOCK_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            holder.fileLock = lockFile(holder.channel, directory, log);
+        } catch (IOException | RuntimeException e) {
+            if (holder.channel != null) {
+                holder.channel.close();
+                holder.channel = null;
+            }
+            holder.lock.unlock();
+            throw e;
+        }
+        return new VersionLock(directory, holder);
+    }
+
+    private static FileLock lockFile(FileChannel channel, Path directory, Log log) throws IOException {
+        boolean waiting = false;
+        while (true) {
+            try {
+                FileLock fileLock = channel.tryLock();
+                if (fileLock != null) {
+                    return fileLock;
+                }
+                log.info("Waiting for another build to finish initializing " + directory.getFileName());
+                return channel.lock();
+            } catch (OverlappingFileLockException e) {
+                // Held by another version of this plugin in the same JVM, poll until released
+                if (!waiting) {
+                    log.info("Waiting for another build to finish initializing " + directory.getFileName());
+                    waiting = true;
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the lock of " + directory.getFileName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether the version was initialized after the specified time, for
+     * example by another build that held the lock while this one was waiting.
+     * <p>
+     * Builds may initialize the same cache folder in different ways, for example
+     * for another build of the game version or into another local repository, so
+     * the initialization only counts if it recorded the same description.
+     *
+     * @param time The time in milliseconds.
+     * @param description The description of what should have been initialized.
+     * @return Whether the same initialization completed after the time.
+     */
+    public boolean isCompletedSince(long time, String description) {
+        try {
+            String content = new String(Files.readAllBytes(this.directory.resolve(COMPLETED_FILE_NAME)), StandardCharsets.UTF_8);
+            int newline = content.indexOf('\n');
+            if (newline == -1) {
+                return false;
+            }
+            return Long.parseLong(content.substring(0, newline)) >= time
+                && content.substring(newline + 1).equals(description);
+        } catch (IOException | NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Record that the version has been initialized.
+     *
+     * @param description The description of what was initialized.
+     * @throws IOException If the marker could not be written.
+     */
+    public void markCompleted(String description) throws IOException {
+        String content = System.currentTimeMillis() + "\n" + description;
+        AtomicFiles.write(this.directory.resolve(COMPLETED_FILE_NAME), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Release the lock.
+     *
+     * @throws IOException If the lock file could not be unlocked.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            if (this.holder.lock.getHoldCount() == 1) {
+                try {
+                    this.holder.fileLock.release();
+                } finally {
+                    this.holder.channel.close();
+                    this.holder.fileLock = null;
+                    this.holder.channel = null;
+                }
+            }
+        } finally {
+            this.holder.lock.unlock();
+        }
+    }
+
+    private static class Holder {
+        private final ReentrantLock lock = new ReentrantLock();
+        private FileChannel channel;
+        private FileLock fileLock;
+    }
+}
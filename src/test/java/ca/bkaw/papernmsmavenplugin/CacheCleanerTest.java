@@ -0,0 +1,45 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheCleanerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void deletesOnlyUnusedFiles() throws IOException {
+        long old = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(40);
+        Path unused = this.createFile("unused.jar", old);
+        Path used = this.createFile("used.jar", old);
+        Path recent = this.createFile("recent.jar", System.currentTimeMillis());
+
+        CacheCleaner.markUsed(used);
+
+        assertEquals(1, CacheCleaner.deleteUnused(this.directory, TimeUnit.DAYS.toMillis(30)));
+        assertFalse(Files.exists(unused));
+        assertTrue(Files.exists(used));
+        assertTrue(Files.exists(recent));
+    }
+
+    @Test
+    void missingDirectory() throws IOException {
+        assertEquals(0, CacheCleaner.deleteUnused(this.directory.resolve("missing"), 0));
+    }
+
+    private Path createFile(String name, long lastModified) throws IOException {
+        Path path = Files.createFile(this.directory.resolve(name));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified));
+        return path;
+    }
+}
@@ -0,0 +1,226 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownloaderTest {
+    private static final byte[] CONTENT = new byte[100000];
+    private static final String CONTENT_SHA1;
+
+    static {
+        new Random(1).nextBytes(CONTENT);
+        CONTENT_SHA1 = Hashes.sha1(CONTENT);
+    }
+
+    @TempDir
+    Path directory;
+
+    private HttpServer server;
+    private String url;
+    private Handler handler;
+    /** The Range header of each request, or null if it had none. */
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+
+    @FunctionalInterface
+    private interface Handler {
+        void handle(HttpExchange exchange, int request) throws IOException;
+    }
+
+    @BeforeEach
+    void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/file", exchange -> {
+            try {
+                this.ranges.add(exchange.getRequestHeaders().getFirst("Range"));
+                this.handler.handle(exchange, this.ranges.size());
+            } finally {
+                exchange.close();
+            }
+        });
+        this.server.start();
+        this.url = "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort() + "/file";
+    }
+
+    @AfterEach
+    void stopServer() {
+        this.server.stop(0);
+    }
+
+    private Downloader downloader() {
+        return new Downloader(new SystemStreamLog(), 2000, 2000, 3, 10, false);
+    }
+
+    /**
+     * Respond with the content, honoring the Range header.
+     */
+    private static void serve(HttpExchange exchange) throws IOException {
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range == null) {
+            send(exchange, 200, CONTENT);
+            return;
+        }
+        int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + (CONTENT.length - 1) + "/" + CONTENT.length);
+        send(exchange, 206, Arrays.copyOfRange(CONTENT, start, CONTENT.length));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private Path writePart(Path path, byte[] content) throws IOException {
+        return Files.write(Paths.get(path + ".part"), content);
+    }
+
+    @Test
+    void download() throws IOException {
+        this.handler = (exchange, request) -> serve(exchange);
+        Path path = this.directory.resolve("file.jar");
+
+        assertEquals(CONTENT_SHA1, this.downloader().download(this.url, path, CONTENT_SHA1));
+        assertArrayEquals(CONTENT, Files.readAllBytes(path));
+        assertEquals(Collections.singletonList(null), this.ranges);
+        assertFalse(Files.exists(Paths.get(path + ".part")));
+    }
+
+    @Test
+    void resumesPartialContent() throws IOException {
+        this.handler = (exchange, request) -> serve(exchange);
+        Path path = this.directory.resolve("file.jar");
+        this.writePart(path, Arrays.copyOf(CONTENT, 40000));
+
+        assertEquals(CONTENT_SHA1, this.downloader().download(this.url, path, CONTENT_SHA1));
+        assertArrayEquals(CONTENT, Files.readAllBytes(path));
+        assertEquals(Collections.singletonList("bytes=40000-"), this.ranges);
+    }
+
+    @Test
+    void replacesPartWhenRangeIsIgnored() throws IOException {
+        // The server sends the whole file with 200 instead of 206
+        this.handler = (exchange, request) -> send(exchange, 200, CONTENT);
+        Path path = this.directory.resolve("file.jar");
+        this.writePart(path, new byte[40000]);
+
+        assertEquals(CONTENT_SHA1, this.downloader().download(this.url, path, CONTENT_SHA1));
+        assertArrayEquals(CONTENT, Files.readAllBytes(path));
+        assertEquals(Collections.singletonList("bytes=40000-"), this.ranges);
+    }
+
+    @Test
+    void restartsWhenRangeIsNotSatisfiable() throws IOException {
+        this.handler = (exchange, request) -> {
+            if (exchange.getRequestHeaders().containsKey("Range")) {
+                send(exchange, 416, new byte[0]);
+            } else {
+                serve(exchange);
+            }
+        };
+        Path path = this.directory.resolve("file.jar");
+        this.writePart(path, new byte[CONTENT.length + 10]);
+
+        assertEquals(CONTENT_SHA1, this.downloader().download(this.url, path, CONTENT_SHA1));
+        assertArrayEquals(CONTENT, Files.readAllBytes(path));
+        assertEquals(Arrays.asList("bytes=" + (CONTENT.length + 10) + "-", null), this.ranges);
+    }
+
+    @Test
+    void retriesWhenHashDoesNotMatch() throws IOException {
+        byte[] corrupt = CONTENT.clone();
+        corrupt[500] ^= 1;
+        this.handler = (exchange, request) -> send(exchange, 200, request == 1 ? corrupt : CONTENT);
+        Path path = this.directory.resolve("file.jar");
+
+        assertEquals(CONTENT_SHA1, this.downloader().download(this.url, path, CONTENT_SHA1));
+        assertArrayEquals(CONTENT, Files.readAllBytes(path));
+        // The corrupt part is discarded instead of resumed
+        assertEquals(Arrays.asList(null, null), this.ranges);
+    }
+
+    @Test
+    void failsWhenHashNeverMatches() {
+        this.handler = (exchange, request) -> send(exchange, 200, new byte[10]);
+        Path path = this.directory.resolve("file.jar");
+
+        IOException e = assertThrows(IOException.class, () -> this.downloader().download(this.url, path, CONTENT_SHA1));
+        assertTrue(e.getMessage().contains("sha1"), e.getMessage());
+        assertEquals(3, this.ranges.size());
+        assertFalse(Files.exists(path));
+        assertFalse(Files.exists(Paths.get(path + ".part")));
+    }
+
+    @Test
+    void retriesServerErrors() throws IOException {
+        this.handler = (exchange, request) -> {
+            if (request < 3) {
+                send(exchange, request == 1 ? 500 : 429, new byte[0]);
+            } else {
+                serve(exchange);
+            }
+        };
+
+        assertArrayEquals(CONTENT, this.downloader().fetch(this.url));
+        assertEquals(3, this.ranges.size());
+    }
+
+    @Test
+    void doesNotRetryPermanentFailures() {
+        this.handler = (exchange, request) -> send(exchange, 404, new byte[0]);
+        Path path = this.directory.resolve("file.jar");
+
+        IOException e = assertThrows(IOException.class, () -> this.downloader().download(this.url, path, null));
+        assertTrue(e.getMessage().contains("HTTP 404"), e.getMessage());
+        assertEquals(1, this.ranges.size());
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    void fetchIfChangedReportsMissingResources() throws IOException {
+        this.handler = (exchange, request) -> send(exchange, 404, new byte[0]);
+
+        Downloader.Response response = this.downloader().fetchIfChanged(this.url, null, null);
+        assertEquals(404, response.status);
+        assertNull(response.content);
+        assertEquals(1, this.ranges.size());
+    }
+
+    @Test
+    void offlineFailsWithoutRequests() {
+        this.handler = (exchange, request) -> serve(exchange);
+        Downloader downloader = new Downloader(new SystemStreamLog(), 2000, 2000, 3, 10, true);
+        Path path = this.directory.resolve("file.jar");
+
+        IOException e = assertThrows(IOException.class, () -> downloader.download(this.url, path, CONTENT_SHA1));
+        assertTrue(e.getMessage().contains("offline"), e.getMessage());
+        assertThrows(IOException.class, () -> downloader.fetch(this.url));
+        assertTrue(this.ranges.isEmpty());
+        assertFalse(Files.exists(path));
+    }
+}
@@ -0,0 +1,249 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import net.fabricmc.tinyremapper.IMappingProvider;
+import net.fabricmc.tinyremapper.TinyRemapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class MappingComposerTest {
+    private static final String MOJANG_MAPPINGS = String.join("\n",
+        "tiny\t2\t0\tmojang\tobfuscated",
+        "c\tnet/minecraft/world/entity/Entity\ta",
+        "\tf\tLnet/minecraft/world/level/Level;\tlevel\tc",
+        "\tm\t()V\ttick\ta",
+        "\tm\t()Lnet/minecraft/world/level/Level;\tgetLevel\tb",
+        "c\tnet/minecraft/world/entity/LivingEntity\tb",
+        "\tm\t()V\ttick\ta",
+        "c\tnet/minecraft/world/level/Level\tc",
+        "");
+
+    // The Spigot mappings only rename tick in Entity, not in the subclass that overrides it
+    private static final String SPIGOT_MAPPINGS = String.join("\n",
+        "tiny\t2\t0\tobfuscated\tspigot",
+        "c\ta\tnet/minecraft/world/entity/Entity",
+        "\tf\tLc;\tc\tworld",
+        "\tm\t()V\ta\ttick",
+        "\tm\t()Lc;\tb\tgetWorld",
+        "c\tb\tnet/minecraft/world/entity/EntityLiving",
+        "c\tc\tnet/minecraft/world/level/World",
+        "");
+
+    private static final String ENTITY = "net/minecraft/world/entity/Entity";
+    private static final String LIVING_ENTITY = "net/minecraft/world/entity/LivingEntity";
+    private static final String LEVEL = "net/minecraft/world/level/Level";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void composesMethodsRenamedInSuperClass() throws IOException {
+        Map<String, byte[]> spigotClasses = new TreeMap<>();
+        spigotClasses.put("net/minecraft/world/level/World", createClass("net/minecraft/world/level/World", "java/lang/Object", cv -> {}));
+        spigotClasses.put("net/minecraft/world/entity/Entity", createClass("net/minecraft/world/entity/Entity", "java/lang/Object", cv -> {}));
+        spigotClasses.put("net/minecraft/world/entity/EntityLiving", createClass("net/minecraft/world/entity/EntityLiving", "net/minecraft/world/entity/Entity", cv -> {}));
+        Path spigotJar = this.writeJar("spigot.jar", spigotClasses);
+
+        TinyMappings spigotMappings = this.readMappings("spigot.tiny", SPIGOT_MAPPINGS);
+        Map<String, List<String>> hierarchy = MappingComposer.readHierarchy(spigotJar, spigotMappings);
+        assertEquals(Collections.singletonList("a"), hierarchy.get("b"));
+
+        TinyMappings composed = new MappingComposer(this.readMappings("mojang.tiny", MOJANG_MAPPINGS), spigotMappings, hierarchy).compose();
+        assertEquals(describe(composed), describe(this.readMappings("expected.tiny", String.join("\n",
+            "tiny\t2\t0\tmojang\tspigot",
+            "c\tnet/minecraft/world/entity/Entity\tnet/minecraft/world/entity/Entity",
+            "\tf\tLnet/minecraft/world/level/Level;\tlevel\tworld",
+            "\tm\t()V\ttick\ttick",
+            "\tm\t()Lnet/minecraft/world/level/Level;\tgetLevel\tgetWorld",
+            "c\tnet/minecraft/world/entity/LivingEntity\tnet/minecraft/world/entity/EntityLiving",
+            "\tm\t()V\ttick\ttick",
+            "c\tnet/minecraft/world/level/Level\tnet/minecraft/world/level/World",
+            ""))));
+
+        // Without the hierarchy the override keeps its obfuscated name
+        TinyMappings withoutHierarchy = new MappingComposer(this.readMappings("mojang.tiny", MOJANG_MAPPINGS), spigotMappings, Collections.emptyMap()).compose();
+        assertEquals("a", withoutHierarchy.getClasses().get(1).methods.get(0).getName(1));
+    }
+
+    @Test
+    void singleRemapMatchesDoubleRemap() throws IOException {
+        Map<String, byte[]> mojangClasses = new TreeMap<>();
+        mojangClasses.put(LEVEL, createClass(LEVEL, "java/lang/Object", cv -> {}));
+        mojangClasses.put(ENTITY, createClass(ENTITY, "java/lang/Object", cv -> {
+            cv.visitField(Opcodes.ACC_PROTECTED, "level", "L" + LEVEL + ";", null, null).visitEnd();
+            MethodVisitor tick = cv.visitMethod(Opcodes.ACC_PUBLIC, "tick", "()V", null, null);
+            tick.visitCode();
+            tick.visitInsn(Opcodes.RETURN);
+            tick.visitMaxs(0, 0);
+            tick.visitEnd();
+            MethodVisitor getLevel = cv.visitMethod(Opcodes.ACC_PUBLIC, "getLevel", "()L" + LEVEL + ";", null, null);
+            getLevel.visitCode();
+            getLevel.visitVarInsn(Opcodes.ALOAD, 0);
+            getLevel.visitFieldInsn(Opcodes.GETFIELD, ENTITY, "level", "L" + LEVEL + ";");
+            getLevel.visitInsn(Opcodes.ARETURN);
+            getLevel.visitMaxs(0, 0);
+            getLevel.visitEnd();
+        }));
+        mojangClasses.put(LIVING_ENTITY, createClass(LIVING_ENTITY, ENTITY, cv -> {
+            MethodVisitor tick = cv.visitMethod(Opcodes.ACC_PUBLIC, "tick", "()V", null, null);
+            tick.visitCode();
+            tick.visitVarInsn(Opcodes.ALOAD, 0);
+            tick.visitMethodInsn(Opcodes.INVOKESPECIAL, ENTITY, "tick", "()V", false);
+            tick.visitInsn(Opcodes.RETURN);
+            tick.visitMaxs(0, 0);
+            tick.visitEnd();
+        }));
+        // A plugin class that calls the override and a method inherited from Entity
+        mojangClasses.put("com/example/Plugin", createClass("com/example/Plugin", "java/lang/Object", cv -> {
+            MethodVisitor run = cv.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "(L" + LIVING_ENTITY + ";)L" + LEVEL + ";", null, null);
+            run.visitCode();
+            run.visitVarInsn(Opcodes.ALOAD, 0);
+            run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, LIVING_ENTITY, "tick", "()V", false);
+            run.visitVarInsn(Opcodes.ALOAD, 0);
+            run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, LIVING_ENTITY, "getLevel", "()L" + LEVEL + ";", false);
+            run.visitInsn(Opcodes.ARETURN);
+            run.visitMaxs(0, 0);
+            run.visitEnd();
+        }));
+        Path mojangJar = this.writeJar("mojang.jar", mojangClasses);
+
+        Path mojangMappingsPath = Files.write(this.directory.resolve("mojang.tiny"), MOJANG_MAPPINGS.getBytes());
+        Path spigotMappingsPath = Files.write(this.directory.resolve("spigot.tiny"), SPIGOT_MAPPINGS.getBytes());
+
+        // Remap to obfuscated and then to Spigot, like remapDouble
+        Map<String, byte[]> obfuscatedClasses = remap(mojangJar, MappingStore.openFor(mojangMappingsPath).createProvider("mojang", "obfuscated"));
+        Path obfuscatedJar = this.writeJar("obfuscated.jar", obfuscatedClasses);
+        Map<String, byte[]> expected = remap(obfuscatedJar, MappingStore.openFor(spigotMappingsPath).createProvider("obfuscated", "spigot"));
+        assertFalse(expected.isEmpty());
+
+        // Remap in a single pass with the composed mappings, using the Spigot
+        // mapped classes for the hierarchy like composeMappings
+        Path spigotJar = this.writeJar("spigot.jar", expected);
+        TinyMappings spigotMappings = TinyMappings.read(spigotMappingsPath);
+        Map<String, List<String>> hierarchy = MappingComposer.readHierarchy(spigotJar, spigotMappings);
+        Path composedPath = this.directory.resolve("composed.tiny");
+        new MappingComposer(TinyMappings.read(mojangMappingsPath), spigotMappings, hierarchy).compose().write(composedPath);
+        Map<String, byte[]> actual = remap(mojangJar, MappingStore.openFor(composedPath).createProvider("mojang", "spigot"));
+
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertEquals(describe(entry.getValue()), describe(actual.get(entry.getKey())), entry.getKey());
+        }
+    }
+
+    private TinyMappings readMappings(String fileName, String content) throws IOException {
+        return TinyMappings.read(Files.write(this.directory.resolve(fileName), content.getBytes()));
+    }
+
+    private Path writeJar(String fileName, Map<String, byte[]> classes) throws IOException {
+        Path path = this.directory.resolve(fileName);
+        try (OutputStream out = Files.newOutputStream(path);
+             JarOutputStream jar = new JarOutputStream(out)) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                jar.putNextEntry(new JarEntry(entry.getKey() + ".class"));
+                jar.write(entry.getValue());
+                jar.closeEntry();
+            }
+        }
+        return path;
+    }
+
+    private static Map<String, byte[]> remap(Path input, IMappingProvider mappings) {
+        TinyRemapper remapper = TinyRemapper.newRemapper()
+            .withMappings(mappings)
+            .ignoreConflicts(true)
+            .build();
+        remapper.readInputs(input);
+        Map<String, byte[]> classes = new TreeMap<>();
+        remapper.apply((name, bytes) -> {
+            synchronized (classes) {
+                classes.put(name, bytes);
+            }
+        });
+        remapper.finish();
+        return classes;
+    }
+
+    private interface ClassBody {
+        void write(ClassVisitor cv);
+    }
+
+    private static byte[] createClass(String name, String superName, ClassBody body) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+        body.write(writer);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Describe the declarations and member references of a class, so that classes
+     * can be compared regardless of the order of their constant pool.
+     */
+    private static List<String> describe(byte[] bytes) {
+        List<String> lines = new ArrayList<>();
+        new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                lines.add("class " + name + " extends " + superName);
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                lines.add("field " + name + " " + descriptor);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                lines.add("method " + name + descriptor);
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                        lines.add("  field " + owner + "." + name + " " + descriptor);
+                    }
+
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                        lines.add("  call " + owner + "." + name + descriptor);
+                    }
+                };
+            }
+        }, 0);
+        return lines;
+    }
+
+    private static List<String> describe(TinyMappings mappings) {
+        List<String> lines = new ArrayList<>();
+        for (TinyMappings.ClassEntry classEntry : mappings.getClasses()) {
+            lines.add(String.join(" -> ", classEntry.names));
+            for (TinyMappings.MemberEntry field : classEntry.fields) {
+                lines.add("  field " + field.desc + " " + String.join(" -> ", field.names));
+            }
+            for (TinyMappings.MemberEntry method : classEntry.methods) {
+                lines.add("  method " + method.desc + " " + String.join(" -> ", method.names));
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,123 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Compares the mappings merged by {@link MappingMerger} with the mappings merged
+ * by Lorenz.
+ * <p>
+ * The small mappings in {@code src/test/resources/merger} are compared on every
+ * test run. The mappings of real versions are not part of the repository. Set the
+ * system property
+ * {@code paperNms.mergeComparisonInputs} to a folder with one folder per game
+ * version, like {@code 1.17.1} and {@code 1.18.2}, that contains the files the
+ * plugin downloads: {@code spigot_class_mappings.csrg},
+ * {@code spigot_member_mappings.csrg} (if the version has one) and
+ * {@code mojang_mappings.txt}. For example:
+ * <pre>
+ * mvn test -Dtest=MappingMergerComparisonTest -DpaperNms.mergeComparisonInputs=/path/to/mappings
+ * </pre>
+ */
+class MappingMergerComparisonTest {
+    private static final String[] OUTPUTS = { "mappings.tiny", "mappings_mojang.tiny", "mappings_spigot.tiny" };
+
+    @TempDir
+    Path directory;
+
+    private static Path fixture(String name) throws URISyntaxException {
+        return Paths.get(MappingMergerComparisonTest.class.getResource("/merger/" + name).toURI());
+    }
+
+    @Test
+    void sameOutputAsLorenzOnFixture() throws Exception {
+        // Inner classes, members of classes that Spigot does not rename and overloaded methods
+        this.compare(fixture("simple"));
+    }
+
+    @Test
+    void ambiguousFixtureIsLeftToLorenz() throws Exception {
+        // Two classes are mapped to the same Spigot name
+        Path version = fixture("ambiguous");
+        Path output = Files.createDirectories(this.directory.resolve("ambiguous"));
+        assertThrows(MappingMerger.AmbiguousMappingsException.class, () -> MojoBase.mergeMappingsWithMerger(
+            version.resolve("spigot_class_mappings.csrg"), version.resolve("spigot_member_mappings.csrg"), version.resolve("mojang_mappings.txt"),
+            output.resolve(OUTPUTS[0]), output.resolve(OUTPUTS[1]), output.resolve(OUTPUTS[2])));
+
+        // The plugin merges these with Lorenz instead, which must still work
+        MojoBase.mergeMappingsWithLorenz(
+            version.resolve("spigot_class_mappings.csrg"), version.resolve("spigot_member_mappings.csrg"), version.resolve("mojang_mappings.txt"),
+            output.resolve(OUTPUTS[0]), output.resolve(OUTPUTS[1]), output.resolve(OUTPUTS[2]));
+    }
+
+    @TestFactory
+    Stream<DynamicTest> sameOutputAsLorenz() throws IOException {
+        String inputs = System.getProperty("paperNms.mergeComparisonInputs");
+        assumeTrue(inputs != null, "paperNms.mergeComparisonInputs is not set");
+
+        List<Path> versions;
+        try (Stream<Path> stream = Files.list(Paths.get(inputs))) {
+            versions = stream.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+        }
+        assertFalse(versions.isEmpty(), "No versions in " + inputs);
+
+        return versions.stream().map(version -> DynamicTest.dynamicTest(version.getFileName().toString(), () -> {
+            try {
+                this.compare(version);
+            } catch (MappingMerger.AmbiguousMappingsException e) {
+                // The plugin merges these with Lorenz, so there is nothing to compare
+                assumeTrue(false, "Merged with Lorenz, as " + e.getMessage());
+            }
+        }));
+    }
+
+    private void compare(Path version) throws IOException, MappingMerger.AmbiguousMappingsException {
+        Path classes = version.resolve("spigot_class_mappings.csrg");
+        Path members = version.resolve("spigot_member_mappings.csrg");
+        Path mojang = version.resolve("mojang_mappings.txt");
+
+        Path lorenz = Files.createDirectories(this.directory.resolve(version.getFileName()).resolve("lorenz"));
+        MojoBase.mergeMappingsWithLorenz(classes, members, mojang,
+            lorenz.resolve(OUTPUTS[0]), lorenz.resolve(OUTPUTS[1]), lorenz.resolve(OUTPUTS[2]));
+
+        Path merger = Files.createDirectories(this.directory.resolve(version.getFileName()).resolve("merger"));
+        MojoBase.mergeMappingsWithMerger(classes, members, mojang,
+            merger.resolve(OUTPUTS[0]), merger.resolve(OUTPUTS[1]), merger.resolve(OUTPUTS[2]));
+
+        for (String output : OUTPUTS) {
+            assertSameLines(lorenz.resolve(output), merger.resolve(output));
+        }
+    }
+
+    private static void assertSameLines(Path expected, Path actual) throws IOException {
+        List<String> expectedLines = Files.readAllLines(expected);
+        List<String> actualLines = Files.readAllLines(actual);
+        int lines = Math.min(expectedLines.size(), actualLines.size());
+        for (int i = 0; i < lines; i++) {
+            if (!expectedLines.get(i).equals(actualLines.get(i))) {
+                List<String> context = new ArrayList<>(expectedLines.subList(Math.max(0, i - 3), i));
+                fail(actual.getFileName() + " differs at line " + (i + 1) + " after\n" + String.join("\n", context)
+                    + "\nexpected: " + expectedLines.get(i) + "\nactual:   " + actualLines.get(i));
+            }
+        }
+        assertEquals(expectedLines.size(), actualLines.size(), "Amount of lines in " + actual.getFileName());
+    }
+}
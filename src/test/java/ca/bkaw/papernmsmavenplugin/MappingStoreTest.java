@@ -0,0 +1,112 @@
+package ca.bkaw.papernmsmavenplugin;
+
+import net.fabricmc.tinyremapper.IMappingProvider;
+import net.fabricmc.tinyremapper.TinyUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class MappingStoreTest {
+    private static final String MAPPINGS = String.join("\n",
+        "tiny\t2\t0\tmojang\tobfuscated\tspigot",
+        "c\tnet/minecraft/server/Main\ta\tnet/minecraft/server/Main",
+        "\tf\tI\tcount\tb\tcount",
+        "\tf\tLnet/minecraft/world/Level;\tlevel\tc\t",
+        "\tm\t(Lnet/minecraft/world/Level;I)V\ttick\ta\ttick",
+        "\t\tp\t1\tlevel\t\tworld",
+        "\t\tp\t2\ttime\t\t",
+        "\t\tv\t3\t5\t0\tindex\t\ti",
+        "\tm\t()Lnet/minecraft/server/Main;\tget\tb\t",
+        "c\tnet/minecraft/world/Level\tc\tnet/minecraft/server/level/World",
+        "\tm\t([Lnet/minecraft/world/Level;)[Lnet/minecraft/server/Main;\tall\ta\tgetAll",
+        "c\tnet/minecraft/Util\td\t",
+        "\tf\tLjava/lang/String;\tNAME\ta\tNAME",
+        "");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sameMappingsAsTinyUtils() throws IOException {
+        Path mappingsPath = this.writeMappings();
+        MappingStore store = MappingStore.openFor(mappingsPath);
+        String[][] pairs = {
+            { "mojang", "spigot" },
+            { "mojang", "obfuscated" },
+            { "obfuscated", "spigot" },
+            { "spigot", "mojang" },
+        };
+        for (String[] pair : pairs) {
+            List<String> expected = record(TinyUtils.createTinyMappingProvider(mappingsPath, pair[0], pair[1]));
+            List<String> actual = record(store.createProvider(pair[0], pair[1]));
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, actual, pair[0] + " to " + pair[1]);
+        }
+    }
+
+    @Test
+    void storeCanBeReplacedWhileOpen() throws IOException {
+        Path mappingsPath = this.writeMappings();
+        Path storePath = MappingStore.getStorePath(mappingsPath);
+        MappingStore store = MappingStore.openFor(mappingsPath);
+
+        // Replacing and deleting an opened store fails on Windows if it is still mapped
+        MappingStore.compile(mappingsPath, storePath);
+        Files.delete(storePath);
+
+        assertEquals(record(store.createProvider("mojang", "spigot")),
+            record(MappingStore.openFor(mappingsPath).createProvider("mojang", "spigot")));
+    }
+
+    private Path writeMappings() throws IOException {
+        Path mappingsPath = this.directory.resolve("mappings.tiny");
+        Files.write(mappingsPath, MAPPINGS.getBytes(StandardCharsets.UTF_8));
+        return mappingsPath;
+    }
+
+    private static List<String> record(IMappingProvider provider) {
+        List<String> mappings = new ArrayList<>();
+        provider.load(new IMappingProvider.MappingAcceptor() {
+            @Override
+            public void acceptClass(String srcName, String dstName) {
+                mappings.add("class " + srcName + " " + dstName);
+            }
+
+            @Override
+            public void acceptMethod(IMappingProvider.Member method, String dstName) {
+                mappings.add("method " + member(method) + " " + dstName);
+            }
+
+            @Override
+            public void acceptMethodArg(IMappingProvider.Member method, int lvIndex, String dstName) {
+                mappings.add("arg " + member(method) + " " + lvIndex + " " + dstName);
+            }
+
+            @Override
+            public void acceptMethodVar(IMappingProvider.Member method, int lvIndex, int startOpIdx, int asmIndex, String dstName) {
+                mappings.add("var " + member(method) + " " + lvIndex + " " + startOpIdx + " " + asmIndex + " " + dstName);
+            }
+
+            @Override
+            public void acceptField(IMappingProvider.Member field, String dstName) {
+                mappings.add("field " + member(field) + " " + dstName);
+            }
+        });
+        Collections.sort(mappings);
+        return mappings;
+    }
+
+    private static String member(IMappingProvider.Member member) {
+        return member.owner + "." + member.name + member.desc;
+    }
+}